@@ -0,0 +1,62 @@
+package benchmarking;
+
+import documentTokenizing.StopWordsLoader;
+import indexReading.IndexReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Time to open an IndexReader: loading the dictionaries and term_info and mapping term_index and doc_stats.
+ coldLoad is a single open in a fresh JVM, so class loading and JIT warm-up are included; the operating
+ system page cache is not dropped between forks. warmLoad is the steady state after repeated opens.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IndexLoadBenchmark {
+
+    @Param("2000")
+    int documents;
+
+    @Param("400")
+    int wordsPerDoc;
+
+    @Param({"text", "binary"})
+    String postings;
+
+    private Path index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        index = new SyntheticCorpus(SyntheticCorpus.DEFAULT_VOCABULARY)
+                .index(documents, wordsPerDoc, postings.equals("binary"));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(5)
+    public IndexReader coldLoad() throws IOException {
+        return open();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public IndexReader warmLoad() throws IOException {
+        return open();
+    }
+
+    private IndexReader open() throws IOException {
+        Path output1 = index.resolve("output_1");
+        return new IndexReader(output1.resolve("docids.txt").toString(), output1.resolve("termids.txt").toString(),
+                index.resolve("output_2").resolve("term_info.txt").toString(),
+                SyntheticCorpus.termIndexPath(index, postings.equals("binary")).toString(),
+                output1.resolve("doc_stats.bin").toString(), StopWordsLoader.loadStopWords(SyntheticCorpus.STOP_WORDS_PATH));
+    }
+}
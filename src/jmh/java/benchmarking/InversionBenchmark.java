@@ -0,0 +1,63 @@
+package benchmarking;
+
+import indexInverting.IndexInverter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Time to invert a doc_index into term_index and term_info, including the doc_stats pass. The memory budget
+ parameter controls whether everything fits in memory or sorted runs are spilled and merged, and shards sets how
+ many threads encode separate term index shards. Run with the gc profiler (on by default in the benchmarks profile)
+ to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InversionBenchmark {
+
+    @Param("2000")
+    int documents;
+
+    @Param("400")
+    int wordsPerDoc;
+
+    @Param({"text", "binary"})
+    String postings;
+
+    @Param({"256", "4"})
+    int memoryBudgetMb;
+
+    @Param({"1", "4"})
+    int shards;
+
+    private Path docIndexPath;
+    private Path outputDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path index = new SyntheticCorpus(SyntheticCorpus.DEFAULT_VOCABULARY).index(documents, wordsPerDoc, false);
+        docIndexPath = index.resolve("output_1").resolve("doc_index.bin");
+        outputDirectory = Files.createTempDirectory("inversion-benchmark");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticCorpus.delete(outputDirectory);
+    }
+
+    @Benchmark
+    public void invert() throws IOException {
+        boolean binary = postings.equals("binary");
+        IndexInverter inverter = new IndexInverter(memoryBudgetMb * 1024L * 1024, binary, shards);
+        inverter.buildInvertedIndex(docIndexPath.toString(), outputDirectory.resolve("doc_stats.bin").toString());
+        inverter.writeInvertedIndex(outputDirectory.resolve(binary ? "term_index.bin" : "term_index.txt").toString(),
+                outputDirectory.resolve("term_info.txt").toString());
+    }
+}
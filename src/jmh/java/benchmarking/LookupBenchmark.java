@@ -0,0 +1,89 @@
+package benchmarking;
+
+import documentTokenizing.StopWordsLoader;
+import indexReading.IndexReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Latency of the --term and --term --doc lookups. Terms are picked from the whole frequency range, weighted
+ towards frequent ones like a real query log, and each lookup's output is discarded. With cacheMb 0 every lookup
+ reads term_index; otherwise repeated terms are served from the decoded postings cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param("2000")
+    int documents;
+
+    @Param("400")
+    int wordsPerDoc;
+
+    @Param({"text", "binary"})
+    String postings;
+
+    @Param({"0", "64"})
+    int cacheMb;
+
+    private IndexReader reader;
+    private final String[] terms = new String[QUERIES];
+    private final String[] docNames = new String[QUERIES];
+    private int next;
+    private PrintStream out;
+    private PrintStream err;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus(SyntheticCorpus.DEFAULT_VOCABULARY);
+        boolean binary = postings.equals("binary");
+        Path index = corpus.index(documents, wordsPerDoc, binary);
+        Path output1 = index.resolve("output_1");
+        reader = new IndexReader(output1.resolve("docids.txt").toString(), output1.resolve("termids.txt").toString(),
+                index.resolve("output_2").resolve("term_info.txt").toString(),
+                SyntheticCorpus.termIndexPath(index, binary).toString(), output1.resolve("doc_stats.bin").toString(),
+                StopWordsLoader.loadStopWords(SyntheticCorpus.STOP_WORDS_PATH), cacheMb * 1024L * 1024);
+
+        Random random = new Random(42);
+        for (int i = 0; i < QUERIES; i++) {
+            int rank = (int) Math.min(Math.exp(random.nextDouble() * Math.log(SyntheticCorpus.DEFAULT_VOCABULARY)),
+                    SyntheticCorpus.DEFAULT_VOCABULARY) - 1;
+            terms[i] = corpus.wordOfRank(rank);
+            docNames[i] = SyntheticCorpus.documentName(random.nextInt(documents));
+        }
+
+        out = System.out;
+        err = System.err;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(discard);
+        System.setErr(discard);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(out);
+        System.setErr(err);
+    }
+
+    @Benchmark
+    public void termLookup() throws IOException {
+        reader.printTermInfo(terms[next++ % QUERIES]);
+    }
+
+    @Benchmark
+    public void termDocLookup() throws IOException {
+        int query = next++ % QUERIES;
+        reader.printTermDocInfo(terms[query], docNames[query]);
+    }
+}
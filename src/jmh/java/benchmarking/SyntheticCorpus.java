@@ -0,0 +1,190 @@
+package benchmarking;
+
+import documentTokenizing.FileProcessor;
+import documentTokenizing.StopWordsLoader;
+import indexInverting.IndexInverter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ Deterministic synthetic HTML corpus for benchmarks. Words are drawn from a Zipf-like distribution over a fixed
+ vocabulary, so term and document frequencies are skewed like real text, and every page has the WARC/HTTP
+ header, markup, script and entities the extractor has to skip. The same seed always produces the same corpus.
+ */
+public final class SyntheticCorpus {
+    public static final String STOP_WORDS_PATH = "src/main/resources/stopped_words.txt";
+    public static final int DEFAULT_VOCABULARY = 50_000;
+
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ne", "ru", "ta", "vo", "shi", "pe", "dra", "qui", "ston", "ber", "lan", "mor", "tes",
+            "ing", "ed", "er", "ation", "ness", "ly", "ment", "ful"};
+    private static final String[] FUNCTION_WORDS = {"the", "of", "and", "a", "to", "in", "is", "was", "for", "with"};
+
+    private final String[] vocabulary;
+    private final double[] cumulativeWeights;
+
+    public SyntheticCorpus(int vocabularySize) {
+        Random random = new Random(vocabularySize);
+        vocabulary = new String[vocabularySize];
+        cumulativeWeights = new double[vocabularySize];
+        double total = 0;
+        for (int i = 0; i < vocabularySize; i++) {
+            StringBuilder word = new StringBuilder();
+            int syllables = 1 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            vocabulary[i] = word.append(i % 97 == 0 ? "" : Integer.toString(i, 36)).toString();
+            total += 1.0 / (i + 1);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    /**
+     Returns the HTML of document number docNumber, with about wordsPerDoc words of visible text.
+     */
+    public String document(int docNumber, int wordsPerDoc) {
+        Random random = new Random(docNumber * 31L + wordsPerDoc);
+        StringBuilder html = new StringBuilder(wordsPerDoc * 10);
+        html.append("WARC/1.0\nWARC-Type: response\n\nHTTP/1.1 200 OK\nContent-Type: text/html; charset=UTF-8\n\n");
+        html.append("<!DOCTYPE html><html><head><title>").append(word(random)).append(' ').append(word(random))
+                .append("</title><script>var page = ").append(docNumber).append(";</script></head><body>");
+        int written = 0;
+        while (written < wordsPerDoc) {
+            boolean section = random.nextInt(4) == 0;
+            html.append(section ? "<div class=\"section\"><p>" : "<p>");
+            int sentence = 5 + random.nextInt(20);
+            for (int i = 0; i < sentence && written < wordsPerDoc; i++, written++) {
+                if (i > 0) {
+                    html.append(' ');
+                }
+                int kind = random.nextInt(20);
+                if (kind == 0) {
+                    html.append("<b>").append(word(random)).append("</b>");
+                }
+                else if (kind == 1) {
+                    html.append(word(random)).append(" &amp;");
+                }
+                else if (kind < 6) {
+                    html.append(FUNCTION_WORDS[random.nextInt(FUNCTION_WORDS.length)]);
+                }
+                else {
+                    html.append(word(random));
+                }
+            }
+            html.append(section ? ".</p></div>" : ".</p>");
+        }
+        return html.append("</body></html>\n").toString();
+    }
+
+    private String word(Random random) {
+        double target = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int low = 0;
+        int high = cumulativeWeights.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulativeWeights[mid] < target) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return vocabulary[low];
+    }
+
+    /**
+     Returns the word of the given frequency rank, 0 being the most frequent.
+     */
+    public String wordOfRank(int rank) {
+        return vocabulary[rank];
+    }
+
+    /**
+     Writes docCount documents as files named doc-000000, doc-000001, ... into the directory.
+     */
+    public List<Path> write(Path directory, int docCount, int wordsPerDoc) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>(docCount);
+        for (int i = 0; i < docCount; i++) {
+            Path file = directory.resolve(documentName(i));
+            Files.writeString(file, document(i, wordsPerDoc));
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     Returns a directory holding an index of the corpus with the given shape, building it on first use.
+     The doc_index, doc_stats and dictionaries are in output_1 and the inverted index in output_2. Indexes are
+     kept under target/benchmark-data so every benchmark and fork reuses the same files.
+     */
+    public Path index(int docCount, int wordsPerDoc, boolean binaryPostings) throws IOException {
+        Path workDirectory = Path.of("target", "benchmark-data",
+                "index-" + vocabulary.length + "-" + docCount + "-" + wordsPerDoc + (binaryPostings ? "-binary" : "-text"));
+        Path output1 = workDirectory.resolve("output_1");
+        Path output2 = workDirectory.resolve("output_2");
+        Path complete = workDirectory.resolve("complete");
+        if (Files.exists(complete)) {
+            return workDirectory;
+        }
+
+        delete(workDirectory);
+        Path corpus = workDirectory.resolve("corpus");
+        write(corpus, docCount, wordsPerDoc);
+        Files.createDirectories(output1);
+        Files.createDirectories(output2);
+
+        Set<String> stopWords = StopWordsLoader.loadStopWords(STOP_WORDS_PATH);
+        new FileProcessor(stopWords).processFiles(corpus.toString(), output1.toString(),
+                Runtime.getRuntime().availableProcessors());
+        IndexInverter inverter = new IndexInverter(IndexInverter.DEFAULT_MEMORY_BUDGET, binaryPostings);
+        inverter.buildInvertedIndex(output1.resolve("doc_index.bin").toString(), output1.resolve("doc_stats.bin").toString());
+        inverter.writeInvertedIndex(termIndexPath(workDirectory, binaryPostings).toString(),
+                output2.resolve("term_info.txt").toString());
+        Files.createFile(complete);  // an interrupted build is redone on the next run
+        return workDirectory;
+    }
+
+    public static Path termIndexPath(Path indexDirectory, boolean binaryPostings) {
+        return indexDirectory.resolve("output_2").resolve(binaryPostings ? "term_index.bin" : "term_index.txt");
+    }
+
+    /**
+     Name of the file of document number docNumber.
+     */
+    public static String documentName(int docNumber) {
+        return String.format("doc-%06d", docNumber);
+    }
+
+    /**
+     Recursively deletes a benchmark working directory.
+     */
+    public static void delete(Path directory) {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
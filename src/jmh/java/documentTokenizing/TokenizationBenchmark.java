@@ -0,0 +1,74 @@
+package documentTokenizing;
+
+import benchmarking.SyntheticCorpus;
+import org.openjdk.jmh.annotations.*;
+import primitiveCollections.CharArrayCache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Per-document throughput of the analysis chain FileProcessor runs on each file: charset detection and decoding,
+ HTML text extraction, and tokenizing, stop word removal and stemming. Pages are generated in memory, so file
+ system reads are not part of the measurement. A stem cache of two entries effectively stems every token.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizationBenchmark {
+
+    @Param("500")
+    int documents;
+
+    @Param("400")
+    int wordsPerDoc;
+
+    @Param({"2", "65536"})
+    int stemCacheCapacity;
+
+    private byte[][] pages;
+    private String[] texts;
+    private TokenPipeline pipeline;
+    private HtmlTextExtractor extractor;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SyntheticCorpus corpus = new SyntheticCorpus(SyntheticCorpus.DEFAULT_VOCABULARY);
+        pages = new byte[documents][];
+        texts = new String[documents];
+        extractor = new HtmlTextExtractor();
+        for (int i = 0; i < documents; i++) {
+            String html = corpus.document(i, wordsPerDoc);
+            pages[i] = html.getBytes(StandardCharsets.UTF_8);
+            texts[i] = extractor.extract(html, html.indexOf("<!DOCTYPE")).toString();
+        }
+        pipeline = new TokenPipeline(StopWordsLoader.loadStopWords(SyntheticCorpus.STOP_WORDS_PATH),
+                new CharArrayCache<>("Stem", stemCacheCapacity));
+    }
+
+    /**
+     The whole per-document path from raw bytes to term positions.
+     */
+    @Benchmark
+    public DocumentTerms analyzeDocument() throws IOException {
+        String html = CharsetDetector.decode(pages[next++ % documents]);
+        DocumentTerms terms = new DocumentTerms();
+        pipeline.tokenize(extractor.extract(html, html.indexOf("<!DOCTYPE")), terms);
+        return terms;
+    }
+
+    /**
+     Tokenizing and stemming alone, on already extracted text.
+     */
+    @Benchmark
+    public DocumentTerms tokenizeAndStem() throws IOException {
+        DocumentTerms terms = new DocumentTerms();
+        pipeline.tokenize(texts[next++ % documents], terms);
+        return terms;
+    }
+}
@@ -1,16 +1,46 @@
 import documentTokenizing.FileProcessor;
 import documentTokenizing.StopWordsLoader;
+import indexEncoding.ForwardIndexReader;
+import indexEncoding.Segment;
+import indexEncoding.SegmentManifest;
 import indexInverting.IndexInverter;
+import indexInverting.SegmentMerger;
 import indexReading.IndexReader;
+import indexReading.QueryableIndex;
+import pipelineMonitoring.MetricsReporter;
+import queryServing.BatchQueryRunner;
+import queryServing.IndexShard;
+import queryServing.LocalShard;
+import queryServing.QueryCommands;
+import queryServing.QueryServer;
+import queryServing.RemoteShard;
+import queryServing.ShardCoordinator;
+import queryServing.ShardServer;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 import java.util.Set;
 
 public class Main {
 
-    public static void main(String[] args) throws IOException {
+    private static final int DEFAULT_METRICS_INTERVAL = 10;
+    private static final String SHARDS_PATH = "src/main/resources/shards";
+    private static final String STOP_WORDS_PATH = "src/main/resources/stopped_words.txt";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // Child process of --shard-processes: serves one shard directory to the coordinator until stdin is closed
+        String shardServerPath = getOption(args, "--shard-server", null);
+        if (shardServerPath != null) {
+            runShardServer(shardServerPath, Long.parseLong(getOption(args, "--cache-size",
+                    String.valueOf(IndexReader.DEFAULT_CACHE_BYTES / (1024 * 1024)))) * 1024 * 1024);
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
 
         // Ask for the input file path (corpus directory)
@@ -25,31 +55,266 @@ public class Main {
 
         // Part 1: Tokenizing Documents
         final String outputPath1 = "src/main/resources/output_1";
-        final String stopWordsPath = "src/main/resources/stopped_words.txt";
-        ensureOutputDirectoryExists(outputPath1);
+        final String outputPath2 = "src/main/resources/output_2";
 
-        Set<String> stopWords = StopWordsLoader.loadStopWords(stopWordsPath);
-        FileProcessor processor = new FileProcessor(stopWords);
-        processor.processFiles(inputFilePath, outputPath1);
+        // --append adds the corpus to the existing index as a new segment instead of rebuilding everything
+        boolean append = Arrays.asList(args).contains("--append");
 
-        // Part 2: Inverting the index
-        final String docIndexPath = outputPath1 + "/doc_index.txt";
-        final String outputPath2 = "src/main/resources/output_2";
-        ensureOutputDirectoryExists(outputPath2);
-        final String termIndexPath = outputPath2 + "/term_index.txt";
-        final String termInfoPath = outputPath2 + "/term_info.txt";
+        // Split the corpus into this many document-partitioned shards, each a complete index of its own, e.g. --doc-shards 4
+        int docShards = Integer.parseInt(getOption(args, "--doc-shards", "0"));
+        // Serve each document shard from a child process instead of this one
+        boolean shardProcesses = Arrays.asList(args).contains("--shard-processes");
+
+        // A sharded build only writes to the shard directories, so it leaves any single index in place
+        if (docShards == 0) {
+            ensureOutputDirectoryExists(outputPath1, !append);
+            ensureOutputDirectoryExists(outputPath2, !append);
+        }
+
+        // Number of tokenizing workers, e.g. --threads 8 (defaults to one per core)
+        int threads = Integer.parseInt(getOption(args, "--threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        // Threads of the reading, parsing and tokenizing stages, e.g. --stage-threads 2,4,4 (split from --threads by default)
+        String stageThreads = getOption(args, "--stage-threads", null);
+
+        // Postings format of the term index, --postings text (default) or --postings binary
+        boolean binaryPostings = getOption(args, "--postings", "text").equals("binary");
 
-        IndexInverter inverter = new IndexInverter();
-        inverter.buildInvertedIndex(docIndexPath);
-        inverter.writeInvertedIndex(termIndexPath, termInfoPath);
+        // Number of term index shards, each inverted and encoded on its own thread, e.g. --postings-shards 4
+        int postingsShards = Integer.parseInt(getOption(args, "--postings-shards", "1"));
 
-        // Part 3: Reading the index
+        // Also export the binary forward index as a doc_index text file next to it, for inspecting it by hand
+        boolean docIndexText = Arrays.asList(args).contains("--doc-index-text");
+
+        // Heap budget for in-memory postings before sorted runs are spilled to disk, e.g. --memory-budget 512 (MB)
+        long memoryBudget = Long.parseLong(getOption(args, "--memory-budget",
+                String.valueOf(IndexInverter.DEFAULT_MEMORY_BUDGET / (1024 * 1024)))) * 1024 * 1024;
+        // Heap for the reader's postings and query result caches, e.g. --cache-size 128 (MB)
+        long cacheBytes = Long.parseLong(getOption(args, "--cache-size",
+                String.valueOf(IndexReader.DEFAULT_CACHE_BYTES / (1024 * 1024)))) * 1024 * 1024;
+
+        // Number of threads answering --batch commands or --serve requests, e.g. --query-threads 16 (defaults to one per core)
+        int queryThreads = Integer.parseInt(getOption(args, "--query-threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        // Serve lookups over HTTP on this localhost port instead of reading commands, e.g. --serve 8080
+        String servePort = getOption(args, "--serve", null);
+
+        // Directory for periodic metrics.json and metrics.prom dumps, e.g. --metrics-dir target/metrics --metrics-interval 5 (seconds)
+        String metricsDir = getOption(args, "--metrics-dir", null);
+        long metricsInterval = Long.parseLong(getOption(args, "--metrics-interval", String.valueOf(DEFAULT_METRICS_INTERVAL)));
+        MetricsReporter metricsReporter = metricsDir == null ? null : new MetricsReporter(metricsDir, metricsInterval);
+
+        Set<String> stopWords = StopWordsLoader.loadStopWords(STOP_WORDS_PATH);
+        if (docShards > 0) {
+            if (append || servePort != null) {
+                System.err.println("--append and --serve are not supported with --doc-shards");
+                System.exit(1);
+            }
+            buildDocumentShards(stopWords, inputFilePath, docShards, threads, stageThreads, memoryBudget, binaryPostings,
+                    postingsShards, docIndexText);
+            try (ShardCoordinator coordinator = openDocumentShards(docShards, stopWords, cacheBytes / docShards, shardProcesses)) {
+                runCommands(scanner, coordinator, queryThreads);
+            }
+            scanner.close();
+            if (metricsReporter != null) {
+                metricsReporter.close();
+            }
+            return;
+        }
+
+        FileProcessor processor = new FileProcessor(stopWords);
+        IndexInverter inverter = new IndexInverter(memoryBudget, binaryPostings, postingsShards);
         String docIdsPath = outputPath1 + "/docids.txt";
         String termIdsPath = outputPath1 + "/termids.txt";
-        IndexReader reader = new IndexReader(docIdsPath, termIdsPath, termInfoPath, termIndexPath, docIndexPath);
+        IndexReader reader;
+        SegmentMerger merger = null;
 
+        if (!append) {
+            processFiles(processor, inputFilePath, outputPath1, "doc_index.bin", threads, stageThreads);
+
+            // Part 2: Inverting the index
+            final String docIndexPath = outputPath1 + "/doc_index.bin";
+            if (docIndexText) {
+                ForwardIndexReader.exportText(docIndexPath, outputPath1 + "/doc_index.txt");
+            }
+            final String docStatsPath = outputPath1 + "/doc_stats.bin";
+            final String termIndexPath = outputPath2 + (binaryPostings ? "/term_index.bin" : "/term_index.txt");
+            final String termInfoPath = outputPath2 + "/term_info.txt";
+
+            inverter.buildInvertedIndex(docIndexPath, docStatsPath);
+            inverter.writeInvertedIndex(termIndexPath, termInfoPath);
+
+            // Part 3: Reading the index
+            reader = new IndexReader(docIdsPath, termIdsPath, termInfoPath, termIndexPath, docStatsPath, stopWords, cacheBytes);
+        }
+        else {
+            SegmentManifest manifest = SegmentMerger.loadManifest(outputPath1, outputPath2);
+            Segment segment = Segment.create(manifest.nextSegmentName(), outputPath1, outputPath2, binaryPostings);
+            if (!manifest.isEmpty()) {
+                processor.loadDictionaries(outputPath1);
+            }
+            processFiles(processor, inputFilePath, outputPath1, new File(segment.getDocIndexPath()).getName(), threads, stageThreads);
+            if (processor.getNewDocumentCount() == 0) {
+                // An empty segment would only be one more to open and search on every query
+                System.out.println("No new documents to index");
+                segment.delete();
+            }
+            else {
+                if (docIndexText) {
+                    ForwardIndexReader.exportText(segment.getDocIndexPath(), outputPath1 + "/doc_index_" + segment.getName() + ".txt");
+                }
+
+                // Part 2: Inverting the new segment
+                inverter.buildInvertedIndex(segment.getDocIndexPath(), segment.getDocStatsPath());
+                inverter.writeInvertedIndex(segment.getTermIndexPath(), segment.getTermInfoPath());
+                manifest.add(segment);
+                manifest.save();
+            }
+
+            // Part 3: Reading the index. The reader is opened before merging starts, so it never sees half-merged segments
+            reader = new IndexReader(docIdsPath, termIdsPath, manifest.getSegments(), stopWords, cacheBytes);
+            merger = new SegmentMerger(manifest, memoryBudget, binaryPostings, postingsShards, SegmentMerger.DEFAULT_MERGE_FACTOR);
+            merger.mergeInBackground();
+        }
+
+        if (servePort != null) {
+            serve(reader, Integer.parseInt(servePort), queryThreads);
+        }
+        else {
+            runCommands(scanner, reader, queryThreads);
+        }
+
+        scanner.close();
+        if (merger != null) {
+            merger.close();
+        }
+        if (metricsReporter != null) {
+            metricsReporter.close();
+        }
+    }
+
+    /**
+     Tokenizes the corpus with the given total number of threads, or with the per-stage thread counts if given.
+     */
+    private static void processFiles(FileProcessor processor, String inputFilePath, String outputPath, String docIndexFileName,
+                                     int threads, String stageThreads) throws IOException {
+        processFiles(processor, FileProcessor.listFiles(inputFilePath), outputPath, docIndexFileName, threads, stageThreads);
+    }
+
+    /**
+     Same as above for the given files.
+     */
+    private static void processFiles(FileProcessor processor, List<File> files, String outputPath, String docIndexFileName,
+                                     int threads, String stageThreads) throws IOException {
+        if (stageThreads == null) {
+            processor.processFiles(files, outputPath, docIndexFileName, threads);
+            return;
+        }
+        String[] counts = stageThreads.split(",");
+        if (counts.length != 3) {
+            System.err.println("Expected three thread counts for reading, parsing and tokenizing: " + stageThreads);
+            System.exit(1);
+        }
+        processor.processFiles(files, outputPath, docIndexFileName,
+                Integer.parseInt(counts[0].trim()), Integer.parseInt(counts[1].trim()), Integer.parseInt(counts[2].trim()));
+    }
+
+    /**
+     Builds a document-partitioned index under SHARDS_PATH: shard_k/output_1 and shard_k/output_2 hold a complete
+     index of the k-th part of the corpus. Shards are built one after another, each numbering its documents from
+     where the previous one stopped, so DOCIDs are those of a single index and only one shard is in memory at a time.
+     */
+    private static void buildDocumentShards(Set<String> stopWords, String inputFilePath, int docShards, int threads, String stageThreads,
+                                            long memoryBudget, boolean binaryPostings, int postingsShards, boolean docIndexText) throws IOException {
+        List<List<File>> parts = FileProcessor.partitionFiles(inputFilePath, docShards);
+        int nextDocId = 1;
+        for (int shard = 0; shard < docShards; shard++) {
+            String outputPath1 = shardPath(shard) + "/output_1";
+            String outputPath2 = shardPath(shard) + "/output_2";
+            ensureOutputDirectoryExists(outputPath1, true);
+            ensureOutputDirectoryExists(outputPath2, true);
+
+            FileProcessor processor = new FileProcessor(stopWords);
+            processor.setFirstDocId(nextDocId);
+            processFiles(processor, parts.get(shard), outputPath1, "doc_index.bin", threads, stageThreads);
+            nextDocId = processor.getNextDocId();
+            if (docIndexText) {
+                ForwardIndexReader.exportText(outputPath1 + "/doc_index.bin", outputPath1 + "/doc_index.txt");
+            }
+
+            IndexInverter inverter = new IndexInverter(memoryBudget, binaryPostings, postingsShards);
+            inverter.buildInvertedIndex(outputPath1 + "/doc_index.bin", outputPath1 + "/doc_stats.bin");
+            inverter.writeInvertedIndex(outputPath2 + (binaryPostings ? "/term_index.bin" : "/term_index.txt"),
+                    outputPath2 + "/term_info.txt");
+        }
+    }
+
+    /**
+     Opens the shards of a document-partitioned index in this process, or starts a child process serving each one.
+     */
+    private static ShardCoordinator openDocumentShards(int docShards, Set<String> stopWords, long cacheBytes,
+                                                       boolean shardProcesses) throws IOException {
+        List<IndexShard> shards = new ArrayList<>();
+        try {
+            for (int shard = 0; shard < docShards; shard++) {
+                String name = new File(shardPath(shard)).getName();
+                if (shardProcesses) {
+                    List<String> command = Arrays.asList(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                            "-cp", System.getProperty("java.class.path"), Main.class.getName(), "--shard-server", shardPath(shard),
+                            "--cache-size", String.valueOf(Math.max(1, cacheBytes / (1024 * 1024))));
+                    shards.add(RemoteShard.start(name, command));
+                }
+                else {
+                    shards.add(new LocalShard(name, openShardReader(shardPath(shard), stopWords, cacheBytes)));
+                }
+            }
+            return new ShardCoordinator(shards);
+        }
+        catch (IOException e) {
+            for (IndexShard shard : shards) {
+                shard.close();
+            }
+            throw e;
+        }
+    }
+
+    private static String shardPath(int shard) {
+        return SHARDS_PATH + "/shard_" + shard;
+    }
+
+    /**
+     Opens the index of one document shard directory.
+     */
+    private static IndexReader openShardReader(String shardPath, Set<String> stopWords, long cacheBytes) throws IOException {
+        String outputPath1 = shardPath + "/output_1";
+        String outputPath2 = shardPath + "/output_2";
+        String termIndexPath = new File(outputPath2 + "/term_index.bin").exists()
+                ? outputPath2 + "/term_index.bin" : outputPath2 + "/term_index.txt";
+        return new IndexReader(outputPath1 + "/docids.txt", outputPath1 + "/termids.txt", outputPath2 + "/term_info.txt",
+                termIndexPath, outputPath1 + "/doc_stats.bin", stopWords, cacheBytes);
+    }
+
+    /**
+     Serves one document shard on a free loopback port, announcing the port on stdout, until stdin reaches its end.
+     */
+    private static void runShardServer(String shardPath, long cacheBytes) throws IOException {
+        IndexReader reader = openShardReader(shardPath, StopWordsLoader.loadStopWords(STOP_WORDS_PATH), cacheBytes);
+        try (ShardServer server = new ShardServer(new LocalShard(new File(shardPath).getName(), reader), 0)) {
+            System.out.println(ShardServer.LISTENING + server.getPort());
+            System.out.flush();
+            while (System.in.read() >= 0) {
+                // Only the end of input matters
+            }
+        }
+    }
+
+    /**
+     Reads commands from the console and answers them until exit.
+     */
+    private static void runCommands(Scanner scanner, QueryableIndex reader, int queryThreads) throws IOException {
+        QueryCommands queryCommands = new QueryCommands(reader);
         while (true) {
-            System.out.println("\nEnter command: (--doc DOCNAME || --term TERM || --term TERM --doc DOCNAME || exit)");
+            System.out.println("\nEnter command: (--doc DOCNAME || --term TERM || --term TERM --doc DOCNAME || --search QUERY [--top K] || --query BOOLEAN_QUERY || --cache-stats || --metrics || --batch COMMANDS_FILE OUTPUT_FILE || exit)");
             String command = scanner.nextLine();
 
             if (command.equals("exit")) {
@@ -57,29 +322,54 @@ public class Main {
             }
 
             String[] commandParts = command.split(" ");
-            if (commandParts.length == 2 && commandParts[0].equals("--doc")) {
-                String docName = commandParts[1];
-                reader.printDocInfo(docName);
-            }
-            else if (commandParts.length == 2 && commandParts[0].equals("--term")) {
-                String term = commandParts[1];
-                reader.printTermInfo(term);
+            if (commandParts.length == 3 && commandParts[0].equals("--batch")) {
+                BatchQueryRunner batch = new BatchQueryRunner(queryCommands, queryThreads);
+                try {
+                    System.out.println(batch.run(Paths.get(commandParts[1]), Paths.get(commandParts[2])));
+                }
+                catch (IOException e) {
+                    System.err.println("Batch failed: " + e.getMessage());
+                }
             }
-            else if (commandParts.length == 4 && commandParts[0].equals("--term") && commandParts[2].equals("--doc")) {
-                String term = commandParts[1];
-                String docName = commandParts[3];
-                reader.printTermDocInfo(term, docName);
-            } else {
-                System.out.println("Invalid command. Usage: --doc DOCNAME | --term TERM [--doc DOCNAME] | exit");
+            else if (!queryCommands.execute(command, System.out, System.err)) {
+                System.out.println("Invalid command. Usage: --doc DOCNAME | --term TERM [--doc DOCNAME] | --search QUERY [--top K] | --query BOOLEAN_QUERY | --cache-stats | --metrics | --batch COMMANDS_FILE OUTPUT_FILE | exit");
             }
         }
-
-        scanner.close();
     }
 
+    /**
+     Serves the index over HTTP until the process is interrupted or terminated. The shutdown hook lets in-flight
+     requests finish and then waits for main to release everything else.
+     */
+    private static void serve(IndexReader reader, int port, int threads) throws IOException, InterruptedException {
+        QueryServer server = new QueryServer(reader, port, threads);
+        Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            try {
+                mainThread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        System.out.println("Serving on http://localhost:" + server.getPort() + "/");
+        server.awaitClose();
+    }
 
+    /**
+     Returns the value following the given flag in the program arguments, or the default value if the flag is absent.
+     */
+    private static String getOption(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
 
-    private static void ensureOutputDirectoryExists(String path) {
+    private static void ensureOutputDirectoryExists(String path, boolean clearExisting) {
         File directory = new File(path);
         if (!directory.exists()) {
             if (directory.mkdirs()) {
@@ -90,7 +380,7 @@ public class Main {
                 System.exit(1);  // Exit if the directory cannot be created to avoid further errors
             }
         }
-        else {
+        else if (clearExisting) {
             // Directory exists, clear existing files
             for (File file : directory.listFiles()) {
                 if (!file.delete()) {
@@ -0,0 +1,99 @@
+package documentTokenizing;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ Decodes the raw bytes of a crawled document with a single pass over an in-memory buffer.
+
+ The charset is taken from a byte order mark if there is one, otherwise from the first charset= declaration in
+ the leading bytes, which covers the HTTP Content-Type header of a WARC record as well as both forms of the
+ HTML meta tag. Without a usable declaration the bytes are checked as UTF-8 and decoded as ISO-8859-1 if they
+ are not valid UTF-8, so a document is never read or decoded more than once.
+ */
+final class CharsetDetector {
+    // WARC and HTTP headers plus the start of <head> comfortably fit in this many bytes
+    private static final int SNIFF_LENGTH = 8192;
+
+    private static final Pattern CHARSET_DECLARATION =
+            Pattern.compile("charset\\s*=\\s*[\"']?([A-Za-z0-9._:-]+)", Pattern.CASE_INSENSITIVE);
+
+    private CharsetDetector() {
+    }
+
+    /**
+     Returns the text of the document bytes.
+     */
+    static String decode(byte[] bytes) {
+        int length = bytes.length;
+        if (length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            return new String(bytes, 3, length - 3, StandardCharsets.UTF_8);
+        }
+        if (length >= 2 && (bytes[0] & 0xFF) == 0xFE && (bytes[1] & 0xFF) == 0xFF) {
+            return new String(bytes, 2, length - 2, StandardCharsets.UTF_16BE);
+        }
+        if (length >= 2 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xFE) {
+            return new String(bytes, 2, length - 2, StandardCharsets.UTF_16LE);
+        }
+
+        Charset declared = declaredCharset(bytes);
+        if (declared != null && !declared.equals(StandardCharsets.UTF_8)) {
+            return new String(bytes, declared);
+        }
+        if (isAscii(bytes)) {
+            return new String(bytes, StandardCharsets.ISO_8859_1);  // identical to UTF-8 here, and the cheapest decode
+        }
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes))
+                    .toString();
+        }
+        catch (CharacterCodingException e) {
+            return new String(bytes, StandardCharsets.ISO_8859_1);  // every byte sequence is valid ISO-8859-1
+        }
+    }
+
+    /**
+     Returns the charset named by the first charset= declaration in the leading bytes, or null if there is none
+     or it is not supported. A declared UTF-16 or UTF-32 without a byte order mark must be wrong, since the
+     declaration itself was readable as ASCII, so it is treated as UTF-8.
+     */
+    private static Charset declaredCharset(byte[] bytes) {
+        String head = new String(bytes, 0, Math.min(bytes.length, SNIFF_LENGTH), StandardCharsets.ISO_8859_1);
+        Matcher matcher = CHARSET_DECLARATION.matcher(head);
+        if (!matcher.find()) {
+            return null;
+        }
+        String name = matcher.group(1);
+        try {
+            if (!Charset.isSupported(name)) {
+                return null;
+            }
+            Charset charset = Charset.forName(name);
+            if (charset.name().startsWith("UTF-16") || charset.name().startsWith("UTF-32")) {
+                return StandardCharsets.UTF_8;
+            }
+            return charset;
+        }
+        catch (IllegalCharsetNameException e) {
+            return null;
+        }
+    }
+
+    private static boolean isAscii(byte[] bytes) {
+        for (byte b : bytes) {
+            if (b < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
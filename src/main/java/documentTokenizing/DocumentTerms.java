@@ -0,0 +1,51 @@
+package documentTokenizing;
+
+import primitiveCollections.IntList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ Term positions of a single document, built by one worker before any global IDs are assigned.
+ Each distinct term gets a local ID in order of first occurrence. Terms are the stem strings shared
+ through the stem cache, so adding a repeated term allocates nothing.
+ */
+class DocumentTerms {
+    private final Map<String, Integer> localIds = new HashMap<>(64);
+    private final List<String> terms = new ArrayList<>();
+    private final List<IntList> positions = new ArrayList<>();
+    private int tokenCount;
+
+    void addPosition(String term, int position) {
+        Integer localId = localIds.get(term);
+        if (localId == null) {
+            localId = terms.size();
+            localIds.put(term, localId);
+            terms.add(term);
+            positions.add(new IntList());
+        }
+        positions.get(localId).add(position);
+        tokenCount++;
+    }
+
+    int size() {
+        return terms.size();
+    }
+
+    /**
+     Number of tokens added, counting repeated terms.
+     */
+    int tokenCount() {
+        return tokenCount;
+    }
+
+    String getTerm(int localId) {
+        return terms.get(localId);
+    }
+
+    IntList getPositions(int localId) {
+        return positions.get(localId);
+    }
+}
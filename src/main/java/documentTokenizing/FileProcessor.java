@@ -1,39 +1,57 @@
 package documentTokenizing;
 
-import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.en.PorterStemFilter;
-import org.apache.lucene.analysis.standard.StandardTokenizer;
-import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
+import indexEncoding.ForwardIndexWriter;
+import pipelineMonitoring.Metrics;
+import pipelineMonitoring.Stage;
+import pipelineMonitoring.StageTimer;
+import primitiveCollections.CharArrayCache;
+import primitiveCollections.IntList;
+import primitiveCollections.IntObjectHashMap;
+import primitiveCollections.StringIdDictionary;
 
 import java.io.*;
-import java.nio.charset.Charset;
-import java.nio.charset.MalformedInputException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class FileProcessor {
 
-    // Compile the regular expression pattern for tokenization
-    private static final Pattern TOKEN_PATTERN = Pattern.compile("\\w+(\\.?\\w+)*");
-    private final Set<String> stopWords;
+    // Documents allowed between the readers and the index accumulator, per pipeline thread
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    // Distinct surface forms whose stems are kept; enough for the frequent words while staying mostly in CPU cache
+    private static final int STEM_CACHE_CAPACITY = 1 << 15;
 
-    private final Map<String, Integer> docIdMap = new HashMap<>();
-    private final Map<String, Integer> termIdMap = new HashMap<>();
-    private final Map<Integer, Map<Integer, List<Integer>>> docIndex = new HashMap<>();
+    private final Set<String> stopWords;
+    // Shared by all worker threads, so a word stemmed by one is a hit for the others
+    private final CharArrayCache<String> stemCache = new CharArrayCache<>("Stem", STEM_CACHE_CAPACITY);
+    // Each worker thread reuses its own tokenizer buffers across documents
+    private final ThreadLocal<TokenPipeline> tokenPipeline;
+    private final ThreadLocal<HtmlTextExtractor> textExtractor = ThreadLocal.withInitial(HtmlTextExtractor::new);
+
+    // Document name -> DOCID and term -> TERMID, with the names and terms packed into byte arenas
+    private final StringIdDictionary docIds = new StringIdDictionary();
+    private final StringIdDictionary termIds = new StringIdDictionary();
+    private final IntObjectHashMap<IntObjectHashMap<IntList>> docIndex = new IntObjectHashMap<>();
     private int docIdCounter = 1;
     private int termIdCounter = 1;
+    // Documents with a lower ID were indexed by an earlier run and belong to an existing segment
+    private int firstNewDocId = 1;
 
     public FileProcessor(Set<String> stopWords) {
         this.stopWords = stopWords;
+        this.tokenPipeline = ThreadLocal.withInitial(() -> new TokenPipeline(stopWords, stemCache));
+        Metrics.registerCache("stem", stemCache::hits, stemCache::misses);
     }
 
 
@@ -41,19 +59,238 @@ public class FileProcessor {
      Processes all files in the given directory, tokenizes their content, and writes the resulting indices to the output path.
      */
     public void processFiles(String directoryPath, String outputPath) throws IOException {
-        List<File> files = listFiles(directoryPath);
+        processFiles(directoryPath, outputPath, 1);
+    }
+
+    /**
+     Processes all files using the given number of worker threads and writes the document index to doc_index.bin.
+     */
+    public void processFiles(String directoryPath, String outputPath, int threads) throws IOException {
+        processFiles(directoryPath, outputPath, "doc_index.bin", threads);
+    }
+
+    /**
+     Processes all files using the given number of worker threads, split between the reading, parsing and
+     tokenizing stages of the pipeline described below. A single thread processes the files one after another.
+     docids.txt and termids.txt always receive the complete dictionaries; the document index only covers this run.
+     */
+    public void processFiles(String directoryPath, String outputPath, String docIndexFileName, int threads) throws IOException {
+        processFiles(listFiles(directoryPath), outputPath, docIndexFileName, threads);
+    }
+
+    /**
+     Same as processFiles(String, String, String, int) for the given files, which must be sorted by path.
+     */
+    public void processFiles(List<File> files, String outputPath, String docIndexFileName, int threads) throws IOException {
+        if (threads > 1) {
+            processFiles(files, outputPath, docIndexFileName,
+                    Math.max(1, threads / 4), Math.max(1, threads / 2), Math.max(1, threads / 2));
+            return;
+        }
+
         int totalFiles = files.size();
         int processedFiles = 0;
-
         for (File file : files) {
-            processDocument(file);
+            addDocument(file, analyzeDocument(file));
             processedFiles++;
             printProgress(processedFiles, totalFiles);
         }
-        finalizeIndexing(outputPath);
+        finalizeIndexing(outputPath, docIndexFileName);
+        System.out.println();  // Move to the next line after completion
+    }
+
+    /**
+     Processes all files in a pipeline of stages connected by bounded queues, each with its own threads: readers
+     load the file bytes, parsers decode them and extract the text, and tokenizers produce the term positions.
+     The calling thread merges the documents into the index in path order, so doc and term IDs match a
+     single-threaded run, and a writer thread appends every document to the document index as soon as no later
+     file can add to it, so disk writes overlap with parsing and finished documents do not stay on the heap.
+     */
+    public void processFiles(String directoryPath, String outputPath, String docIndexFileName,
+                             int readThreads, int parseThreads, int tokenizeThreads) throws IOException {
+        processFiles(listFiles(directoryPath), outputPath, docIndexFileName, readThreads, parseThreads, tokenizeThreads);
+    }
+
+    /**
+     Same as processFiles(String, String, String, int, int, int) for the given files, which must be sorted by path.
+     */
+    public void processFiles(List<File> files, String outputPath, String docIndexFileName,
+                             int readThreads, int parseThreads, int tokenizeThreads) throws IOException {
+        int totalFiles = files.size();
+        int window = (readThreads + parseThreads + tokenizeThreads) * IN_FLIGHT_PER_THREAD;
+        Semaphore inFlight = new Semaphore(window);
+        StageQueue<PipelineDocument> parseQueue = new StageQueue<>(window, Stage.READ, Stage.EXTRACT);
+        StageQueue<PipelineDocument> tokenizeQueue = new StageQueue<>(window, Stage.EXTRACT, Stage.TOKENIZE);
+        StageQueue<PipelineDocument> indexQueue = new StageQueue<>(window, Stage.TOKENIZE, Stage.INDEX);
+        StageQueue<PipelineDocument> writeQueue = new StageQueue<>(window, Stage.INDEX, Stage.WRITE_DOC_INDEX);
+
+        // A document's ID can still gain positions while a later file has the same name
+        Map<String, Integer> remainingNames = new HashMap<>();
+        for (File file : files) {
+            remainingNames.merge(file.getName(), 1, Integer::sum);
+        }
+        Set<Integer> unfinishedDocIds = new HashSet<>();
+        int nextDocIdToWrite = docIdCounter;
+
+        Pipeline pipeline = new Pipeline(readThreads + parseThreads + tokenizeThreads + 1);
+        try {
+            AtomicInteger nextFile = new AtomicInteger();
+            AtomicInteger readersLeft = new AtomicInteger(readThreads);
+            for (int i = 0; i < readThreads; i++) {
+                pipeline.submit(() -> {
+                    while (true) {
+                        inFlight.acquire();
+                        int index = nextFile.getAndIncrement();
+                        if (index >= totalFiles) {
+                            inFlight.release();
+                            break;
+                        }
+                        File file = files.get(index);
+                        parseQueue.put(new PipelineDocument(index, file, readFile(file)));
+                    }
+                    if (readersLeft.decrementAndGet() == 0) {
+                        parseQueue.put(PipelineDocument.END);
+                    }
+                    return null;
+                });
+            }
+            pipeline.startStage(parseThreads, parseQueue, tokenizeQueue, document -> {
+                CharSequence text = extractText(document.bytes);
+                document.text = text == null ? null : text.toString();  // the extractor reuses its buffer
+                document.bytes = null;
+            });
+            pipeline.startStage(tokenizeThreads, tokenizeQueue, indexQueue, document -> {
+                document.terms = document.text == null ? null : tokenize(document.text);
+                document.text = null;
+            });
+            pipeline.submit(() -> {
+                try (ForwardIndexWriter writer = new ForwardIndexWriter(outputPath + "/" + docIndexFileName)) {
+                    PipelineDocument document;
+                    while ((document = writeQueue.take()) != PipelineDocument.END) {
+                        StageTimer timer = Metrics.start(Stage.WRITE_DOC_INDEX);
+                        writer.writeDocument(document.docId, document.termPositions);
+                        timer.stop();
+                    }
+                }
+                return null;
+            });
+
+            // Documents arrive in any order and are merged in file order
+            Map<Integer, PipelineDocument> arrived = new HashMap<>();
+            int processedFiles = 0;
+            PipelineDocument document;
+            while ((document = indexQueue.take()) != PipelineDocument.END) {
+                arrived.put(document.sequence, document);
+                while ((document = arrived.remove(processedFiles)) != null) {
+                    String docName = document.file.getName();
+                    Integer remaining = remainingNames.merge(docName, -1, (count, change) -> count + change == 0 ? null : count + change);
+                    addDocument(document.file, document.terms);
+                    int docId = docIds.get(docName);
+                    if (docId >= 0 && remaining != null) {
+                        unfinishedDocIds.add(docId);
+                    }
+                    else if (docId >= 0) {
+                        unfinishedDocIds.remove(docId);
+                    }
+                    while (nextDocIdToWrite < docIdCounter && !unfinishedDocIds.contains(nextDocIdToWrite)) {
+                        writeQueue.put(new PipelineDocument(nextDocIdToWrite, docIndex.remove(nextDocIdToWrite)));
+                        nextDocIdToWrite++;
+                    }
+                    inFlight.release();
+                    processedFiles++;
+                    printProgress(processedFiles, totalFiles);
+                }
+            }
+            writeQueue.put(PipelineDocument.END);
+            pipeline.await();
+        }
+        catch (InterruptedException e) {
+            if (pipeline.failure.get() == null) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while processing files");
+            }
+            Thread.interrupted();  // the interrupt only reported a failed stage
+        }
+        finally {
+            pipeline.close();
+        }
+        pipeline.rethrowFailure();
+
+        StageTimer timer = Metrics.start(Stage.WRITE_DICTIONARIES);
+        writeDocIds(outputPath);
+        writeTermIds(outputPath);
+        timer.stop();
         System.out.println();  // Move to the next line after completion
     }
 
+    /**
+     Loads docids.txt and termids.txt from an earlier run in the output path, so new documents and terms continue
+     their numbering and existing terms keep their IDs. Documents that are already indexed are skipped.
+     */
+    public void loadDictionaries(String outputPath) throws IOException {
+        for (String line : Files.readAllLines(Paths.get(outputPath, "docids.txt"))) {
+            String[] parts = line.split("\\t");
+            int docId = Integer.parseInt(parts[0].trim());
+            docIds.put(parts[1].trim(), docId);
+            docIdCounter = Math.max(docIdCounter, docId + 1);
+        }
+        for (String line : Files.readAllLines(Paths.get(outputPath, "termids.txt"))) {
+            String[] parts = line.split("\\t");
+            int termId = Integer.parseInt(parts[0].trim());
+            termIds.put(parts[1].trim(), termId);
+            termIdCounter = Math.max(termIdCounter, termId + 1);
+        }
+        firstNewDocId = docIdCounter;
+    }
+
+    /**
+     Numbers the documents of this run from firstDocId on, so the shards of a document-partitioned index get
+     disjoint DOCIDs. Must be called before any files are processed.
+     */
+    public void setFirstDocId(int firstDocId) {
+        docIdCounter = firstDocId;
+        firstNewDocId = firstDocId;
+    }
+
+    /**
+     Returns the DOCID the next new document would get.
+     */
+    public int getNextDocId() {
+        return docIdCounter;
+    }
+
+    /**
+     Returns the number of documents this processor has numbered that were not in the loaded dictionaries.
+     */
+    public int getNewDocumentCount() {
+        return docIdCounter - firstNewDocId;
+    }
+
+    /**
+     Splits the files of a directory into the given number of parts for a document-partitioned index.
+     The sorted file list is cut into contiguous chunks of about the same size, and a file is moved to the part of
+     the first file with the same name, since files sharing a name are one document. Processing the parts in order,
+     each starting at the DOCID where the previous one stopped, then assigns the DOCIDs of a single run.
+     */
+    public static List<List<File>> partitionFiles(String directoryPath, int parts) throws IOException {
+        List<File> files = listFiles(directoryPath);
+        List<List<File>> partition = new ArrayList<>();
+        for (int i = 0; i < parts; i++) {
+            partition.add(new ArrayList<>());
+        }
+        Map<String, Integer> partOfName = new HashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            Integer part = partOfName.get(file.getName());
+            if (part == null) {
+                part = (int) ((long) i * parts / files.size());
+                partOfName.put(file.getName(), part);
+            }
+            partition.get(part).add(file);
+        }
+        return partition;
+    }
+
     private void printProgress(int processedFiles, int totalFiles) {
         System.out.print("\rProcessing files: " + processedFiles + "/" + totalFiles);
         System.out.flush();
@@ -61,69 +298,108 @@ public class FileProcessor {
 
 
     /**
-     Reads and processes a single document file, extracting text, tokenizing, and updating indices.
+     Reads a single document file, extracting and tokenizing its text into per-document term positions.
+     Only touches read-only state, so it is safe to call from several worker threads.
      */
-    private void processDocument(File file) throws IOException {
-        String content = extractText(file);
+    private DocumentTerms analyzeDocument(File file) throws IOException {
+        CharSequence content = extractText(readFile(file));
         if (content == null) {
+            return null;
+        }
+        return tokenize(content);
+    }
+
+    /**
+     Tokenizes the text of a document into its term positions.
+     */
+    private DocumentTerms tokenize(CharSequence content) throws IOException {
+        StageTimer timer = Metrics.start(Stage.TOKENIZE);
+        DocumentTerms documentTerms = new DocumentTerms();
+        tokenPipeline.get().tokenize(content, documentTerms);  //1.3 - 1.6 tokenize, lowercase, drop stop words and stem
+        timer.stop(content.length());
+        return documentTerms;
+    }
+
+    /**
+     Assigns a document ID to an analyzed document and merges its term positions into the shared indices.
+     */
+    private void addDocument(File file, DocumentTerms documentTerms) {
+        if (documentTerms == null) {
             System.err.println("No HTML content found in file: " + file.getName());
             return;
         }
-        List<String> tokens = tokenizeAndStem(content);
 
-        int docId = docIdMap.computeIfAbsent(file.getName(), k -> docIdCounter++);
-        Map<Integer, List<Integer>> termPositions = docIndex.computeIfAbsent(docId, k -> new HashMap<>());
+        int existingDocId = docIds.get(file.getName());
+        if (existingDocId >= 0 && existingDocId < firstNewDocId) {
+            System.err.println("Skipping already indexed document: " + file.getName());
+            return;
+        }
 
-        for (int i = 0; i < tokens.size(); i++) {
-            int termId = termIdMap.computeIfAbsent(tokens.get(i), k -> termIdCounter++);
-            termPositions.computeIfAbsent(termId, k -> new ArrayList<>()).add(i + 1);
+        StageTimer timer = Metrics.start(Stage.INDEX);
+        int docId = docIds.putIfAbsent(file.getName(), docIdCounter);
+        if (docId == docIdCounter) {
+            docIdCounter++;
+        }
+        IntObjectHashMap<IntList> termPositions = docIndex.computeIfAbsent(docId, k -> new IntObjectHashMap<>(documentTerms.size()));
+
+        // Terms are visited in order of first occurrence, so term IDs are assigned exactly as in a sequential scan
+        for (int localId = 0; localId < documentTerms.size(); localId++) {
+            int termId = termIds.putIfAbsent(documentTerms.getTerm(localId), termIdCounter);
+            if (termId == termIdCounter) {
+                termIdCounter++;
+            }
+            termPositions.computeIfAbsent(termId, k -> new IntList()).addAll(documentTerms.getPositions(localId));
         }
+        timer.stop();
+        Metrics.addDocument(documentTerms.tokenCount());
     }
 
     /**
-     Lists all regular files in the specified directory and returns them as a list.
+     Lists all regular files in the specified directory, sorted by path so document IDs are deterministic.
      */
-    private List<File> listFiles(String directoryPath) throws IOException {
+    public static List<File> listFiles(String directoryPath) throws IOException {
         try (Stream<Path> paths = Files.walk(Paths.get(directoryPath))) {
             return paths.filter(Files::isRegularFile)
+                    .sorted()
                     .map(Path::toFile)
                     .collect(Collectors.toList());
         }
     }
 
     /**
-     Extracts and returns the plain text content from the given HTML document file, handling different character encodings.
+     Reads the raw bytes of a document file.
+     */
+    private byte[] readFile(File file) throws IOException {
+        StageTimer timer = Metrics.start(Stage.READ);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        timer.stop(bytes.length);
+        Metrics.addBytesRead(bytes.length);
+        return bytes;
+    }
+
+    /**
+     Extracts and returns the plain text content from the bytes of an HTML document file.
+     The bytes are decoded from memory using the charset detected by CharsetDetector.
+     The returned text is only valid until the next document is extracted on the same thread.
      */
-    private String extractText(File file) throws IOException {//1.2
-        // Try with UTF-8 encoding first
+    private CharSequence extractText(byte[] bytes) {//1.2
+        StageTimer timer = Metrics.start(Stage.DECODE);
+        String fileContent = CharsetDetector.decode(bytes);
+        timer.stop(bytes.length);
+
+        timer = Metrics.start(Stage.EXTRACT);
         try {
-            return extractTextWithEncoding(file, StandardCharsets.UTF_8);
+            return extractText(fileContent);
         }
-        catch (MalformedInputException e) {
-//            System.err.println("MalformedInputException with UTF-8, trying ISO-8859-1 for file: " + file.getName());
-            // Try with ISO-8859-1 encoding
-            try {
-                return extractTextWithEncoding(file, StandardCharsets.ISO_8859_1);
-            }
-            catch (MalformedInputException e1) {
-//                System.err.println("MalformedInputException with ISO-8859-1 for file: " + file.getName());
-                // Try with default charset as a last resort
-                try {
-                    return extractTextWithEncoding(file, Charset.defaultCharset());
-                }
-                catch (MalformedInputException e2) {
-                    System.err.println("MalformedInputException with default charset for file: " + file.getName());
-                    return null;
-                }
-            }
+        finally {
+            timer.stop(fileContent.length());
         }
     }
 
     /**
-     Reads the file content with the specified charset, extracts HTML text, or returns plain text if no HTML is found.
+     Returns the text of a decoded document, skipping any headers before the HTML.
      */
-    private String extractTextWithEncoding(File file, Charset charset) throws IOException {
-        String fileContent = Files.readString(file.toPath(), charset);
+    private CharSequence extractText(String fileContent) {
         // Find the beginning of the HTML content
         int htmlStartIndex = fileContent.indexOf("<!DOCTYPE");
         if (htmlStartIndex == -1) {
@@ -134,9 +410,7 @@ public class FileProcessor {
         }
 
         if (htmlStartIndex != -1) {
-            String htmlContent = fileContent.substring(htmlStartIndex);
-            Document document = Jsoup.parse(htmlContent);
-            return document.text();  // Extracts and returns just the text from the HTML, ignoring all tags
+            return textExtractor.get().extract(fileContent, htmlStartIndex);  // Just the text from the HTML, ignoring all tags
         }
         else {
             // If no HTML content is found, return the plain text content after skipping headers
@@ -150,64 +424,27 @@ public class FileProcessor {
     }
 
 
-    /**
-     Tokenizes the input text and applies stemming, returning a list of stemmed tokens.
-     */
-    private List<String> tokenizeAndStem(String text) {
-        List<String> tokens = new ArrayList<>();
-        Matcher matcher = TOKEN_PATTERN.matcher(text); //1.3 tokenize
-        while (matcher.find()) {
-            String token = matcher.group().toLowerCase();  //1.4 Convert each token to lowercase
-            if (!this.stopWords.contains(token)) { //1.5 don't use stop words
-                tokens.add(token);
-            }
-        }
-        return stemTokens(tokens);  //1.6 Apply stemming to the filtered tokens
-    }
-
-    // 1.6 stemming the tokens
-    /**
-     Applies the Porter stemmer to a list of tokens and returns the list of stemmed tokens.
-     */
-    private List<String> stemTokens(List<String> tokens) {
-        List<String> stemmedTokens = new ArrayList<>();
-        StandardTokenizer tokenizer = new StandardTokenizer();
-        tokenizer.setReader(new StringReader(String.join(" ", tokens)));
-        TokenStream tokenStream = new PorterStemFilter(tokenizer);
-        CharTermAttribute charTermAttr = tokenStream.addAttribute(CharTermAttribute.class);
-        try {
-            tokenStream.reset();
-            while (tokenStream.incrementToken()) {
-                stemmedTokens.add(charTermAttr.toString());
-            }
-            tokenStream.end();
-            tokenStream.close();
-        } catch (IOException e) {
-            System.err.println("Error during stemming: " + e.getMessage());
-        }
-        return stemmedTokens;
-    }
-
     //1.7 write documents
     /**
      Writes the final indices (document IDs, term IDs, and index) to the specified output path.
      */
-    private void finalizeIndexing(String outputPath) throws IOException {
+    private void finalizeIndexing(String outputPath, String docIndexFileName) throws IOException {
+        StageTimer timer = Metrics.start(Stage.WRITE_DICTIONARIES);
         writeDocIds(outputPath);
         writeTermIds(outputPath);
-        writeDocIndex(outputPath);
+        timer.stop();
+        timer = Metrics.start(Stage.WRITE_DOC_INDEX);
+        writeDocIndex(outputPath, docIndexFileName);
+        timer.stop(Files.size(Paths.get(outputPath, docIndexFileName)));
     }
 
     /**
      Writes the mapping of document IDs to document names to a file in the output path.
      */
     private void writeDocIds(String outputPath) throws IOException {
-        TreeMap<Integer, String> sortedDocs = new TreeMap<>(docIdMap.entrySet().stream()
-                .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey)));
-
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath + "/docids.txt"))) {
-            for (Map.Entry<Integer, String> entry : sortedDocs.entrySet()) {
-                writer.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+            for (int docId : docIds.ids()) {
+                writer.write(docId + "\t" + docIds.getKey(docId) + "\n");
             }
         }
     }
@@ -216,42 +453,140 @@ public class FileProcessor {
      Writes the mapping of term IDs to terms to a file in the output path.
      */
     private void writeTermIds(String outputPath) throws IOException {
-        TreeMap<Integer, String> sortedTerms = new TreeMap<>(termIdMap.entrySet().stream()
-                .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey)));
-
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath + "/termids.txt"))) {
-            for (Map.Entry<Integer, String> entry : sortedTerms.entrySet()) {
-                String formattedTermId = String.format("%-4d", entry.getKey()); // Ensure a minimum width
-                writer.write(formattedTermId + "\t" + entry.getValue() + "\n");
+            for (int termId : termIds.ids()) {
+                String formattedTermId = String.format("%-4d", termId); // Ensure a minimum width
+                writer.write(formattedTermId + "\t" + termIds.getKey(termId) + "\n");
             }
         }
     }
 
     /**
-     Writes the index of documents and their term positions to a file in the output path.
+     Writes the index of documents and their term positions to a file in the output path, in the binary
+     layout described in ForwardIndexFormat.
      */
-    private void writeDocIndex(String outputPath) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath + "/doc_index.txt"))) {
-            for (Map.Entry<Integer, Map<Integer, List<Integer>>> docEntry : docIndex.entrySet()) {
-                int docId = docEntry.getKey();
-                Map<Integer, List<Integer>> terms = docEntry.getValue();
-                for (Map.Entry<Integer, List<Integer>> termEntry : terms.entrySet()) {
-                    int termId = termEntry.getKey();
-                    List<Integer> positions = termEntry.getValue();
-
-                    // Creating the positions list string without any delimiter
-                    String positionsList = positions.stream()
-                            .map(Object::toString)
-                            .collect(Collectors.joining(" "));
-
-                    // Construct the line without text labels and commas
-                    String line = String.format("%d\t%d\t%s%n", docId, termId, positionsList);
-
-                    writer.write(line);
-                }
+    private void writeDocIndex(String outputPath, String docIndexFileName) throws IOException {
+        try (ForwardIndexWriter writer = new ForwardIndexWriter(outputPath + "/" + docIndexFileName)) {
+            int[] docIds = docIndex.keys();
+            Arrays.sort(docIds);
+            for (int docId : docIds) {
+                writer.writeDocument(docId, docIndex.get(docId));
             }
         }
     }
 
+    /**
+     A document moving through the pipeline. Each stage replaces the previous stage's result with its own,
+     and the index accumulator reuses it to hand a finished document index entry to the writer.
+     */
+    private static final class PipelineDocument {
+        static final PipelineDocument END = new PipelineDocument(-1, null, null);
+
+        final int sequence;
+        final File file;
+        byte[] bytes;
+        String text;
+        DocumentTerms terms;
+
+        int docId;
+        IntObjectHashMap<IntList> termPositions;
+
+        PipelineDocument(int sequence, File file, byte[] bytes) {
+            this.sequence = sequence;
+            this.file = file;
+            this.bytes = bytes;
+        }
+
+        PipelineDocument(int docId, IntObjectHashMap<IntList> termPositions) {
+            this(-1, null, null);
+            this.docId = docId;
+            this.termPositions = termPositions;
+        }
+    }
+
+    private interface DocumentStep {
+        void apply(PipelineDocument document) throws IOException;
+    }
+
+    /**
+     Threads of one pipeline run. The first failure of any stage stops all the others and interrupts the
+     accumulating thread, which then rethrows it.
+     */
+    private static final class Pipeline implements AutoCloseable {
+        private final ExecutorService executor;
+        private final Thread accumulator = Thread.currentThread();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private volatile boolean closed;
+
+        Pipeline(int threads) {
+            this.executor = Executors.newFixedThreadPool(threads);
+        }
+
+        void submit(Callable<Void> stage) {
+            executor.submit(() -> {
+                try {
+                    return stage.call();
+                }
+                catch (InterruptedException e) {
+                    return null;  // stopped because another stage failed
+                }
+                catch (Throwable e) {
+                    if (failure.compareAndSet(null, e) && !closed) {
+                        executor.shutdownNow();
+                        accumulator.interrupt();
+                    }
+                    return null;
+                }
+            });
+        }
+
+        /**
+         Starts the given number of threads that take documents from input, apply the step and pass them to output.
+         The end marker is put back for the other threads of the stage, and the last one to stop forwards it.
+         */
+        void startStage(int threads, StageQueue<PipelineDocument> input, StageQueue<PipelineDocument> output, DocumentStep step) {
+            AtomicInteger threadsLeft = new AtomicInteger(threads);
+            for (int i = 0; i < threads; i++) {
+                submit(() -> {
+                    PipelineDocument document;
+                    while ((document = input.take()) != PipelineDocument.END) {
+                        step.apply(document);
+                        output.put(document);
+                    }
+                    input.put(PipelineDocument.END);
+                    if (threadsLeft.decrementAndGet() == 0) {
+                        output.put(PipelineDocument.END);
+                    }
+                    return null;
+                });
+            }
+        }
+
+        /**
+         Waits for every stage to finish after the end marker has gone through.
+         */
+        void await() throws InterruptedException {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
 
+        void rethrowFailure() throws IOException {
+            Throwable cause = failure.get();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause != null) {
+                throw new RuntimeException(cause);
+            }
+        }
+
+        /**
+         Stops any threads still running. Failures they report from here on no longer interrupt the accumulator.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,349 @@
+package documentTokenizing;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.jsoup.nodes.Entities;
+
+import java.util.Arrays;
+
+/**
+ Extracts the visible text of an HTML document in one forward scan, without building a DOM.
+
+ Tags, comments and declarations are skipped, script and style contents are dropped, and entities in text are
+ decoded. Separators follow Jsoup's Element.text(): the start of a block-level element or a line break separates
+ it from the text before it, and the end of a block-level element separates it only from a text node right after
+ it. So "a<b>b</b>" stays one word and "<p>a</p><p>b</p>" and "<div>a</div>b" become two, while
+ "<div>a</div><span>b</span>" stays one, as Jsoup has it. The text is collected into a buffer that is reused
+ between documents, so an extractor must only be used by one thread at a time.
+ */
+final class HtmlTextExtractor {
+    // The block tags known to Jsoup; unknown tags are inline
+    private static final CharArraySet BLOCK_TAGS = new CharArraySet(Arrays.asList(
+            "html", "head", "body", "frameset", "script", "noscript", "style", "meta", "link", "title", "frame",
+            "noframes", "section", "nav", "aside", "hgroup", "header", "footer", "p", "h1", "h2", "h3", "h4", "h5",
+            "h6", "ul", "ol", "pre", "div", "blockquote", "hr", "address", "figure", "figcaption", "form", "fieldset",
+            "ins", "del", "dl", "dt", "dd", "li", "table", "caption", "thead", "tfoot", "tbody", "colgroup", "col",
+            "tr", "th", "td", "video", "audio", "canvas", "details", "menu", "plaintext", "template", "article",
+            "main", "svg", "math", "center", "dir", "applet", "marquee", "listing"), true);
+
+    // Elements whose content is not markup: dropped entirely, kept with entities decoded, or kept verbatim
+    private static final CharArraySet DATA_TAGS = new CharArraySet(Arrays.asList("script", "style"), true);
+    private static final CharArraySet RCDATA_TAGS = new CharArraySet(Arrays.asList("title", "textarea"), true);
+    private static final CharArraySet RAWTEXT_TAGS = new CharArraySet(
+            Arrays.asList("iframe", "noembed", "noframes", "xmp"), true);
+
+    // Buffers grown by a very large page are released again before the next document
+    private static final int MAX_RETAINED_CHARS = 1 << 20;
+
+    private final StringBuilder text = new StringBuilder();
+    private char[] tagName = new char[16];
+    private int tagNameLength;
+    // The last node scanned was the end of a block-level element, so a text node next must be separated from it
+    private boolean afterBlockEnd;
+
+    /**
+     Returns the visible text of the HTML starting at the given index. The result is only valid until the next call.
+     */
+    CharSequence extract(String html, int start) {
+        if (text.capacity() > MAX_RETAINED_CHARS) {
+            text.setLength(0);
+            text.trimToSize();
+        }
+        text.setLength(0);
+        afterBlockEnd = false;
+
+        int length = html.length();
+        int cursor = start;
+        while (cursor < length) {
+            int markup = html.indexOf('<', cursor);
+            if (markup == -1) {
+                appendTextNode(html, cursor, length);
+                break;
+            }
+            appendTextNode(html, cursor, markup);
+            cursor = skipMarkup(html, markup);
+        }
+        return text;
+    }
+
+    /**
+     Handles the markup starting with the '<' at the given index and returns the index just after it.
+     A '<' that does not start a tag, comment or declaration is kept as text.
+     */
+    private int skipMarkup(String html, int markup) {
+        int length = html.length();
+        char next = markup + 1 < length ? html.charAt(markup + 1) : 0;
+
+        if (isLetter(next)) {
+            int nameEnd = readTagName(html, markup + 1);
+            int tagEnd = skipAttributes(html, nameEnd);
+            boolean selfClosing = tagEnd - nameEnd >= 2 && html.charAt(tagEnd - 1) == '>' && html.charAt(tagEnd - 2) == '/';
+            afterBlockEnd = false;
+            if (isBlockTag() || isTag("br")) {
+                appendSeparator();
+            }
+            if (selfClosing) {
+                return tagEnd;
+            }
+            if (DATA_TAGS.contains(tagName, 0, tagNameLength)) {
+                return skipElementContent(html, tagEnd, null, false);
+            }
+            if (RCDATA_TAGS.contains(tagName, 0, tagNameLength)) {
+                return skipElementContent(html, tagEnd, text, true);
+            }
+            if (RAWTEXT_TAGS.contains(tagName, 0, tagNameLength)) {
+                return skipElementContent(html, tagEnd, text, false);
+            }
+            if (isTag("plaintext")) {
+                text.append(html, tagEnd, length);
+                return length;
+            }
+            return tagEnd;
+        }
+        if (next == '/' && markup + 2 < length && isLetter(html.charAt(markup + 2))) {
+            int nameEnd = readTagName(html, markup + 2);
+            int tagEnd = skipAttributes(html, nameEnd);
+            afterBlockEnd = isBlockTag();
+            if (isTag("br")) {
+                appendSeparator();  // </br> is read as <br>
+            }
+            return tagEnd;
+        }
+        if (html.startsWith("![CDATA[", markup + 1)) {
+            int cdataEnd = html.indexOf("]]>", markup + 9);
+            beginTextNode();
+            text.append(html, markup + 9, cdataEnd == -1 ? length : cdataEnd);
+            return cdataEnd == -1 ? length : cdataEnd + 3;
+        }
+        afterBlockEnd = false;
+        if (html.startsWith("!--", markup + 1)) {
+            int commentEnd = html.indexOf("-->", markup + 4);
+            if (markup + 4 < length && html.charAt(markup + 4) == '>') {
+                return markup + 5;  // <!-->
+            }
+            return commentEnd == -1 ? length : commentEnd + 3;
+        }
+        if (next == '!' || next == '?' || next == '/') {
+            // Doctype, processing instruction or a bogus comment, all of which end at the next '>'
+            int declarationEnd = html.indexOf('>', markup + 2);
+            return declarationEnd == -1 ? length : declarationEnd + 1;
+        }
+        beginTextNode();
+        text.append('<');
+        return markup + 1;
+    }
+
+    /**
+     Reads a tag name starting at the given index into the tag name buffer and returns the index after it.
+     */
+    private int readTagName(String html, int start) {
+        int length = html.length();
+        int end = start;
+        while (end < length) {
+            char c = html.charAt(end);
+            if (isWhitespace(c) || c == '/' || c == '>' || c == '<') {
+                break;
+            }
+            end++;
+        }
+        tagNameLength = end - start;
+        if (tagName.length < tagNameLength) {
+            tagName = new char[Math.max(tagNameLength, tagName.length * 2)];
+        }
+        html.getChars(start, end, tagName, 0);
+        return end;
+    }
+
+    /**
+     Skips the attributes of a tag and returns the index after its closing '>'. Quoted attribute values may contain
+     '>'; outside them a '<' ends the tag early, as it does in Jsoup, and the end of input drops the tag.
+     */
+    private static int skipAttributes(String html, int start) {
+        int length = html.length();
+        int i = start;
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c == '>') {
+                return i + 1;
+            }
+            if (c == '<') {
+                return i;
+            }
+            if (c == '=') {
+                i++;
+                while (i < length && isWhitespace(html.charAt(i))) {
+                    i++;
+                }
+                if (i < length && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+                    int quoteEnd = html.indexOf(html.charAt(i), i + 1);
+                    if (quoteEnd == -1) {
+                        return length;
+                    }
+                    i = quoteEnd + 1;
+                }
+                continue;
+            }
+            i++;
+        }
+        return length;
+    }
+
+    /**
+     Skips the content of a script, style or other non-markup element up to and including its end tag, appending
+     the content to the output if one is given. Returns the index after the end tag.
+     */
+    private int skipElementContent(String html, int start, StringBuilder output, boolean decodeEntities) {
+        int length = html.length();
+        int contentEnd = start;
+        while (true) {
+            contentEnd = html.indexOf("</", contentEnd);
+            if (contentEnd == -1) {
+                contentEnd = length;
+                break;
+            }
+            int nameEnd = contentEnd + 2 + tagNameLength;
+            if (nameEnd <= length && regionMatchesTagName(html, contentEnd + 2)
+                    && (nameEnd == length || isWhitespace(html.charAt(nameEnd)) || html.charAt(nameEnd) == '/' || html.charAt(nameEnd) == '>')) {
+                break;
+            }
+            contentEnd += 2;
+        }
+
+        if (output != null) {
+            if (decodeEntities) {
+                appendText(html, start, contentEnd);
+            }
+            else {
+                output.append(html, start, contentEnd);
+            }
+        }
+        if (contentEnd == length) {
+            return length;
+        }
+        afterBlockEnd = isBlockTag();
+        return skipAttributes(html, contentEnd + 2 + tagNameLength);
+    }
+
+    /**
+     Appends the text between two pieces of markup, if there is any, as a text node.
+     */
+    private void appendTextNode(String html, int start, int end) {
+        if (start < end) {
+            beginTextNode();
+            appendText(html, start, end);
+        }
+    }
+
+    /**
+     Separates a text node from the end of a block-level element right before it.
+     */
+    private void beginTextNode() {
+        if (afterBlockEnd) {
+            appendSeparator();
+            afterBlockEnd = false;
+        }
+    }
+
+    /**
+     Appends a run of text, decoding character references the way Jsoup does in text content.
+     */
+    private void appendText(String html, int start, int end) {
+        int cursor = start;
+        while (cursor < end) {
+            int ampersand = html.indexOf('&', cursor);
+            if (ampersand == -1 || ampersand >= end) {
+                text.append(html, cursor, end);
+                return;
+            }
+            text.append(html, cursor, ampersand);
+            cursor = appendCharacterReference(html, ampersand, end);
+        }
+    }
+
+    /**
+     Decodes the character reference starting with the '&' at the given index and returns the index after it.
+     Named references need a ';' unless they are one of the legacy entities browsers accept without it.
+     Anything that is not a valid reference is kept as text.
+     */
+    private int appendCharacterReference(String html, int ampersand, int end) {
+        int i = ampersand + 1;
+        if (i < end && html.charAt(i) == '#') {
+            i++;
+            boolean hex = i < end && (html.charAt(i) == 'x' || html.charAt(i) == 'X');
+            if (hex) {
+                i++;
+            }
+            int digitsStart = i;
+            int codePoint = 0;
+            while (i < end && Character.digit(html.charAt(i), hex ? 16 : 10) >= 0) {
+                codePoint = Math.min(codePoint * (hex ? 16 : 10) + Character.digit(html.charAt(i), hex ? 16 : 10), 0x110000);
+                i++;
+            }
+            if (i == digitsStart) {
+                text.append('&');
+                return ampersand + 1;
+            }
+            if (i < end && html.charAt(i) == ';') {
+                i++;
+            }
+            boolean valid = codePoint > 0 && codePoint <= Character.MAX_CODE_POINT
+                    && (codePoint < Character.MIN_SURROGATE || codePoint > Character.MAX_SURROGATE);
+            text.appendCodePoint(valid ? codePoint : 0xFFFD);
+            return i;
+        }
+
+        while (i < end && Character.isLetter(html.charAt(i))) {  // any letter, so "&copyé" is not "&copy" + "é"
+            i++;
+        }
+        while (i < end && html.charAt(i) >= '0' && html.charAt(i) <= '9') {
+            i++;
+        }
+        String name = html.substring(ampersand + 1, i);
+        boolean terminated = i < end && html.charAt(i) == ';';
+        if (name.isEmpty() || !(Entities.isBaseNamedEntity(name) || (terminated && Entities.isNamedEntity(name)))) {
+            text.append('&');
+            return ampersand + 1;
+        }
+        text.append(Entities.getByName(name));
+        return terminated ? i + 1 : i;
+    }
+
+    /**
+     Separates the text on both sides of a block boundary, unless it is already separated.
+     */
+    private void appendSeparator() {
+        int length = text.length();
+        if (length > 0 && !isWhitespace(text.charAt(length - 1))) {
+            text.append(' ');
+        }
+    }
+
+    private boolean isBlockTag() {
+        return BLOCK_TAGS.contains(tagName, 0, tagNameLength);
+    }
+
+    private boolean isTag(String name) {
+        return tagNameLength == name.length() && regionMatchesTagName(name, 0);
+    }
+
+    /**
+     Compares the tag name case-insensitively with the characters of s starting at offset.
+     */
+    private boolean regionMatchesTagName(String s, int offset) {
+        for (int i = 0; i < tagNameLength; i++) {
+            char a = Character.toLowerCase(tagName[i]);
+            char b = Character.toLowerCase(s.charAt(offset + i));
+            if (a != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+}
@@ -0,0 +1,42 @@
+package documentTokenizing;
+
+import pipelineMonitoring.Metrics;
+import pipelineMonitoring.Stage;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ Bounded hand-off between two stages of the indexing pipeline. A full queue blocks the producing stage until the
+ consuming one catches up, so a slow stage throttles the ones before it instead of letting work pile up in memory.
+ Waiting on either side is recorded in Metrics, which shows which stage is the bottleneck.
+ */
+final class StageQueue<T> {
+    private final BlockingQueue<T> queue;
+    private final Stage producer;
+    private final Stage consumer;
+
+    StageQueue(int capacity, Stage producer, Stage consumer) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.producer = producer;
+        this.consumer = consumer;
+    }
+
+    void put(T item) throws InterruptedException {
+        if (!queue.offer(item)) {
+            long start = System.nanoTime();
+            queue.put(item);
+            Metrics.recordBlocked(producer, System.nanoTime() - start);
+        }
+    }
+
+    T take() throws InterruptedException {
+        T item = queue.poll();
+        if (item == null) {
+            long start = System.nanoTime();
+            item = queue.take();
+            Metrics.recordStarved(consumer, System.nanoTime() - start);
+        }
+        return item;
+    }
+}
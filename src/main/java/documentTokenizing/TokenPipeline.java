@@ -0,0 +1,181 @@
+package documentTokenizing;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import primitiveCollections.CharArrayCache;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ Tokenizes, lowercases, removes stop words and stems a document in a single pass over its text.
+ Stems are looked up in a stem cache shared by all pipelines first, so a word seen before is not stemmed again.
+ All other buffers are reused between documents, so a pipeline must only be used by one thread at a time.
+ */
+class TokenPipeline {
+
+    private final TokenScanner scanner;
+    private final CharTermAttribute termAttr;
+    private final TokenStemmer stemmer = new TokenStemmer();
+    private final CharArrayCache<String> stemCache;
+
+    TokenPipeline(Set<String> stopWords, CharArrayCache<String> stemCache) {
+        this.scanner = new TokenScanner(new CharArraySet(stopWords, false));
+        this.termAttr = scanner.getAttribute(CharTermAttribute.class);
+        this.stemCache = stemCache;
+    }
+
+    /**
+     Streams the stemmed tokens of the text into the document's term accumulator, numbering positions from 1.
+     */
+    void tokenize(CharSequence text, DocumentTerms documentTerms) throws IOException {
+        scanner.setText(text);
+        scanner.reset();
+        int position = 1;
+        while (scanner.incrementToken()) {
+            char[] buffer = termAttr.buffer();
+            int length = termAttr.length();
+            String stem = stemCache.get(buffer, length);
+            if (stem == null) {
+                stem = stemmer.stem(buffer, length);
+                stemCache.put(buffer, length, stem);
+            }
+            documentTerms.addPosition(stem, position++);
+        }
+        scanner.end();
+        scanner.close();
+    }
+
+    /**
+     Finds tokens matching \w+(\.?\w+)* (ASCII word characters joined by single dots), lowercases them and drops stop words.
+
+     Tokens made only of lowercase letters and digits are emitted as they are, which is exactly what a StandardTokenizer
+     would produce for them. Anything containing dots or underscores, or longer than the StandardTokenizer limit, is
+     handed to a reused StandardTokenizer so it is split the same way as the original join-and-retokenize approach.
+     */
+    private static final class TokenScanner extends TokenStream {
+        private final CharArraySet stopWords;
+        private final CharTermAttribute termAttr = addAttribute(CharTermAttribute.class);
+
+        private final StandardTokenizer splitter = new StandardTokenizer();
+        private final CharTermAttribute splitterTermAttr = splitter.getAttribute(CharTermAttribute.class);
+        private char[] splitBuffer = new char[64];
+        private boolean splitting;
+
+        private CharSequence text;
+        private int cursor;
+
+        TokenScanner(CharArraySet stopWords) {
+            this.stopWords = stopWords;
+        }
+
+        void setText(CharSequence text) {
+            this.text = text;
+            this.cursor = 0;
+        }
+
+        @Override
+        public boolean incrementToken() throws IOException {
+            clearAttributes();
+            while (true) {
+                if (splitting) {
+                    if (splitter.incrementToken()) {
+                        termAttr.copyBuffer(splitterTermAttr.buffer(), 0, splitterTermAttr.length());
+                        return true;
+                    }
+                    splitter.end();
+                    splitter.close();
+                    splitting = false;
+                }
+
+                if (!nextMatch()) {
+                    return false;
+                }
+                if (stopWords.contains(termAttr.buffer(), 0, termAttr.length())) {
+                    continue;
+                }
+                if (isSimple(termAttr.buffer(), termAttr.length())) {
+                    return true;
+                }
+
+                int length = termAttr.length();
+                if (splitBuffer.length < length) {
+                    splitBuffer = new char[Math.max(length, splitBuffer.length * 2)];
+                }
+                System.arraycopy(termAttr.buffer(), 0, splitBuffer, 0, length);
+                termAttr.setEmpty();
+                splitter.setReader(new CharArrayReader(splitBuffer, 0, length));
+                splitter.reset();
+                splitting = true;
+            }
+        }
+
+        /**
+         Advances to the next match and copies it, lowercased, into the term attribute.
+         */
+        private boolean nextMatch() {
+            int length = text.length();
+            int start = cursor;
+            while (start < length && !isWordChar(text.charAt(start))) {
+                start++;
+            }
+            if (start == length) {
+                cursor = length;
+                return false;
+            }
+
+            int end = start;
+            while (true) {
+                while (end < length && isWordChar(text.charAt(end))) {
+                    end++;
+                }
+                // A single dot continues the token only when another word character follows it
+                if (end + 1 < length && text.charAt(end) == '.' && isWordChar(text.charAt(end + 1))) {
+                    end++;
+                }
+                else {
+                    break;
+                }
+            }
+            cursor = end;
+
+            char[] buffer = termAttr.resizeBuffer(end - start);
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                buffer[i - start] = (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+            }
+            termAttr.setLength(end - start);
+            return true;
+        }
+
+        private static boolean isWordChar(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+        }
+
+        private boolean isSimple(char[] buffer, int length) {
+            if (length > splitter.getMaxTokenLength()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                char c = buffer[i];
+                if (c == '.' || c == '_') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            super.reset();
+            if (splitting) {
+                splitter.end();
+                splitter.close();
+                splitting = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package documentTokenizing;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.en.PorterStemFilter;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+import java.io.IOException;
+
+/**
+ Porter-stems one token at a time with the same PorterStemFilter the rest of the analysis uses, so tokens can
+ be stemmed individually on a stem cache miss. Buffers are reused, so a stemmer must only be used by one thread.
+ */
+public class TokenStemmer {
+    private final SingleToken token = new SingleToken();
+    private final TokenStream stemmer = new PorterStemFilter(token);
+    private final CharTermAttribute termAttr = stemmer.getAttribute(CharTermAttribute.class);
+
+    public TokenStemmer() {
+        try {
+            stemmer.reset();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);  // cannot happen, nothing is read
+        }
+    }
+
+    /**
+     Returns the stem of the first length chars of buffer.
+     */
+    public String stem(char[] buffer, int length) {
+        token.set(buffer, length);
+        try {
+            stemmer.incrementToken();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return new String(termAttr.buffer(), 0, termAttr.length());
+    }
+
+    /**
+     Token stream that emits the one token it was last given.
+     */
+    private static final class SingleToken extends TokenStream {
+        private final CharTermAttribute termAttr = addAttribute(CharTermAttribute.class);
+        private boolean pending;
+
+        void set(char[] buffer, int length) {
+            termAttr.copyBuffer(buffer, 0, length);
+            pending = true;
+        }
+
+        @Override
+        public boolean incrementToken() {
+            if (!pending) {
+                return false;
+            }
+            pending = false;
+            return true;
+        }
+    }
+}
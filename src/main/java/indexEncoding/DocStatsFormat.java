@@ -0,0 +1,28 @@
+package indexEncoding;
+
+/**
+ Layout of the per-document statistics file written next to each doc_index.
+
+ A 28 byte header (magic number "DSTA", format version, DOCID of the first record, then as longs the number of
+ documents with terms and the sum of their lengths, the collection statistics of BM25) is followed by one
+ fixed-width record per DOCID, starting at the base DOCID and without gaps:
+
+   int  distinctTerms    number of distinct terms in the document
+   int  length           total number of terms in the document
+   long forwardOffset    byte offset of the document's record in doc_index, or -1 if the DOCID has no terms
+
+ The record of a DOCID is found with a single positioned read at HEADER_LENGTH + (docId - baseDocId) * RECORD_LENGTH.
+ Version 1 files have the 12 byte header without the totals, which readers then add up from the records.
+ */
+public final class DocStatsFormat {
+
+    public static final int MAGIC = 0x44535441;  // "DSTA"
+    public static final int VERSION = 2;
+    public static final int HEADER_LENGTH = 28;
+    public static final int VERSION_1 = 1;
+    public static final int VERSION_1_HEADER_LENGTH = 12;
+    public static final int RECORD_LENGTH = 16;
+
+    private DocStatsFormat() {
+    }
+}
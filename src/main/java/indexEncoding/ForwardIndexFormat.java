@@ -0,0 +1,29 @@
+package indexEncoding;
+
+/**
+ Layout of the binary forward index (doc_index.bin) that FileProcessor hands to IndexInverter.
+
+ The file starts with an 8 byte header: the magic number "FIDX" followed by the format version.
+ Every document then has one record, in increasing DOCID order:
+
+   vint recordLength     number of bytes that follow in this record
+   vint docId
+   vint termCount        number of distinct terms in the document
+   termCount times:
+     vint termId
+     vint positionCount
+     positionCount times:
+       vint position     in the order the positions were added, which is not always sorted
+
+ The length prefix lets a reader load a whole record with one buffer fill, or skip it without decoding.
+ The inverter's sorted runs use the same layout with the roles swapped: a record per TERMID listing its DOCIDs.
+ */
+public final class ForwardIndexFormat {
+
+    public static final int MAGIC = 0x46494458;  // "FIDX"
+    public static final int VERSION = 1;
+    public static final int HEADER_LENGTH = 8;
+
+    private ForwardIndexFormat() {
+    }
+}
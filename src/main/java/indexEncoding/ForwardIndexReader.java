@@ -0,0 +1,242 @@
+package indexEncoding;
+
+import primitiveCollections.IntList;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ Streams the documents of a forward index one at a time, reusing the same arrays for every document.
+
+ Files without the ForwardIndexFormat header are read as the text doc_index of earlier versions, one
+ "DOCID\tTERMID\tpositions" line per term, so indexes built before the binary format still load.
+ */
+public class ForwardIndexReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long bufferOffset;  // file offset of the first byte in the buffer
+
+    // Legacy text doc_index, null for the binary format
+    private final BufferedReader textReader;
+    private String pendingLine;
+    private long lineOffset;
+
+    private int docId;
+    private long offset;
+    private int termCount;
+    int[] termIds = new int[16];
+    IntList[] positions = new IntList[16];
+
+    public ForwardIndexReader(String path) throws IOException {
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        buffer.flip();
+        if (fill(ForwardIndexFormat.HEADER_LENGTH) && buffer.getInt(0) == ForwardIndexFormat.MAGIC) {
+            buffer.getInt();
+            int version = buffer.getInt();
+            if (version > ForwardIndexFormat.VERSION) {
+                channel.close();
+                throw new IOException("Unsupported forward index version " + version + " in " + path);
+            }
+            textReader = null;
+        }
+        else {
+            channel.position(0);
+            textReader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8), BUFFER_SIZE);
+            pendingLine = textReader.readLine();
+        }
+    }
+
+    /**
+     Moves to the next document and returns false at the end of the file.
+     */
+    public boolean next() throws IOException {
+        return textReader == null ? nextRecord() : nextTextDocument();
+    }
+
+    public int docId() {
+        return docId;
+    }
+
+    /**
+     Byte offset of the document's record, or of its first line in a text doc_index.
+     */
+    public long offset() {
+        return offset;
+    }
+
+    public int termCount() {
+        return termCount;
+    }
+
+    public int termId(int index) {
+        return termIds[index];
+    }
+
+    /**
+     Positions of the term at the given index; the list is reused for the next document.
+     */
+    public IntList positions(int index) {
+        return positions[index];
+    }
+
+    /**
+     Moves to the record starting at the given byte offset, as returned by offset() or ForwardIndexWriter.position();
+     the next call to next() reads it. Only the binary format supports seeking.
+     */
+    public void seek(long recordOffset) throws IOException {
+        if (textReader != null) {
+            throw new IOException("Cannot seek in a text doc_index");
+        }
+        if (recordOffset >= bufferOffset && recordOffset <= bufferOffset + buffer.limit()) {
+            buffer.position((int) (recordOffset - bufferOffset));
+            return;
+        }
+        channel.position(recordOffset);
+        buffer.clear().flip();
+        bufferOffset = recordOffset;
+    }
+
+    /**
+     Writes the forward index at path in the text layout of earlier versions, one "DOCID\tTERMID\tpositions" line
+     per term, for inspecting an index by hand.
+     */
+    public static void exportText(String path, String textPath) throws IOException {
+        try (ForwardIndexReader reader = new ForwardIndexReader(path);
+             BufferedWriter writer = Files.newBufferedWriter(Paths.get(textPath))) {
+            StringBuilder line = new StringBuilder();
+            while (reader.next()) {
+                for (int i = 0; i < reader.termCount(); i++) {
+                    IntList termPositions = reader.positions(i);
+                    line.setLength(0);
+                    line.append(reader.docId()).append('\t').append(reader.termId(i)).append('\t');
+                    for (int j = 0; j < termPositions.size(); j++) {
+                        if (j > 0) {
+                            line.append(' ');
+                        }
+                        line.append(termPositions.get(j));
+                    }
+                    line.append('\n');
+                    writer.append(line);
+                }
+            }
+        }
+    }
+
+    private boolean nextRecord() throws IOException {
+        if (!fill(5) && !buffer.hasRemaining()) {
+            return false;
+        }
+        offset = bufferOffset + buffer.position();
+        int length;
+        try {
+            length = VByte.readVInt(buffer);
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Truncated forward index record at offset " + offset);
+        }
+        if (!fill(length)) {
+            throw new IOException("Truncated forward index record at offset " + offset);
+        }
+        int end = buffer.position() + length;
+
+        docId = VByte.readVInt(buffer);
+        termCount = 0;
+        int count = VByte.readVInt(buffer);
+        for (int i = 0; i < count; i++) {
+            IntList termPositions = addTerm(VByte.readVInt(buffer));
+            int positionCount = VByte.readVInt(buffer);
+            for (int j = 0; j < positionCount; j++) {
+                termPositions.add(VByte.readVInt(buffer));
+            }
+        }
+        buffer.position(end);
+        return true;
+    }
+
+    /**
+     Groups the consecutive lines of one DOCID into a document.
+     */
+    private boolean nextTextDocument() throws IOException {
+        if (pendingLine == null) {
+            return false;
+        }
+        offset = lineOffset;
+        termCount = 0;
+        docId = Integer.parseInt(pendingLine.substring(0, pendingLine.indexOf('\t')));
+        while (pendingLine != null) {
+            int firstTab = pendingLine.indexOf('\t');
+            int secondTab = pendingLine.indexOf('\t', firstTab + 1);
+            if (Integer.parseInt(pendingLine.substring(0, firstTab)) != docId) {
+                break;
+            }
+            IntList termPositions = addTerm(Integer.parseInt(pendingLine.substring(firstTab + 1, secondTab)));
+            for (String position : pendingLine.substring(secondTab + 1).split(" ")) {
+                termPositions.add(Integer.parseInt(position));
+            }
+            lineOffset += pendingLine.length() + 1;  // doc_index is ASCII with '\n' line endings
+            pendingLine = textReader.readLine();
+        }
+        return true;
+    }
+
+    /**
+     Adds a term to the current document and returns its emptied position list.
+     */
+    private IntList addTerm(int termId) {
+        if (termCount == termIds.length) {
+            termIds = Arrays.copyOf(termIds, termCount * 2);
+            positions = Arrays.copyOf(positions, termCount * 2);
+        }
+        if (positions[termCount] == null) {
+            positions[termCount] = new IntList();
+        }
+        IntList termPositions = positions[termCount];
+        termPositions.clear();
+        termIds[termCount++] = termId;
+        return termPositions;
+    }
+
+    /**
+     Makes at least needed bytes available in the buffer, growing it for records longer than the buffer.
+     Returns false if the file ends first.
+     */
+    private boolean fill(int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return true;
+        }
+        bufferOffset += buffer.position();
+        buffer.compact();
+        if (buffer.capacity() < needed) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(needed, buffer.capacity() * 2));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        while (buffer.position() < needed && channel.read(buffer) >= 0) {
+            // keep reading until enough bytes are buffered or the file ends
+        }
+        buffer.flip();
+        return buffer.remaining() >= needed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (textReader != null) {
+            textReader.close();
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,107 @@
+package indexEncoding;
+
+import primitiveCollections.IntList;
+import primitiveCollections.IntObjectHashMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ Writes a forward index in the layout described in ForwardIndexFormat. Records are encoded straight into one
+ reused buffer that is written through a FileChannel whenever it fills up, so no per-row strings are created.
+ */
+public class ForwardIndexWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long flushed;  // bytes already written to the channel
+
+    public ForwardIndexWriter(String path) throws IOException {
+        this.channel = FileChannel.open(Paths.get(path),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        buffer.putInt(ForwardIndexFormat.MAGIC);
+        buffer.putInt(ForwardIndexFormat.VERSION);
+    }
+
+    /**
+     Appends a document with its terms in the map's iteration order.
+     */
+    public void writeDocument(int docId, IntObjectHashMap<IntList> terms) throws IOException {
+        int[] termIds = terms.keys();
+        IntList[] positions = new IntList[termIds.length];
+        for (int i = 0; i < termIds.length; i++) {
+            positions[i] = terms.get(termIds[i]);
+        }
+        writeDocument(docId, termIds.length, termIds, positions);
+    }
+
+    /**
+     Appends a document with the first termCount terms of termIds and their positions.
+     */
+    public void writeDocument(int docId, int termCount, int[] termIds, IntList[] positions) throws IOException {
+        int length = VByte.length(docId) + VByte.length(termCount);
+        for (int i = 0; i < termCount; i++) {
+            IntList termPositions = positions[i];
+            length += VByte.length(termIds[i]) + VByte.length(termPositions.size());
+            for (int j = 0; j < termPositions.size(); j++) {
+                length += VByte.length(termPositions.get(j));
+            }
+        }
+
+        putVInt(length);
+        putVInt(docId);
+        putVInt(termCount);
+        for (int i = 0; i < termCount; i++) {
+            IntList termPositions = positions[i];
+            putVInt(termIds[i]);
+            putVInt(termPositions.size());
+            for (int j = 0; j < termPositions.size(); j++) {
+                putVInt(termPositions.get(j));
+            }
+        }
+    }
+
+    /**
+     Appends the document the reader is positioned on.
+     */
+    public void copyDocument(ForwardIndexReader reader) throws IOException {
+        writeDocument(reader.docId(), reader.termCount(), reader.termIds, reader.positions);
+    }
+
+    /**
+     Returns the number of bytes written so far, which is the offset at which the next record starts.
+     */
+    public long position() {
+        return flushed + buffer.position();
+    }
+
+    private void putVInt(int value) throws IOException {
+        if (buffer.remaining() < 5) {
+            flush();
+        }
+        VByte.writeVInt(buffer, value);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            flushed += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package indexEncoding;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ Layout of the binary term index.
+
+ The file starts with an 8 byte header: the magic number "TIDX" followed by the format version.
+ Every term then has one record, and the offsets in term_info point to the start of these records:
+
+   vint recordLength   number of bytes that follow in this record
+   vint docCount
+   vint skipCount      (version 2) number of skip entries
+   skipCount times     (version 2) fixed-width skip table, see below
+     int baseDocId     DOCID of the last document before the skip target
+     int blockOffset   byte offset of the skip target, relative to the start of the postings below
+   docCount times:
+     vint docGap       DOCID minus the previous DOCID in the list (the first one is the DOCID itself)
+     vint frequency    number of positions in this document
+     frequency times:
+       vint posGap     position minus the previous position in this document (the first one is the position itself)
+
+ Skip entry k points at document number (k + 1) * SKIP_INTERVAL of the list. Because the table is fixed-width,
+ a reader can binary search it for the last block starting before a target DOCID and decode from there.
+ Version 1 files have no skip count or table and can still be read.
+ */
+public final class PostingsFormat {
+
+    public static final int MAGIC = 0x54494458;  // "TIDX"
+    public static final int VERSION = 2;
+    public static final int VERSION_NO_SKIPS = 1;
+    public static final int HEADER_LENGTH = 8;
+    public static final int SKIP_INTERVAL = 64;
+    public static final int SKIP_ENTRY_LENGTH = 8;
+
+    private PostingsFormat() {
+    }
+
+    public static void writeHeader(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.flush();
+    }
+
+    /**
+     Returns the format version of a file starting with the given header, or 0 if it is a text term index.
+     Text term indices start with a digit, so they never match the magic number.
+     */
+    public static int readVersion(ByteBuffer header) throws IOException {
+        if (header.remaining() < HEADER_LENGTH || header.getInt() != MAGIC) {
+            return 0;
+        }
+        int version = header.getInt();
+        if (version < VERSION_NO_SKIPS || version > VERSION) {
+            throw new IOException("Unsupported term index version " + version);
+        }
+        return version;
+    }
+}
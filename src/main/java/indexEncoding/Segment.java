@@ -0,0 +1,100 @@
+package indexEncoding;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ An immutable slice of the index covering a disjoint set of documents: its doc_index, doc_stats, term_index and term_info files.
+ DOCIDs and TERMIDs are global, shared by all segments through docids.txt and termids.txt.
+ */
+public class Segment {
+    private final String name;
+    private final String docIndexPath;
+    private final String docStatsPath;
+    private final String termIndexPath;
+    private final String termInfoPath;
+
+    public Segment(String name, String docIndexPath, String docStatsPath, String termIndexPath, String termInfoPath) {
+        this.name = name;
+        this.docIndexPath = docIndexPath;
+        this.docStatsPath = docStatsPath;
+        this.termIndexPath = termIndexPath;
+        this.termInfoPath = termInfoPath;
+    }
+
+    /**
+     Creates a new segment whose files are named after it, e.g. doc_index_seg_2.bin and term_index_seg_2.txt.
+     */
+    public static Segment create(String name, String docIndexDirectory, String termIndexDirectory, boolean binaryPostings) {
+        return new Segment(name,
+                docIndexDirectory + "/doc_index_" + name + ".bin",
+                docIndexDirectory + "/doc_stats_" + name + ".bin",
+                termIndexDirectory + "/term_index_" + name + (binaryPostings ? ".bin" : ".txt"),
+                termIndexDirectory + "/term_info_" + name + ".txt");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDocIndexPath() {
+        return docIndexPath;
+    }
+
+    public String getDocStatsPath() {
+        return docStatsPath;
+    }
+
+    public String getTermIndexPath() {
+        return termIndexPath;
+    }
+
+    public String getTermInfoPath() {
+        return termInfoPath;
+    }
+
+    /**
+     Size of the segment's doc_index in bytes, used by the merge policy to compare segments.
+     */
+    public long size() throws IOException {
+        return Files.size(Paths.get(docIndexPath));
+    }
+
+    /**
+     Throws an IOException naming the first of the segment's files that does not exist.
+     */
+    public void checkFilesExist() throws IOException {
+        for (String path : new String[] {docIndexPath, docStatsPath, termIndexPath, termInfoPath}) {
+            if (!Files.exists(Paths.get(path))) {
+                throw new IOException("Missing file of segment " + name + ": " + path);
+            }
+        }
+    }
+
+    /**
+     Deletes the segment's files once it is no longer referenced by the manifest.
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(Paths.get(docIndexPath));
+        Files.deleteIfExists(Paths.get(docStatsPath));
+        Files.deleteIfExists(Paths.get(termIndexPath));
+        int shard = 1;
+        while (Files.deleteIfExists(Paths.get(TermIndexShards.path(termIndexPath, shard)))) {
+            shard++;  // shards are numbered without gaps, so the first missing one ends the list
+        }
+        Files.deleteIfExists(Paths.get(termInfoPath));
+    }
+
+    String toLine() {
+        return name + "\t" + docIndexPath + "\t" + docStatsPath + "\t" + termIndexPath + "\t" + termInfoPath;
+    }
+
+    static Segment parse(String line) throws IOException {
+        String[] parts = line.split("\t");
+        if (parts.length < 5) {
+            throw new IOException("Malformed segment line: " + line);
+        }
+        return new Segment(parts[0], parts[1], parts[2], parts[3], parts[4]);
+    }
+}
@@ -0,0 +1,133 @@
+package indexEncoding;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ The list of live segments of an incremental index, stored as segments.txt in the term index directory.
+
+ The first line holds the generation counter used to name new segments; every other line describes one segment
+ as name, doc_index, doc_stats, term_index and term_info paths separated by tabs. Segments are listed in DOCID order.
+ Segments replaced by a merge are listed after them as "retired" followed by the same fields: a reader opened before
+ the merge may still have their files mapped, so they are only deleted by the next run, see deleteRetired().
+ The file is replaced atomically on save, so readers always see either the old or the new set of segments.
+ */
+public class SegmentManifest {
+    public static final String FILE_NAME = "segments.txt";
+    private static final String RETIRED = "retired\t";
+
+    private final Path path;
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<Segment> retired = new ArrayList<>();
+    private int generation = 1;
+
+    private SegmentManifest(Path path) {
+        this.path = path;
+    }
+
+    /**
+     Loads the manifest from the given directory, or returns an empty one if the directory has none yet.
+     */
+    public static SegmentManifest load(String directory) throws IOException {
+        SegmentManifest manifest = new SegmentManifest(Paths.get(directory, FILE_NAME));
+        if (!Files.exists(manifest.path)) {
+            return manifest;
+        }
+        List<String> lines = Files.readAllLines(manifest.path);
+        for (String line : lines) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("generation\t")) {
+                manifest.generation = Integer.parseInt(line.substring("generation\t".length()).trim());
+            }
+            else if (line.startsWith(RETIRED)) {
+                manifest.retired.add(Segment.parse(line.substring(RETIRED.length())));
+            }
+            else {
+                manifest.segments.add(Segment.parse(line));
+            }
+        }
+        return manifest;
+    }
+
+    public synchronized List<Segment> getSegments() {
+        return new ArrayList<>(segments);
+    }
+
+    public synchronized boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    /**
+     Returns a segment name that has not been used in this index before.
+     */
+    public synchronized String nextSegmentName() {
+        return "seg_" + generation++;
+    }
+
+    public synchronized void add(Segment segment) {
+        segments.add(segment);
+    }
+
+    /**
+     Replaces the merged segments, which must be adjacent in the list, with the segment they were merged into.
+     The merged segments are retired rather than deleted.
+     */
+    public synchronized void replace(List<Segment> merged, Segment result) {
+        int index = segments.indexOf(merged.get(0));
+        segments.removeAll(merged);
+        segments.add(index, result);
+        retired.addAll(merged);
+    }
+
+    /**
+     Deletes the files of the segments retired by earlier merges and saves the manifest without them. Must only be
+     called before any reader of this index is opened. A segment whose files cannot be deleted, e.g. because another
+     process still has them open, stays retired for the next run to try again.
+     */
+    public synchronized void deleteRetired() throws IOException {
+        if (retired.isEmpty()) {
+            return;
+        }
+        Iterator<Segment> iterator = retired.iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            try {
+                segment.delete();
+                iterator.remove();
+            }
+            catch (IOException e) {
+                System.err.println("Failed to delete merged segment " + segment.getName() + ": " + e.getMessage());
+            }
+        }
+        save();
+    }
+
+    /**
+     Writes the manifest, refusing to list a segment with missing files, since no later run could open the index.
+     */
+    public synchronized void save() throws IOException {
+        for (Segment segment : segments) {
+            segment.checkFilesExist();
+        }
+        Path temp = path.resolveSibling(FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            writer.write("generation\t" + generation + "\n");
+            for (Segment segment : segments) {
+                writer.write(segment.toLine() + "\n");
+            }
+            for (Segment segment : retired) {
+                writer.write(RETIRED + segment.toLine() + "\n");
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,30 @@
+package indexEncoding;
+
+/**
+ Naming of the postings shards of a term index inverted in parallel.
+
+ A term index written by N threads is split into N files, each holding the postings of one contiguous TERMID range.
+ Shard 0 keeps the term index path itself, so an index with a single shard looks exactly like an unsharded one;
+ shard k is stored next to it with k before the extension, e.g. term_index.bin, term_index.1.bin, term_index.2.bin.
+ term_info then has a fifth column with the shard of every term, and its offsets are relative to that shard's file.
+ */
+public final class TermIndexShards {
+
+    private TermIndexShards() {
+    }
+
+    /**
+     Returns the path of the given shard of the term index at termIndexPath.
+     */
+    public static String path(String termIndexPath, int shard) {
+        if (shard == 0) {
+            return termIndexPath;
+        }
+        int slash = termIndexPath.lastIndexOf('/');
+        int dot = termIndexPath.lastIndexOf('.');
+        if (dot <= slash) {
+            return termIndexPath + "." + shard;
+        }
+        return termIndexPath.substring(0, dot) + "." + shard + termIndexPath.substring(dot);
+    }
+}
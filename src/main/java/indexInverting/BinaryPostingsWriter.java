@@ -0,0 +1,76 @@
+package indexInverting;
+
+import indexEncoding.PostingsFormat;
+import indexEncoding.VByte;
+import primitiveCollections.IntList;
+import primitiveCollections.IntObjectHashMap;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ Writes each term as a variable-byte encoded record with a skip table, as described in PostingsFormat.
+ */
+class BinaryPostingsWriter implements PostingsWriter {
+    private final BufferedOutputStream out;
+    private final ByteArrayOutputStream postings = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordData = new DataOutputStream(record);
+    private final IntList skipDocIds = new IntList();
+    private final IntList skipOffsets = new IntList();
+    private long offset;
+
+    BinaryPostingsWriter(String termIndexPath) throws IOException {
+        this.out = new BufferedOutputStream(new FileOutputStream(termIndexPath), 1 << 16);
+        PostingsFormat.writeHeader(out);
+        this.offset = PostingsFormat.HEADER_LENGTH;
+    }
+
+    @Override
+    public long writeTerm(int termId, int[] docIds, IntObjectHashMap<IntList> docMap) throws IOException {
+        postings.reset();
+        skipDocIds.clear();
+        skipOffsets.clear();
+        int lastDocId = 0;
+        for (int i = 0; i < docIds.length; i++) {
+            int docId = docIds[i];
+            if (i > 0 && i % PostingsFormat.SKIP_INTERVAL == 0) {
+                skipDocIds.add(lastDocId);
+                skipOffsets.add(postings.size());
+            }
+            IntList positions = docMap.get(docId);
+            VByte.writeVInt(postings, docId - lastDocId);
+            VByte.writeVInt(postings, positions.size());
+            int lastPos = 0;
+            for (int j = 0; j < positions.size(); j++) {
+                int pos = positions.get(j);
+                VByte.writeVInt(postings, pos - lastPos);
+                lastPos = pos;
+            }
+            lastDocId = docId;
+        }
+
+        record.reset();
+        VByte.writeVInt(record, docIds.length);
+        VByte.writeVInt(record, skipDocIds.size());
+        for (int i = 0; i < skipDocIds.size(); i++) {
+            recordData.writeInt(skipDocIds.get(i));
+            recordData.writeInt(skipOffsets.get(i));
+        }
+        postings.writeTo(record);
+
+        long termOffset = offset;
+        VByte.writeVInt(out, record.size());
+        record.writeTo(out);
+        offset += VByte.length(record.size()) + record.size();
+        return termOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,99 @@
+package indexInverting;
+
+import indexEncoding.DocStatsFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ Streams fixed-width per-document statistics, as described in DocStatsFormat, while doc_index is being read.
+ Expects the rows of doc_index grouped by document in increasing DOCID order, which is how FileProcessor writes them.
+ The document count and total length are added up on the way and written into the header on close.
+ */
+class DocStatsWriter implements Closeable {
+    private final FileOutputStream file;
+    private final DataOutputStream out;
+    private boolean headerWritten = false;
+    private int nextDocId;
+    private long documentCount;
+    private long totalLength;
+
+    private int currentDocId = -1;
+    private int distinctTerms;
+    private int length;
+    private long forwardOffset;
+
+    DocStatsWriter(String docStatsPath) throws IOException {
+        this.file = new FileOutputStream(docStatsPath);
+        this.out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+    }
+
+    /**
+     Records one doc_index row: a term of the document with the given number of positions, whose record starts at recordOffset.
+     */
+    void addRow(int docId, int positionCount, long recordOffset) throws IOException {
+        if (docId != currentDocId) {
+            finishDocument();
+            if (!headerWritten) {
+                writeHeader(docId);
+            }
+            if (docId < nextDocId) {
+                throw new IOException("doc_index is not sorted by DOCID at DOCID " + docId);
+            }
+            while (nextDocId < docId) {
+                writeRecord(0, 0, -1);  // DOCID without any terms
+            }
+            currentDocId = docId;
+            distinctTerms = 0;
+            length = 0;
+            forwardOffset = recordOffset;
+        }
+        distinctTerms++;
+        length += positionCount;
+    }
+
+    private void finishDocument() throws IOException {
+        if (currentDocId != -1) {
+            writeRecord(distinctTerms, length, forwardOffset);
+            documentCount++;
+            totalLength += length;
+            currentDocId = -1;
+        }
+    }
+
+    private void writeHeader(int baseDocId) throws IOException {
+        out.writeInt(DocStatsFormat.MAGIC);
+        out.writeInt(DocStatsFormat.VERSION);
+        out.writeInt(baseDocId);
+        out.writeLong(0);  // documentCount and totalLength, filled in on close
+        out.writeLong(0);
+        headerWritten = true;
+        nextDocId = baseDocId;
+    }
+
+    private void writeRecord(int distinct, int docLength, long offset) throws IOException {
+        out.writeInt(distinct);
+        out.writeInt(docLength);
+        out.writeLong(offset);
+        nextDocId++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finishDocument();
+        if (!headerWritten) {
+            writeHeader(1);
+        }
+        out.flush();
+        ByteBuffer totals = ByteBuffer.allocate(16).putLong(documentCount).putLong(totalLength).flip();
+        long position = DocStatsFormat.HEADER_LENGTH - totals.remaining();
+        while (totals.hasRemaining()) {
+            position += file.getChannel().write(totals, position);
+        }
+        out.close();
+    }
+}
@@ -3,124 +3,484 @@ package indexInverting;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import indexEncoding.ForwardIndexFormat;
+import indexEncoding.ForwardIndexReader;
+import indexEncoding.ForwardIndexWriter;
+import indexEncoding.TermIndexShards;
+import pipelineMonitoring.Metrics;
+import pipelineMonitoring.Stage;
+import pipelineMonitoring.StageTimer;
+import primitiveCollections.IntList;
+import primitiveCollections.IntObjectHashMap;
 
 public class IndexInverter {
 
+    // Rough heap cost of the in-memory structures, used to decide when to flush a run
+    private static final long POSITION_BYTES = 6;      // int slot in an IntList, including growth slack
+    private static final long POSTING_BYTES = 64;      // map slot and an empty IntList
+    private static final long TERM_BYTES = 96;         // map slot and an empty IntObjectHashMap
+
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+
     /**
      invertedIndex: Maps TERMID to a map of DOCID to a list of positions within the document
      Example: { 1: { 100: [5, 15, 25], 101: [2, 18] }, 2: { 100: [3, 8, 12] } }
+     Only holds the part of the index read since the last run was flushed.
      */
-    private final Map<Integer, Map<Integer, List<Integer>>> invertedIndex = new HashMap<>();
+    private final IntObjectHashMap<IntObjectHashMap<IntList>> invertedIndex = new IntObjectHashMap<>();
 
     /**
-     termOffsets: Maps TERMID to the byte offset of its entry in term_index.txt
-     Example: { 1: 0L, 2: 150L }
+     runs: Sorted partial inverted indices flushed to disk whenever the memory budget is reached
      */
-    private final Map<Integer, Long> termOffsets = new HashMap<>();
+    private final List<Run> runs = new ArrayList<>();
 
     /**
-     termFrequencies: Maps TERMID to the total number of occurrences of the term in the entire corpus
-     Example: { 1: 50, 2: 35 }
+     termWeights: Number of postings plus positions of each TERMID, used to split the TERMIDs into shards of similar size
      */
-    private final Map<Integer, Integer> termFrequencies = new HashMap<>();
+    private long[] termWeights = new long[1024];
+
+    private final long memoryBudget;
+    private final boolean binaryPostings;
+    private final int shards;
+    private long bufferedBytes = 0;
+    private Path runPrefix;
+
+    public IndexInverter() {
+        this(DEFAULT_MEMORY_BUDGET, false);
+    }
 
     /**
-     docFrequencies: Maps TERMID to the number of documents in which the term appears
-     Example: { 1: 10, 2: 8 }
+     Creates an inverter that keeps at most roughly memoryBudget bytes of postings on the heap before spilling to disk.
+     With binaryPostings set, term_index is written in the variable-byte format described in PostingsFormat instead of text.
      */
-    private final Map<Integer, Integer> docFrequencies = new HashMap<>();
+    public IndexInverter(long memoryBudget, boolean binaryPostings) {
+        this(memoryBudget, binaryPostings, 1);
+    }
+
+    /**
+     Creates an inverter like IndexInverter(memoryBudget, binaryPostings) that writes the term index as the given
+     number of shards, each covering a range of TERMIDs and written by its own thread, as described in TermIndexShards.
+     */
+    public IndexInverter(long memoryBudget, boolean binaryPostings, int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shards);
+        }
+        this.memoryBudget = memoryBudget;
+        this.binaryPostings = binaryPostings;
+        this.shards = shards;
+    }
 
 
     /**
-     Reads the doc_index.txt file and constructs an inverted index mapping terms to their occurrences in documents.
+     Streams the forward index (doc_index.bin) and constructs an inverted index mapping terms to their occurrences in documents.
+     Whenever the in-memory part grows past the memory budget it is written out as a sorted run next to the forward index.
      */
     public void buildInvertedIndex(String docIndexPath) throws IOException {
-        List<String> lines = Files.readAllLines(Paths.get(docIndexPath));
-        for (String line : lines) {
-            String[] parts = line.split("\\t");
+        buildInvertedIndex(docIndexPath, null);
+    }
 
-            int docId = Integer.parseInt(parts[0]);
-            int termId = Integer.parseInt(parts[1]);
-            String[] positions = parts[2].split(" ");
+    /**
+     Builds the inverted index like buildInvertedIndex(docIndexPath) and, in the same pass, writes the per-document
+     statistics file (distinct terms, length and doc_index offset of every document) to docStatsPath.
+     */
+    public void buildInvertedIndex(String docIndexPath, String docStatsPath) throws IOException {
+        runPrefix = Paths.get(docIndexPath).toAbsolutePath();
+        StageTimer timer = Metrics.start(Stage.INVERT);
 
-            List<Integer> posList = new ArrayList<>();
-            for (String pos : positions) {
-                posList.add(Integer.parseInt(pos));
+        try (ForwardIndexReader reader = new ForwardIndexReader(docIndexPath);
+             DocStatsWriter docStats = docStatsPath == null ? null : new DocStatsWriter(docStatsPath)) {
+            while (reader.next()) {
+                int docId = reader.docId();
+                for (int i = 0; i < reader.termCount(); i++) {
+                    IntList posList = reader.positions(i);
+                    addPostings(reader.termId(i), docId, posList);
+                    if (docStats != null) {
+                        docStats.addRow(docId, posList.size(), reader.offset());
+                    }
+                }
+
+                if (bufferedBytes >= memoryBudget) {
+                    flushRun();
+                }
+            }
+        }
+        timer.stop(Files.size(Paths.get(docIndexPath)));
+    }
+
+    /**
+     Writes only the per-document statistics file of a forward index, for indexes inverted before doc_stats existed.
+     */
+    public static void writeDocStats(String docIndexPath, String docStatsPath) throws IOException {
+        try (ForwardIndexReader reader = new ForwardIndexReader(docIndexPath);
+             DocStatsWriter docStats = new DocStatsWriter(docStatsPath)) {
+            while (reader.next()) {
+                for (int i = 0; i < reader.termCount(); i++) {
+                    docStats.addRow(reader.docId(), reader.positions(i).size(), reader.offset());
+                }
             }
+        }
+    }
+
+    /**
+     Adds the positions of a term in one document to the in-memory part of the index.
+     */
+    private void addPostings(int termId, int docId, IntList posList) {
+        if (!invertedIndex.containsKey(termId)) {
+            invertedIndex.put(termId, new IntObjectHashMap<>());
+            bufferedBytes += TERM_BYTES;
+        }
+        IntObjectHashMap<IntList> docMap = invertedIndex.get(termId);
+
+        if (!docMap.containsKey(docId)) {
+            docMap.put(docId, new IntList());
+            bufferedBytes += POSTING_BYTES;
+        }
+        IntList positionsList = docMap.get(docId);
 
+        positionsList.addAll(posList);
+        bufferedBytes += POSITION_BYTES * posList.size();
 
-            if (!invertedIndex.containsKey(termId)) {
-                invertedIndex.put(termId, new HashMap<>());
+        if (termId >= termWeights.length) {
+            termWeights = Arrays.copyOf(termWeights, Math.max(termId + 1, termWeights.length * 2));
+        }
+        termWeights[termId] += 1 + posList.size();
+    }
+
+    /**
+     Writes the in-memory part of the index to a new run file sorted by TERMID and DOCID, then clears it.
+     A run uses the forward index layout with the roles swapped: one record per TERMID listing its DOCIDs and positions.
+     */
+    private void flushRun() throws IOException {
+        Run run = new Run(runPrefix.resolveSibling(runPrefix.getFileName() + ".run_" + runs.size() + ".tmp"));
+        runs.add(run);
+        try (ForwardIndexWriter writer = new ForwardIndexWriter(run.path.toString())) {
+            int[] termIds = invertedIndex.keys();
+            Arrays.sort(termIds);
+            for (int i = 0; i < termIds.length; i++) {
+                int termId = termIds[i];
+                if (i % Run.SAMPLE_INTERVAL == 0) {
+                    run.addSample(termId, writer.position());
+                }
+                IntObjectHashMap<IntList> docMap = invertedIndex.get(termId);
+                int[] docIds = docMap.keys();
+                Arrays.sort(docIds);
+                IntList[] positions = new IntList[docIds.length];
+                for (int j = 0; j < docIds.length; j++) {
+                    positions[j] = docMap.get(docIds[j]);
+                }
+                writer.writeDocument(termId, docIds.length, docIds, positions);
             }
-            Map<Integer, List<Integer>> docMap = invertedIndex.get(termId);
+        }
+        invertedIndex.clear();
+        bufferedBytes = 0;
+    }
 
-            if (!docMap.containsKey(docId)) {
-                docMap.put(docId, new ArrayList<>());
+    /**
+     Writes the inverted index to term_index and term information to term_info.txt, including delta encoding for positions and document offsets.
+     If runs were flushed while building, they are k-way merged so only one term's postings are held in memory at a time.
+     With several shards, every shard's TERMID range is merged and encoded on its own thread into its own term index file.
+     */
+    public void writeInvertedIndex(String termIndexPath, String termInfoPath) throws IOException {
+        StageTimer timer = Metrics.start(Stage.WRITE_POSTINGS);
+        if (!runs.isEmpty() && !invertedIndex.isEmpty()) {
+            flushRun();
+        }
+        int[] termIds = invertedIndex.keys();  // empty if everything was spilled to runs
+        Arrays.sort(termIds);
+        try {
+            if (shards == 1) {
+                writeShard(0, 0, Integer.MAX_VALUE, termIds, termIndexPath, termInfoPath);
+            }
+            else {
+                writeShards(termIds, termIndexPath, termInfoPath);
+            }
+        }
+        finally {
+            for (Run run : runs) {
+                Files.deleteIfExists(run.path);
             }
-            List<Integer> positionsList = docMap.get(docId);
+            runs.clear();
+        }
 
-            positionsList.addAll(posList);
+        long bytes = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            bytes += Files.size(Paths.get(TermIndexShards.path(termIndexPath, shard)));
         }
+        timer.stop(bytes);
     }
 
     /**
-     Writes the inverted index to term_index.txt and term information to term_info.txt, including delta encoding for positions and document offsets.
+     Writes every shard on its own thread, each with a temporary term_info that is appended to termInfoPath in shard order.
+     The shards cover increasing TERMID ranges, so the combined term_info is still sorted by TERMID.
      */
-    public void writeInvertedIndex(String termIndexPath, String termInfoPath) throws IOException {
-        try (BufferedWriter termIndexWriter = new BufferedWriter(new FileWriter(termIndexPath));
+    private void writeShards(int[] termIds, String termIndexPath, String termInfoPath) throws IOException {
+        int[] boundaries = shardBoundaries();
+        List<Path> termInfoParts = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(shards, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "postings-shard-" + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            for (int shard = 0; shard < shards; shard++) {
+                int shardNumber = shard;
+                Path termInfoPart = Paths.get(termInfoPath + ".shard_" + shard + ".tmp");
+                termInfoParts.add(termInfoPart);
+                futures.add(executor.submit(() -> {
+                    writeShard(shardNumber, boundaries[shardNumber], boundaries[shardNumber + 1], termIds,
+                            TermIndexShards.path(termIndexPath, shardNumber), termInfoPart.toString());
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            try (OutputStream out = Files.newOutputStream(Paths.get(termInfoPath))) {
+                for (Path termInfoPart : termInfoParts) {
+                    Files.copy(termInfoPart, out);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing postings shards");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Writing a postings shard failed", cause);
+        }
+        finally {
+            executor.shutdownNow();
+            for (Path termInfoPart : termInfoParts) {
+                Files.deleteIfExists(termInfoPart);
+            }
+        }
+    }
+
+    /**
+     Splits the TERMIDs into contiguous ranges with about the same number of postings and positions each.
+     Returns shards + 1 boundaries: shard k covers the TERMIDs from boundaries[k] up to, but excluding, boundaries[k + 1].
+     */
+    private int[] shardBoundaries() {
+        long total = 0;
+        for (long weight : termWeights) {
+            total += weight;
+        }
+        int[] boundaries = new int[shards + 1];
+        boundaries[shards] = Integer.MAX_VALUE;
+        int shard = 1;
+        long cumulative = 0;
+        for (int termId = 0; termId < termWeights.length && shard < shards; termId++) {
+            cumulative += termWeights[termId];
+            while (shard < shards && cumulative * shards >= total * shard) {
+                boundaries[shard++] = termId + 1;
+            }
+        }
+        while (shard < shards) {
+            boundaries[shard++] = Integer.MAX_VALUE;
+        }
+        return boundaries;
+    }
+
+    /**
+     Writes the terms from firstTermId up to, but excluding, endTermId to one term index file and term_info file,
+     from the sorted in-memory TERMIDs or, if runs were flushed, by merging the runs.
+     */
+    private void writeShard(int shard, int firstTermId, int endTermId, int[] termIds,
+                            String shardPath, String termInfoPath) throws IOException {
+        try (PostingsWriter termIndexWriter = binaryPostings ? new BinaryPostingsWriter(shardPath) : new TextPostingsWriter(shardPath);
              BufferedWriter termInfoWriter = new BufferedWriter(new FileWriter(termInfoPath))) {
-            long offset = 0;
-
-            for (Map.Entry<Integer, Map<Integer, List<Integer>>> entry : invertedIndex.entrySet()) {
-                int termId = entry.getKey();
-                StringBuilder indexLine = new StringBuilder(termId + "\t");
-                int totalOccurrences = 0;
-                int docCount = entry.getValue().size();
-
-                List<Integer> docIds = new ArrayList<>(entry.getValue().keySet());
-                Collections.sort(docIds);
-                Integer lastDocId = null;
-
-                for (Integer docId : docIds) {
-                    List<Integer> positions = entry.getValue().get(docId);
-                    Collections.sort(positions);
-                    Integer lastPos = null;
-
-                    for (Integer pos : positions) {
-                        if (lastDocId != null) {
-                            indexLine.append((docId - lastDocId) + ":");
-                            indexLine.append((pos - (lastPos == null ? 0 : lastPos)) + "\t");
-                        } else {
-                            indexLine.append(docId + ":" + pos + "\t");
-                        }
-                        lastDocId = docId;
-                        lastPos = pos;
-                        totalOccurrences++;
+            if (runs.isEmpty()) {
+                writeFromMemory(shard, firstTermId, endTermId, termIds, termIndexWriter, termInfoWriter);
+            }
+            else {
+                mergeRuns(shard, firstTermId, endTermId, termIndexWriter, termInfoWriter);
+            }
+        }
+    }
+
+    /**
+     Writes the terms of the in-memory index in the given TERMID range, in TERMID order.
+     */
+    private void writeFromMemory(int shard, int firstTermId, int endTermId, int[] termIds,
+                                 PostingsWriter termIndexWriter, Writer termInfoWriter) throws IOException {
+        for (int i = lowerBound(termIds, firstTermId); i < termIds.length && termIds[i] < endTermId; i++) {
+            writeTermEntry(termIds[i], invertedIndex.get(termIds[i]), shard, termIndexWriter, termInfoWriter);
+        }
+    }
+
+    private static int lowerBound(int[] sorted, int key) {
+        int index = Arrays.binarySearch(sorted, key);
+        return index < 0 ? -index - 1 : index;
+    }
+
+    /**
+     Merges the sorted runs term by term within the given TERMID range, writing each completed term before reading the next.
+     */
+    private void mergeRuns(int shard, int firstTermId, int endTermId,
+                           PostingsWriter termIndexWriter, Writer termInfoWriter) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Comparator.comparingInt((RunReader run) -> run.termId()));
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            for (Run run : runs) {
+                RunReader reader = new RunReader(run, firstTermId, endTermId);
+                readers.add(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                int termId = queue.peek().termId();
+                IntObjectHashMap<IntList> docMap = new IntObjectHashMap<>();
+                while (!queue.isEmpty() && queue.peek().termId() == termId) {
+                    RunReader run = queue.poll();
+                    run.addPostingsTo(docMap);
+                    if (run.advance()) {
+                        queue.add(run);
                     }
                 }
+                writeTermEntry(termId, docMap, shard, termIndexWriter, termInfoWriter);
+            }
+        }
+        finally {
+            for (RunReader run : readers) {
+                run.close();
+            }
+        }
+    }
+
+    /**
+     Writes one term's postings to term_index and its offset, term frequency and document frequency to term_info.txt,
+     followed by the shard when the term index has several.
+     */
+    private void writeTermEntry(int termId, IntObjectHashMap<IntList> docMap, int shard,
+                                PostingsWriter termIndexWriter, Writer termInfoWriter) throws IOException {
+        int totalOccurrences = 0;
+        int docCount = docMap.size();
+
+        int[] docIds = docMap.keys();
+        Arrays.sort(docIds);
+        for (int docId : docIds) {
+            IntList positions = docMap.get(docId);
+            positions.sort();
+            totalOccurrences += positions.size();
+        }
+
+        // Write term_index
+        long offset = termIndexWriter.writeTerm(termId, docIds, docMap);
+
+        // Write term_info.txt
+        String infoLine = termId + "\t" +
+                offset + "\t" +
+                totalOccurrences + "\t" +
+                docCount + (shards > 1 ? "\t" + shard : "") + "\n";
+        termInfoWriter.write(infoLine);
+    }
+
+    /**
+     A run file with the offset of every SAMPLE_INTERVAL-th record, so a shard can start reading at its first TERMID.
+     */
+    private static final class Run {
+        static final int SAMPLE_INTERVAL = 64;
+
+        final Path path;
+        private final IntList sampleTermIds = new IntList();
+        private long[] sampleOffsets = new long[16];
+
+        Run(Path path) {
+            this.path = path;
+        }
+
+        void addSample(int termId, long offset) {
+            if (sampleTermIds.size() == sampleOffsets.length) {
+                sampleOffsets = Arrays.copyOf(sampleOffsets, sampleOffsets.length * 2);
+            }
+            sampleOffsets[sampleTermIds.size()] = offset;
+            sampleTermIds.add(termId);
+        }
+
+        /**
+         Returns the offset of a record at or before the first record with a TERMID of at least termId.
+         */
+        long offsetBefore(int termId) {
+            long offset = ForwardIndexFormat.HEADER_LENGTH;
+            for (int i = 0; i < sampleTermIds.size() && sampleTermIds.get(i) <= termId; i++) {
+                offset = sampleOffsets[i];
+            }
+            return offset;
+        }
+    }
+
+    /**
+     Sequential reader over the records of one run file within a TERMID range, exposing the current record as a
+     TERMID and its postings.
+     */
+    private static final class RunReader implements AutoCloseable {
+        private final ForwardIndexReader reader;
+        private final int firstTermId;
+        private final int endTermId;
 
-                // Write term_index.txt
-                String indexLineStr = indexLine.toString().trim() + "\n";
-                termIndexWriter.write(indexLineStr);
+        RunReader(Run run, int firstTermId, int endTermId) throws IOException {
+            this.reader = new ForwardIndexReader(run.path.toString());
+            this.firstTermId = firstTermId;
+            this.endTermId = endTermId;
+            reader.seek(run.offsetBefore(firstTermId));
+        }
 
-                // Track offset and metadata for term_info.txt
-                termOffsets.put(termId, offset);
-                termFrequencies.put(termId, totalOccurrences);
-                docFrequencies.put(termId, docCount);
-                offset += indexLineStr.getBytes().length;
+        boolean advance() throws IOException {
+            while (reader.next()) {
+                if (reader.docId() >= endTermId) {
+                    return false;
+                }
+                if (reader.docId() >= firstTermId) {
+                    return true;
+                }
             }
+            return false;
+        }
+        int termId() {
+            return reader.docId();
+        }
 
-            // Write term_info.txt
-            for (Integer termId : termOffsets.keySet()) {
-                String infoLine = termId + "\t" +
-                        termOffsets.get(termId) + "\t" +
-                        termFrequencies.get(termId) + "\t" +
-                        docFrequencies.get(termId) + "\n";
-                termInfoWriter.write(infoLine);
+        /**
+         Adds the positions of every DOCID of the current term to docMap.
+         */
+        void addPostingsTo(IntObjectHashMap<IntList> docMap) {
+            for (int i = 0; i < reader.termCount(); i++) {
+                docMap.computeIfAbsent(reader.termId(i), k -> new IntList()).addAll(reader.positions(i));
             }
         }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
     }
-}
\ No newline at end of file
+}
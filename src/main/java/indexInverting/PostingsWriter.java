@@ -0,0 +1,19 @@
+package indexInverting;
+
+import primitiveCollections.IntList;
+import primitiveCollections.IntObjectHashMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ Writes term posting lists to a term index file in one of the supported formats.
+ */
+interface PostingsWriter extends Closeable {
+
+    /**
+     Writes the postings of one term and returns the byte offset at which its entry starts.
+     docIds must be sorted, and the positions of each document must be sorted.
+     */
+    long writeTerm(int termId, int[] docIds, IntObjectHashMap<IntList> docMap) throws IOException;
+}
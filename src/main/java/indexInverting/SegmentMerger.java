@@ -0,0 +1,175 @@
+package indexInverting;
+
+import indexEncoding.ForwardIndexReader;
+import indexEncoding.ForwardIndexWriter;
+import indexEncoding.Segment;
+import indexEncoding.SegmentManifest;
+import pipelineMonitoring.Metrics;
+import pipelineMonitoring.Stage;
+import pipelineMonitoring.StageTimer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Combines small segments of an incremental index into larger ones on a background thread.
+
+ The level of a segment is the logarithm of its size in base mergeFactor. Whenever mergeFactor adjacent segments
+ lie within LEVEL_LOG_SPAN of the highest level among them, their doc_index files are copied into one and inverted
+ into a single new segment, which replaces them in the manifest. Their files stay on disk until the next run
+ deletes them with SegmentManifest.deleteRetired(), since a reader opened before the merge still uses them.
+ Comparing levels with each other rather than rounding them down, as Lucene's LogMergePolicy does, lets segments of
+ about the same size merge even when their sizes fall on both sides of a power of mergeFactor.
+ */
+public class SegmentMerger implements AutoCloseable {
+    public static final int DEFAULT_MERGE_FACTOR = 4;
+    // Segments whose levels differ by less than this count as one level; a merge result is a whole level higher
+    static final double LEVEL_LOG_SPAN = 0.75;
+
+    private final SegmentManifest manifest;
+    private final long memoryBudget;
+    private final boolean binaryPostings;
+    private final int postingsShards;
+    private final int mergeFactor;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "segment-merger");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SegmentMerger(SegmentManifest manifest, long memoryBudget, boolean binaryPostings, int postingsShards, int mergeFactor) {
+        this.manifest = manifest;
+        this.memoryBudget = memoryBudget;
+        this.binaryPostings = binaryPostings;
+        this.postingsShards = postingsShards;
+        this.mergeFactor = mergeFactor;
+    }
+
+    /**
+     Loads the segment list of an incremental index and deletes the segments merged away by earlier runs. An index
+     built without --append has no manifest yet, so its files are adopted as the first segment.
+     */
+    public static SegmentManifest loadManifest(String docIndexDirectory, String termIndexDirectory) throws IOException {
+        SegmentManifest manifest = SegmentManifest.load(termIndexDirectory);
+        manifest.deleteRetired();
+        // Indexes from before the binary forward index only have the text doc_index, which the inverter still reads
+        String docIndexPath = new File(docIndexDirectory + "/doc_index.bin").exists()
+                ? docIndexDirectory + "/doc_index.bin" : docIndexDirectory + "/doc_index.txt";
+        if (manifest.isEmpty() && new File(docIndexPath).exists()) {
+            String termIndexPath = new File(termIndexDirectory + "/term_index.bin").exists()
+                    ? termIndexDirectory + "/term_index.bin" : termIndexDirectory + "/term_index.txt";
+            String docStatsPath = docIndexDirectory + "/doc_stats.bin";
+            if (!new File(docStatsPath).exists()) {
+                // Indexes from before doc_stats existed need it written before they can be opened as a segment
+                IndexInverter.writeDocStats(docIndexPath, docStatsPath);
+            }
+            manifest.add(new Segment("base", docIndexPath, docStatsPath, termIndexPath, termIndexDirectory + "/term_info.txt"));
+        }
+        return manifest;
+    }
+
+    /**
+     Schedules merging on the background thread until no level has mergeFactor adjacent segments left.
+     */
+    public void mergeInBackground() {
+        executor.submit(() -> {
+            try {
+                mergeWhileNeeded();
+            }
+            catch (IOException e) {
+                System.err.println("Segment merge failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     Merges on the calling thread until no level has mergeFactor adjacent segments left.
+     */
+    public void mergeWhileNeeded() throws IOException {
+        List<Segment> window;
+        while ((window = findMerge(manifest.getSegments())) != null) {
+            merge(window);
+        }
+    }
+
+    /**
+     Returns the first run of mergeFactor adjacent segments whose levels are all within LEVEL_LOG_SPAN of the
+     highest of them, or null if there is none.
+     */
+    List<Segment> findMerge(List<Segment> segments) throws IOException {
+        double[] levels = new double[segments.size()];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = level(segments.get(i));
+        }
+        for (int start = 0; start + mergeFactor <= segments.size(); start++) {
+            double maxLevel = Double.NEGATIVE_INFINITY;
+            double minLevel = Double.POSITIVE_INFINITY;
+            for (int i = start; i < start + mergeFactor; i++) {
+                maxLevel = Math.max(maxLevel, levels[i]);
+                minLevel = Math.min(minLevel, levels[i]);
+            }
+            if (maxLevel - minLevel < LEVEL_LOG_SPAN) {
+                return new ArrayList<>(segments.subList(start, start + mergeFactor));
+            }
+        }
+        return null;
+    }
+
+    private double level(Segment segment) throws IOException {
+        long size = segment.size();
+        return size <= 1 ? 0 : Math.log(size) / Math.log(mergeFactor);
+    }
+
+    /**
+     Inverts the combined doc_index files of the given segments into a new segment and swaps it into the manifest.
+     Documents are copied record by record, so segments still in the text doc_index format are converted on the way.
+     */
+    private void merge(List<Segment> window) throws IOException {
+        StageTimer timer = Metrics.start(Stage.MERGE);
+        Segment first = window.get(0);
+        Path docIndexDirectory = Paths.get(first.getDocIndexPath()).getParent();
+        Path termIndexDirectory = Paths.get(first.getTermIndexPath()).getParent();
+        Segment merged = Segment.create(manifest.nextSegmentName(),
+                docIndexDirectory.toString(), termIndexDirectory.toString(), binaryPostings);
+
+        try (ForwardIndexWriter writer = new ForwardIndexWriter(merged.getDocIndexPath())) {
+            for (Segment segment : window) {
+                try (ForwardIndexReader reader = new ForwardIndexReader(segment.getDocIndexPath())) {
+                    while (reader.next()) {
+                        writer.copyDocument(reader);
+                    }
+                }
+            }
+        }
+
+        IndexInverter inverter = new IndexInverter(memoryBudget, binaryPostings, postingsShards);
+        inverter.buildInvertedIndex(merged.getDocIndexPath(), merged.getDocStatsPath());
+        inverter.writeInvertedIndex(merged.getTermIndexPath(), merged.getTermInfoPath());
+
+        manifest.replace(window, merged);
+        manifest.save();
+        timer.stop(merged.size());
+    }
+
+    /**
+     Waits for a running merge to finish, so the process never exits with a half-written segment.
+     If interrupted while waiting, returns with the thread's interrupt flag set.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
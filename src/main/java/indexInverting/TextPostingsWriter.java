@@ -0,0 +1,54 @@
+package indexInverting;
+
+import primitiveCollections.IntList;
+import primitiveCollections.IntObjectHashMap;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ Writes each term as one tab-separated line of DOCID:position pairs, with delta encoding for documents and positions.
+ */
+class TextPostingsWriter implements PostingsWriter {
+    private final BufferedWriter writer;
+    private long offset = 0;
+
+    TextPostingsWriter(String termIndexPath) throws IOException {
+        this.writer = new BufferedWriter(new FileWriter(termIndexPath));
+    }
+
+    @Override
+    public long writeTerm(int termId, int[] docIds, IntObjectHashMap<IntList> docMap) throws IOException {
+        StringBuilder indexLine = new StringBuilder(termId + "\t");
+        Integer lastDocId = null;
+
+        for (int docId : docIds) {
+            IntList positions = docMap.get(docId);
+            Integer lastPos = null;
+
+            for (int i = 0; i < positions.size(); i++) {
+                int pos = positions.get(i);
+                if (lastDocId != null) {
+                    indexLine.append((docId - lastDocId) + ":");
+                    indexLine.append((pos - (lastPos == null ? 0 : lastPos)) + "\t");
+                } else {
+                    indexLine.append(docId + ":" + pos + "\t");
+                }
+                lastDocId = docId;
+                lastPos = pos;
+            }
+        }
+
+        String indexLineStr = indexLine.toString().trim() + "\n";
+        writer.write(indexLineStr);
+
+        long termOffset = offset;
+        offset += indexLineStr.getBytes().length;
+        return termOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
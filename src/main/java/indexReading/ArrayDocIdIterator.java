@@ -0,0 +1,42 @@
+package indexReading;
+
+import java.util.Arrays;
+
+/**
+ Iterates over a sorted array of DOCIDs, for the set of all documents or an empty match.
+ */
+class ArrayDocIdIterator extends DocIdIterator {
+    private final int[] docIds;
+    private int index = -1;
+    private int docId = -1;
+
+    ArrayDocIdIterator(int[] docIds) {
+        this.docIds = docIds;
+    }
+
+    @Override
+    int docId() {
+        return docId;
+    }
+
+    @Override
+    int nextDoc() {
+        index = Math.min(index + 1, docIds.length);
+        return docId = index < docIds.length ? docIds[index] : NO_MORE_DOCS;
+    }
+
+    @Override
+    int advance(int target) {
+        if (docId >= target) {
+            return docId;
+        }
+        int found = Arrays.binarySearch(docIds, index + 1, docIds.length, target);
+        index = found >= 0 ? found : -found - 1;
+        return docId = index < docIds.length ? docIds[index] : NO_MORE_DOCS;
+    }
+
+    @Override
+    int cost() {
+        return docIds.length;
+    }
+}
@@ -0,0 +1,133 @@
+package indexReading;
+
+import indexEncoding.PostingsFormat;
+import indexEncoding.VByte;
+
+import java.nio.ByteBuffer;
+
+/**
+ Decodes a binary term record lazily, straight from its (usually memory-mapped) bytes.
+ advance() binary searches the record's fixed-width skip table, so finding one document in a long
+ list decodes at most SKIP_INTERVAL documents.
+ */
+class BinaryPostingsIterator extends PostingsIterator {
+    private final ByteBuffer record;
+    private final int docCount;
+    private final int skipCount;
+    private final int skipTableStart;
+    private final int postingsStart;
+
+    private int index = -1;
+    private int docId = -1;
+    private int lastDocId = 0;
+    private int frequency;
+    private int[] positions;
+    private boolean positionsRead = true;
+
+    /**
+     Opens a record (without its length prefix). Version 1 records have no skip table.
+     */
+    BinaryPostingsIterator(ByteBuffer record, int version) {
+        this.record = record;
+        this.docCount = VByte.readVInt(record);
+        this.skipCount = version == PostingsFormat.VERSION_NO_SKIPS ? 0 : VByte.readVInt(record);
+        this.skipTableStart = record.position();
+        this.postingsStart = skipTableStart + skipCount * PostingsFormat.SKIP_ENTRY_LENGTH;
+        record.position(postingsStart);
+    }
+
+    @Override
+    int docId() {
+        return docId;
+    }
+
+    @Override
+    int nextDoc() {
+        if (!positionsRead) {
+            skipVInts(frequency);
+        }
+        if (++index >= docCount) {
+            index = docCount;
+            return docId = NO_MORE_DOCS;
+        }
+        lastDocId += VByte.readVInt(record);
+        docId = lastDocId;
+        frequency = VByte.readVInt(record);
+        positionsRead = false;
+        return docId;
+    }
+
+    @Override
+    int advance(int target) {
+        if (docId >= target) {
+            return docId;
+        }
+        int skip = findSkip(target);
+        if (skip >= 0) {
+            int blockStart = (skip + 1) * PostingsFormat.SKIP_INTERVAL;
+            if (blockStart > index + 1) {
+                int entry = skipTableStart + skip * PostingsFormat.SKIP_ENTRY_LENGTH;
+                lastDocId = record.getInt(entry);
+                record.position(postingsStart + record.getInt(entry + 4));
+                index = blockStart - 1;
+                positionsRead = true;
+            }
+        }
+        while (docId < target) {
+            nextDoc();
+        }
+        return docId;
+    }
+
+    /**
+     Returns the last skip entry whose block starts after a DOCID below target, or -1 if there is none.
+     */
+    private int findSkip(int target) {
+        int low = 0;
+        int high = skipCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (record.getInt(skipTableStart + mid * PostingsFormat.SKIP_ENTRY_LENGTH) < target) {
+                found = mid;
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    @Override
+    int frequency() {
+        return frequency;
+    }
+
+    @Override
+    int[] positions() {
+        if (!positionsRead) {
+            positions = new int[frequency];
+            int pos = 0;
+            for (int i = 0; i < frequency; i++) {
+                pos += VByte.readVInt(record);
+                positions[i] = pos;
+            }
+            positionsRead = true;
+        }
+        return positions;
+    }
+
+    @Override
+    int cost() {
+        return docCount;
+    }
+
+    private void skipVInts(int count) {
+        while (count > 0) {
+            if (record.get() >= 0) {
+                count--;
+            }
+        }
+    }
+}
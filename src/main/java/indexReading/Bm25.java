@@ -0,0 +1,39 @@
+package indexReading;
+
+/**
+ Okapi BM25 term weighting with the usual k1 = 1.2 and b = 0.75, using the idf variant that is never negative.
+ */
+class Bm25 {
+    static final double K1 = 1.2;
+    static final double B = 0.75;
+
+    private final long documentCount;
+    private final double averageLength;
+
+    Bm25(long documentCount, long totalLength) {
+        this.documentCount = documentCount;
+        this.averageLength = documentCount == 0 ? 1 : (double) totalLength / documentCount;
+    }
+
+    double idf(int docFrequency) {
+        return Math.log(1 + (documentCount - docFrequency + 0.5) / (docFrequency + 0.5));
+    }
+
+    /**
+     Score contribution of a term with the given weight (idf times query term count) to one document.
+     */
+    double score(double weight, int termFrequency, int docLength) {
+        double norm = K1 * (1 - B + B * docLength / averageLength);
+        return weight * termFrequency * (K1 + 1) / (termFrequency + norm);
+    }
+
+    /**
+     Upper bound of score() over every document of a term, from its collection and document frequencies.
+     A document holds at most cf - df + 1 occurrences and is at least that long, and the score grows with the
+     frequency and shrinks with the length, so the bound is the score of that frequency in a document of that length.
+     */
+    double maxScore(double weight, int collectionFrequency, int docFrequency) {
+        int maxFrequency = collectionFrequency - docFrequency + 1;
+        return score(weight, maxFrequency, maxFrequency);
+    }
+}
@@ -0,0 +1,185 @@
+package indexReading;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ Parses a Boolean query into a tree of lazy iterators.
+
+   query   := and ("OR" and)*
+   and     := unary (["AND"] unary)*          adjacent clauses are ANDed
+   unary   := "NOT" unary | "(" query ")" | "\"" words "\"" ["~" N] | word
+
+ A quoted phrase matches its words at consecutive positions; with ~N up to N other terms may occur between
+ neighbouring words. A word that the analyzer splits into several terms is an exact phrase of them, and a term
+ that is not in the index matches nothing. NOT binds tighter than AND, which binds tighter than OR.
+ */
+class BooleanQueryParser {
+
+    /**
+     Opens the postings of the terms a piece of query text is analyzed into, in order, with null for terms
+     that are not in the index.
+     */
+    interface TermPostings {
+        List<PostingsIterator> open(String text) throws IOException;
+    }
+
+    private final TermPostings termPostings;
+    private final int[] allDocIds;
+    private List<String> tokens;
+    private int next;
+
+    BooleanQueryParser(TermPostings termPostings, int[] allDocIds) {
+        this.termPostings = termPostings;
+        this.allDocIds = allDocIds;
+    }
+
+    /**
+     Returns an iterator over the documents matching the query.
+     Throws IllegalArgumentException if the query is malformed.
+     */
+    DocIdIterator parse(String query) throws IOException {
+        tokens = tokenize(query);
+        next = 0;
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("Empty query");
+        }
+        DocIdIterator result = parseOr();
+        if (next < tokens.size()) {
+            throw new IllegalArgumentException("Unexpected '" + tokens.get(next) + "' in query: " + query);
+        }
+        return result;
+    }
+
+    private DocIdIterator parseOr() throws IOException {
+        List<DocIdIterator> clauses = new ArrayList<>();
+        clauses.add(parseAnd());
+        while (accept("OR")) {
+            clauses.add(parseAnd());
+        }
+        return clauses.size() == 1 ? clauses.get(0) : new DisjunctionIterator(clauses);
+    }
+
+    private DocIdIterator parseAnd() throws IOException {
+        List<DocIdIterator> required = new ArrayList<>();
+        List<DocIdIterator> prohibited = new ArrayList<>();
+        do {
+            boolean negated = false;
+            while (accept("NOT")) {
+                negated = !negated;
+            }
+            (negated ? prohibited : required).add(parseClause());
+        } while (accept("AND") || (next < tokens.size() && !peek("OR") && !peek(")")));
+
+        DocIdIterator result;
+        if (required.isEmpty()) {
+            result = new ArrayDocIdIterator(allDocIds);
+        }
+        else {
+            result = required.size() == 1 ? required.get(0) : new ConjunctionIterator(required);
+        }
+        if (!prohibited.isEmpty()) {
+            result = new ExclusionIterator(result,
+                    prohibited.size() == 1 ? prohibited.get(0) : new DisjunctionIterator(prohibited));
+        }
+        return result;
+    }
+
+    private DocIdIterator parseClause() throws IOException {
+        if (next >= tokens.size()) {
+            throw new IllegalArgumentException("Query ends where a term was expected");
+        }
+        String token = tokens.get(next++);
+        if (token.equals("(")) {
+            DocIdIterator inner = parseOr();
+            if (!accept(")")) {
+                throw new IllegalArgumentException("Missing ')' in query");
+            }
+            return inner;
+        }
+        if (token.equals(")") || token.equals("AND") || token.equals("OR")) {
+            throw new IllegalArgumentException("Unexpected '" + token + "' where a term was expected");
+        }
+        if (token.startsWith("\"")) {
+            int close = token.lastIndexOf('"');
+            int maxGap = 0;
+            if (close + 1 < token.length()) {
+                try {
+                    maxGap = Integer.parseInt(token.substring(close + 2));
+                }
+                catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid proximity in " + token);
+                }
+            }
+            return phrase(token.substring(1, close), maxGap);
+        }
+        return phrase(token, 0);
+    }
+
+    /**
+     Matches the terms of the text as a phrase; a single term is just its postings.
+     */
+    private DocIdIterator phrase(String text, int maxGap) throws IOException {
+        List<PostingsIterator> postings = termPostings.open(text);
+        if (postings.isEmpty() || postings.contains(null)) {
+            return new ArrayDocIdIterator(new int[0]);
+        }
+        return postings.size() == 1 ? postings.get(0) : new PhraseIterator(postings, maxGap);
+    }
+
+    private boolean peek(String token) {
+        return next < tokens.size() && tokens.get(next).equals(token);
+    }
+
+    private boolean accept(String token) {
+        if (peek(token)) {
+            next++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     Splits the query into parentheses, quoted phrases (with their ~N suffix) and whitespace separated words.
+     */
+    private static List<String> tokenize(String query) {
+        List<String> result = new ArrayList<>();
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            }
+            else if (c == '(' || c == ')') {
+                result.add(String.valueOf(c));
+                i++;
+            }
+            else if (c == '"') {
+                int close = query.indexOf('"', i + 1);
+                if (close == -1) {
+                    throw new IllegalArgumentException("Unterminated phrase in query: " + query);
+                }
+                int end = close + 1;
+                if (end < query.length() && query.charAt(end) == '~') {
+                    end++;
+                    while (end < query.length() && Character.isDigit(query.charAt(end))) {
+                        end++;
+                    }
+                }
+                result.add(query.substring(i, end));
+                i = end;
+            }
+            else {
+                int end = i;
+                while (end < query.length() && !Character.isWhitespace(query.charAt(end))
+                        && query.charAt(end) != '(' && query.charAt(end) != ')' && query.charAt(end) != '"') {
+                    end++;
+                }
+                result.add(query.substring(i, end));
+                i = end;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,69 @@
+package indexReading;
+
+import java.util.List;
+
+/**
+ Chains the postings of one term from several segments, which hold increasing, disjoint DOCID ranges.
+ */
+class ConcatPostingsIterator extends PostingsIterator {
+    private final List<PostingsIterator> iterators;
+    private final int cost;
+    private int current = 0;
+    private int docId = -1;
+
+    ConcatPostingsIterator(List<PostingsIterator> iterators) {
+        this.iterators = iterators;
+        int total = 0;
+        for (PostingsIterator iterator : iterators) {
+            total += iterator.cost();
+        }
+        this.cost = total;
+    }
+
+    @Override
+    int docId() {
+        return docId;
+    }
+
+    @Override
+    int nextDoc() {
+        while (current < iterators.size()) {
+            int next = iterators.get(current).nextDoc();
+            if (next != NO_MORE_DOCS) {
+                return docId = next;
+            }
+            current++;
+        }
+        return docId = NO_MORE_DOCS;
+    }
+
+    @Override
+    int advance(int target) {
+        if (docId >= target) {
+            return docId;
+        }
+        while (current < iterators.size()) {
+            int next = iterators.get(current).advance(target);
+            if (next != NO_MORE_DOCS) {
+                return docId = next;
+            }
+            current++;
+        }
+        return docId = NO_MORE_DOCS;
+    }
+
+    @Override
+    int frequency() {
+        return iterators.get(current).frequency();
+    }
+
+    @Override
+    int[] positions() {
+        return iterators.get(current).positions();
+    }
+
+    @Override
+    int cost() {
+        return cost;
+    }
+}
@@ -0,0 +1,60 @@
+package indexReading;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ Documents matched by every child. The cheapest child leads and the others are advanced to its candidates,
+ so each list is skipped through rather than walked, and a child that overshoots becomes the next target.
+ */
+class ConjunctionIterator extends DocIdIterator {
+    private final DocIdIterator[] children;
+    private int docId = -1;
+
+    ConjunctionIterator(List<? extends DocIdIterator> children) {
+        this.children = children.toArray(new DocIdIterator[0]);
+        Arrays.sort(this.children, Comparator.comparingInt(DocIdIterator::cost));
+    }
+
+    @Override
+    int docId() {
+        return docId;
+    }
+
+    @Override
+    int nextDoc() {
+        return docId = align(children[0].nextDoc());
+    }
+
+    @Override
+    int advance(int target) {
+        if (docId >= target) {
+            return docId;
+        }
+        return docId = align(children[0].advance(target));
+    }
+
+    /**
+     Moves every child to the first document at or after target that all of them contain.
+     */
+    private int align(int target) {
+        int i = 1;
+        while (target != NO_MORE_DOCS && i < children.length) {
+            int next = children[i].advance(target);
+            if (next == target) {
+                i++;
+            }
+            else {
+                target = children[0].advance(next);
+                i = 1;
+            }
+        }
+        return target;
+    }
+
+    @Override
+    int cost() {
+        return children[0].cost();
+    }
+}
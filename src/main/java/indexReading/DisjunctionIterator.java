@@ -0,0 +1,48 @@
+package indexReading;
+
+import java.util.List;
+
+/**
+ Documents matched by at least one child. Children are only moved once the current document is consumed.
+ */
+class DisjunctionIterator extends DocIdIterator {
+    private final DocIdIterator[] children;
+    private final int cost;
+    private int docId = -1;
+
+    DisjunctionIterator(List<? extends DocIdIterator> children) {
+        this.children = children.toArray(new DocIdIterator[0]);
+        long total = 0;
+        for (DocIdIterator child : this.children) {
+            total += child.cost();
+        }
+        this.cost = (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    @Override
+    int docId() {
+        return docId;
+    }
+
+    @Override
+    int nextDoc() {
+        return advance(docId + 1);
+    }
+
+    @Override
+    int advance(int target) {
+        if (docId >= target) {
+            return docId;
+        }
+        int next = NO_MORE_DOCS;
+        for (DocIdIterator child : children) {
+            next = Math.min(next, child.advance(target));
+        }
+        return docId = next;
+    }
+
+    @Override
+    int cost() {
+        return cost;
+    }
+}
@@ -0,0 +1,29 @@
+package indexReading;
+
+/**
+ Forward-only cursor over a set of DOCIDs in increasing order: the postings of one term or the matches of a query.
+ */
+abstract class DocIdIterator {
+    static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /**
+     Returns the current DOCID: -1 before the first move, NO_MORE_DOCS once the list is exhausted.
+     */
+    abstract int docId();
+
+    /**
+     Moves to the next document and returns its DOCID, or NO_MORE_DOCS.
+     */
+    abstract int nextDoc();
+
+    /**
+     Moves to the first document whose DOCID is at least target and returns it, or NO_MORE_DOCS.
+     Does not move if the current document already satisfies the target.
+     */
+    abstract int advance(int target);
+
+    /**
+     Upper bound on the number of documents, used to order iterators by how expensive they are to walk.
+     */
+    abstract int cost();
+}
@@ -0,0 +1,21 @@
+package indexReading;
+
+public class DocStats {
+    int distinctTerms;
+    int length;
+    long forwardOffset;
+
+    public DocStats(int distinctTerms, int length, long forwardOffset) {
+        this.distinctTerms = distinctTerms;
+        this.length = length;
+        this.forwardOffset = forwardOffset;
+    }
+
+    public int getDistinctTerms() {
+        return distinctTerms;
+    }
+
+    public int getLength() {
+        return length;
+    }
+}
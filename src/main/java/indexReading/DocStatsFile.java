@@ -0,0 +1,111 @@
+package indexReading;
+
+import indexEncoding.DocStatsFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ Memory-mapped per-document statistics of one segment, as described in DocStatsFormat.
+ Each lookup reads a single fixed-width record.
+ */
+class DocStatsFile {
+    private final MappedFile file;
+    private final int baseDocId;
+    private final long recordsStart;
+    private final long recordCount;
+    private final long documentCount;
+    private final long totalLength;
+
+    DocStatsFile(Path docStatsPath) throws IOException {
+        this.file = new MappedFile(docStatsPath);
+        if (file.length() < DocStatsFormat.VERSION_1_HEADER_LENGTH) {
+            throw new IOException("Truncated document statistics file: " + docStatsPath);
+        }
+        ByteBuffer header = file.slice(0, DocStatsFormat.VERSION_1_HEADER_LENGTH);
+        if (header.getInt() != DocStatsFormat.MAGIC) {
+            throw new IOException("Not a document statistics file: " + docStatsPath);
+        }
+        int version = header.getInt();
+        this.baseDocId = header.getInt();
+        if (version == DocStatsFormat.VERSION) {
+            if (file.length() < DocStatsFormat.HEADER_LENGTH) {
+                throw new IOException("Truncated document statistics file: " + docStatsPath);
+            }
+            this.recordsStart = DocStatsFormat.HEADER_LENGTH;
+            this.recordCount = (file.length() - recordsStart) / DocStatsFormat.RECORD_LENGTH;
+            this.documentCount = file.getLong(DocStatsFormat.VERSION_1_HEADER_LENGTH);
+            this.totalLength = file.getLong(DocStatsFormat.VERSION_1_HEADER_LENGTH + 8);
+        }
+        else if (version == DocStatsFormat.VERSION_1) {
+            this.recordsStart = DocStatsFormat.VERSION_1_HEADER_LENGTH;
+            this.recordCount = (file.length() - recordsStart) / DocStatsFormat.RECORD_LENGTH;
+
+            // Version 1 has no totals in the header, so they come from one sequential pass over the records
+            long documents = 0;
+            long length = 0;
+            for (long index = 0; index < recordCount; index++) {
+                long record = recordsStart + index * DocStatsFormat.RECORD_LENGTH;
+                if (file.getLong(record + 8) != -1) {
+                    documents++;
+                    length += file.getInt(record + 4);
+                }
+            }
+            this.documentCount = documents;
+            this.totalLength = length;
+        }
+        else {
+            throw new IOException("Unsupported document statistics version " + version + " in " + docStatsPath);
+        }
+    }
+
+    /**
+     Number of documents in this segment.
+     */
+    long documentCount() {
+        return documentCount;
+    }
+
+    /**
+     Sum of the lengths of all documents in this segment.
+     */
+    long totalLength() {
+        return totalLength;
+    }
+
+    /**
+     Returns the number of terms in the document, or -1 if this segment does not hold it.
+     Reads only the length field, so it is cheap enough to call for every scored document.
+     */
+    int length(int docId) {
+        long record = recordPosition(docId);
+        if (record < 0 || file.getLong(record + 8) == -1) {
+            return -1;
+        }
+        return file.getInt(record + 4);
+    }
+
+    /**
+     Returns the statistics of the document, or null if this segment does not hold it.
+     */
+    DocStats get(int docId) {
+        long record = recordPosition(docId);
+        if (record < 0) {
+            return null;
+        }
+        DocStats stats = new DocStats(file.getInt(record), file.getInt(record + 4), file.getLong(record + 8));
+        return stats.forwardOffset == -1 ? null : stats;
+    }
+
+    /**
+     Returns the file position of the document's record, or -1 if the DOCID is outside this segment's range.
+     */
+    private long recordPosition(int docId) {
+        long index = (long) docId - baseDocId;
+        if (index < 0 || index >= recordCount) {
+            return -1;
+        }
+        return recordsStart + index * DocStatsFormat.RECORD_LENGTH;
+    }
+}
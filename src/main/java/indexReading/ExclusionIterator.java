@@ -0,0 +1,46 @@
+package indexReading;
+
+/**
+ Documents matched by the included iterator and not by the excluded one.
+ The excluded list is only advanced to the included candidates.
+ */
+class ExclusionIterator extends DocIdIterator {
+    private final DocIdIterator included;
+    private final DocIdIterator excluded;
+    private int docId = -1;
+
+    ExclusionIterator(DocIdIterator included, DocIdIterator excluded) {
+        this.included = included;
+        this.excluded = excluded;
+    }
+
+    @Override
+    int docId() {
+        return docId;
+    }
+
+    @Override
+    int nextDoc() {
+        return docId = skipExcluded(included.nextDoc());
+    }
+
+    @Override
+    int advance(int target) {
+        if (docId >= target) {
+            return docId;
+        }
+        return docId = skipExcluded(included.advance(target));
+    }
+
+    private int skipExcluded(int candidate) {
+        while (candidate != NO_MORE_DOCS && excluded.advance(candidate) == candidate) {
+            candidate = included.nextDoc();
+        }
+        return candidate;
+    }
+
+    @Override
+    int cost() {
+        return included.cost();
+    }
+}
@@ -1,33 +1,122 @@
 package indexReading;
 
-import org.apache.lucene.analysis.TokenStream;
+import documentTokenizing.TokenStemmer;
+import indexEncoding.Segment;
+import indexEncoding.TermIndexShards;
+import pipelineMonitoring.Metrics;
+import org.apache.lucene.analysis.CharArraySet;
 import org.apache.lucene.analysis.standard.StandardTokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
-import org.apache.lucene.analysis.en.PorterStemFilter;
+import primitiveCollections.CharArrayCache;
+import primitiveCollections.IntList;
+import primitiveCollections.StringIdDictionary;
 
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
 import java.util.stream.Collectors;
 
-public class IndexReader {
+/**
+ Answers lookups and queries against an index on disk. All state is read-only after construction apart from the
+ synchronized caches, and the index files are memory mapped and read at absolute positions, so one reader can
+ serve many threads at once.
+ */
+public class IndexReader implements QueryableIndex {
 
-    private final Map<String, Integer> docIdMap = new HashMap<>();
-    private final Map<Integer, String> termIdMap = new HashMap<>();
+    // Document name <-> DOCID, with the names packed into a byte arena
+    private final StringIdDictionary docIds = new StringIdDictionary();
+    // All DOCIDs in ascending order, the universe that NOT queries are taken against
+    private final int[] allDocIds;
+    private TermDictionary termDictionary;
+    // Corpus-wide statistics summed over all segments; the offset is the one in the first segment containing the term
     private final Map<Integer, TermInfo> termInfoMap = new HashMap<>();
-    private final Map<Integer, Map<Integer, List<Integer>>> docIndex = new HashMap<>();
-    private final String termIndexPath;
+    private final List<SegmentReader> segments = new ArrayList<>();
+    private final long documentCount;
+    private final long totalLength;
 
-    public IndexReader(String docIdsPath, String termIdsPath, String termInfoPath, String termIndexPath, String docIndexPath) throws IOException {
+    public static final long DEFAULT_CACHE_BYTES = 64L * 1024 * 1024;
+    // Lists whose decoded size is above this share of the postings cache stay lazy and are not cached
+    private static final int MAX_CACHED_LIST_FRACTION = 16;
+
+    // Decoded inverted lists by TERMID, and the results of ranked and Boolean queries by query text
+    private final LruCache<Integer, PostingList> postingsCache;
+    private final LruCache<String, List<SearchResult>> searchCache;
+    private final LruCache<String, List<String>> queryCache;
+
+    // Distinct query tokens whose TERMIDs are kept
+    private static final int TERM_ID_CACHE_CAPACITY = 1 << 14;
+    // Query token -> TERMID, or -1 for tokens whose stem is not in the index; shared by all query threads
+    private final CharArrayCache<Integer> termIdCache = new CharArrayCache<>("Query term", TERM_ID_CACHE_CAPACITY);
+    // Each query thread reuses its own tokenizer and stemmer
+    private final ThreadLocal<QueryAnalyzer> queryAnalyzer = ThreadLocal.withInitial(QueryAnalyzer::new);
+    // The stop words the index was built with, which queries skip as indexing did
+    private final CharArraySet stopWords;
+
+    /**
+     Opens a single-segment index built with the given stop words.
+     */
+    public IndexReader(String docIdsPath, String termIdsPath, String termInfoPath, String termIndexPath, String docStatsPath,
+                       Set<String> stopWords) throws IOException {
+        this(docIdsPath, termIdsPath, termInfoPath, termIndexPath, docStatsPath, stopWords, DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     Opens a single-segment index whose caches use at most roughly cacheBytes of heap.
+     */
+    public IndexReader(String docIdsPath, String termIdsPath, String termInfoPath, String termIndexPath, String docStatsPath,
+                       Set<String> stopWords, long cacheBytes) throws IOException {
+        this(docIdsPath, termIdsPath, List.of(new Segment("base", null, docStatsPath, termIndexPath, termInfoPath)),
+                stopWords, cacheBytes);
+    }
+
+    /**
+     Opens an index made of several segments that share the docids and termids dictionaries.
+     */
+    public IndexReader(String docIdsPath, String termIdsPath, List<Segment> segments, Set<String> stopWords) throws IOException {
+        this(docIdsPath, termIdsPath, segments, stopWords, DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     Opens a segmented index whose caches use at most roughly cacheBytes of heap: three quarters for decoded
+     inverted lists and the rest for query results.
+     */
+    public IndexReader(String docIdsPath, String termIdsPath, List<Segment> segments, Set<String> stopWords,
+                       long cacheBytes) throws IOException {
+        this.stopWords = new CharArraySet(stopWords, false);
+        this.postingsCache = new LruCache<>("Postings", cacheBytes / 4 * 3, PostingList::estimatedBytes);
+        this.searchCache = new LruCache<>("Search result", cacheBytes / 8, results -> 64 + results.size() * 64L);
+        this.queryCache = new LruCache<>("Query result", cacheBytes / 8,
+                docNames -> 64 + docNames.stream().mapToLong(docName -> 56 + 2L * docName.length()).sum());
         loadDocIds(docIdsPath);
+        allDocIds = docIds.ids();
         loadTermIds(termIdsPath);
-        loadTermInfo(termInfoPath);
-        loadDocIndex(docIndexPath);
-        this.termIndexPath = termIndexPath;
+        Metrics.registerCache("query_term", termIdCache::hits, termIdCache::misses);
+        for (Segment segment : segments) {
+            Map<Integer, TermInfo> segmentTermInfo = loadTermInfo(segment.getTermInfoPath());
+            this.segments.add(new SegmentReader(segment, segmentTermInfo,
+                    openTermIndexShards(segment.getTermIndexPath(), segmentTermInfo),
+                    new DocStatsFile(Paths.get(segment.getDocStatsPath()))));
+
+            for (Map.Entry<Integer, TermInfo> entry : segmentTermInfo.entrySet()) {
+                TermInfo info = entry.getValue();
+                termInfoMap.merge(entry.getKey(), new TermInfo(info.offset, info.totalOccurrences, info.docCount, info.shard),
+                        (total, added) -> new TermInfo(total.offset, total.totalOccurrences + added.totalOccurrences,
+                                total.docCount + added.docCount, total.shard));
+            }
+        }
+
+        long documentCount = 0;
+        long totalLength = 0;
+        for (SegmentReader segment : this.segments) {
+            documentCount += segment.docStats.documentCount();
+            totalLength += segment.docStats.totalLength();
+        }
+        this.documentCount = documentCount;
+        this.totalLength = totalLength;
     }
 
     /**
-     Reads the docIdsPath file and populates the docIdMap with document names and their corresponding IDs.
+     Reads the docIdsPath file and populates the document dictionary with document names and their corresponding IDs.
      */
     private void loadDocIds(String docIdsPath) throws IOException {
         List<String> lines = Files.readAllLines(Paths.get(docIdsPath));
@@ -37,19 +126,27 @@ public class IndexReader {
             try {
                 docId = Integer.parseInt(parts[0].trim());
             } catch (NumberFormatException e) {
+                docId = -1;
+            }
+            if (docId < 0) {
                 System.err.println("Skipping malformed doc ID in line: " + line);
                 continue;
             }
-            String docName = parts[1].trim();
-            docIdMap.put(docName, docId);
+            try {
+                docIds.put(parts[1].trim(), docId);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Skipping duplicate doc ID in line: " + line);
+            }
         }
     }
 
     /**
-     Reads the termIdsPath file and fills termIdMap with term IDs and the actual terms.
+     Reads the termIdsPath file and builds the term dictionary used to look up term IDs.
      */
     private void loadTermIds(String termIdsPath) throws IOException {
         List<String> lines = Files.readAllLines(Paths.get(termIdsPath));
+        List<String> terms = new ArrayList<>(lines.size());
+        List<Integer> termIds = new ArrayList<>(lines.size());
         for (String line : lines) {
             if (line.trim().isEmpty()) {
                 continue; // Skip empty lines
@@ -67,14 +164,32 @@ public class IndexReader {
                 continue;
             }
             String term = parts[1].trim();
-            termIdMap.put(termId, term);
+            terms.add(term);
+            termIds.add(termId);
+        }
+        termDictionary = TermDictionary.build(terms, termIds);
+    }
+
+    /**
+     Maps every shard of a segment's term index, as many as the highest shard referenced by its term_info.
+     */
+    private static MappedTermIndex[] openTermIndexShards(String termIndexPath, Map<Integer, TermInfo> segmentTermInfo) throws IOException {
+        int shardCount = 1;
+        for (TermInfo info : segmentTermInfo.values()) {
+            shardCount = Math.max(shardCount, info.shard + 1);
+        }
+        MappedTermIndex[] shards = new MappedTermIndex[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            shards[shard] = new MappedTermIndex(Paths.get(TermIndexShards.path(termIndexPath, shard)));
         }
+        return shards;
     }
 
     /**
-     * Reads the termInfoPath file to get the details of each term and stores them in termInfoMap.
+     * Reads the termInfoPath file of one segment and returns the details of each term by term ID.
      */
-    private void loadTermInfo(String termInfoPath) throws IOException {
+    private Map<Integer, TermInfo> loadTermInfo(String termInfoPath) throws IOException {
+        Map<Integer, TermInfo> segmentTermInfo = new HashMap<>();
         List<String> lines = Files.readAllLines(Paths.get(termInfoPath));
         for (String line : lines) {
             if (line.trim().isEmpty()) {
@@ -89,48 +204,103 @@ public class IndexReader {
             long offset;
             int totalOccurrences;
             int docCount;
+            int shard;
             try {
                 termId = Integer.parseInt(parts[0].trim());
                 offset = Long.parseLong(parts[1].trim());
                 totalOccurrences = Integer.parseInt(parts[2].trim());
                 docCount = Integer.parseInt(parts[3].trim());
+                shard = parts.length > 4 ? Integer.parseInt(parts[4].trim()) : 0;  // only sharded term indexes have the column
             } catch (NumberFormatException e) {
                 System.err.println("Skipping malformed numbers in line: " + line);
                 continue;
             }
-            termInfoMap.put(termId, new TermInfo(offset, totalOccurrences, docCount));
+            if (shard < 0) {
+                System.err.println("Skipping negative shard in line: " + line);
+                continue;
+            }
+            segmentTermInfo.put(termId, new TermInfo(offset, totalOccurrences, docCount, shard));
         }
+        return segmentTermInfo;
     }
 
     /**
-     Reads the docIndexPath file and builds the docIndex, which maps document IDs to term positions.
+     Returns the DOCID of a document, or -1 if it is not in the index.
      */
-    private void loadDocIndex(String docIndexPath) throws IOException {
-        List<String> lines = Files.readAllLines(Paths.get(docIndexPath));
-        for (String line : lines) {
-            String[] parts = line.split("\t");
-            int docId;
-            int termId;
-            try {
-                docId = Integer.parseInt(parts[0].trim());
-                termId = Integer.parseInt(parts[1].trim());
-            } catch (NumberFormatException e) {
-                System.err.println("Skipping malformed doc ID or term ID in line: " + line);
-                continue;
-            }
-            List<Integer> positions;
-            try {
-                positions = Arrays.stream(parts[2].split(" "))
-                        .map(String::trim)
-                        .map(Integer::parseInt)
-                        .collect(Collectors.toList());
-            } catch (NumberFormatException e) {
-                System.err.println("Skipping malformed positions in line: " + line);
-                continue;
+    public int getDocId(String docName) {
+        return docIds.get(docName);
+    }
+
+    /**
+     Returns the number of distinct and total terms of a document, or null if the index has no terms for it.
+     */
+    public DocStats getDocStats(int docId) {
+        long start = System.nanoTime();
+        try {
+            return findDocStats(docId);
+        }
+        finally {
+            Metrics.recordLookup("doc", String.valueOf(docId), start);
+        }
+    }
+
+    /**
+     Stems a query term and returns its TERMID, or -1 if it is not in the index.
+     */
+    public int getTermId(String term) throws IOException {
+        IntList termIds = analyze(term);
+        return termIds.isEmpty() ? -1 : termIds.get(0);
+    }
+
+    /**
+     Tokenizes and stems text as given, without lowercasing, and returns the TERMID of every token, -1 for tokens
+     that are not in the index.
+     */
+    public int[] getTermIds(String text) throws IOException {
+        return analyze(text).toArray();
+    }
+
+    /**
+     Number of documents with statistics in the index, the N of BM25.
+     */
+    public long getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     Total number of terms of all documents, which divided by the document count is the average document length of BM25.
+     */
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    /**
+     Returns the corpus-wide document and term frequency of a term, or null if it is not in the index.
+     */
+    public TermInfo getTermInfo(int termId) {
+        long start = System.nanoTime();
+        try {
+            return termInfoMap.get(termId);
+        }
+        finally {
+            Metrics.recordLookup("term", String.valueOf(termId), start);
+        }
+    }
+
+    /**
+     Returns the positions of a term in a document, or null if the document does not contain it.
+     */
+    public int[] getPositions(int termId, int docId) throws IOException {
+        long start = System.nanoTime();
+        try {
+            PostingsIterator invertedList = getInvertedList(termId);
+            if (invertedList == null || invertedList.advance(docId) != docId) {
+                return null;
             }
-            docIndex.computeIfAbsent(docId, k -> new HashMap<>())
-                    .computeIfAbsent(termId, k -> new ArrayList<>())
-                    .addAll(positions);
+            return invertedList.positions();
+        }
+        finally {
+            Metrics.recordLookup("term_doc", termId + " " + docId, start);
         }
     }
 
@@ -138,163 +308,473 @@ public class IndexReader {
      Prints information about a document, including its ID, number of distinct terms, and total number of terms.
      */
     public void printDocInfo(String docName) {
-        Integer docId = docIdMap.get(docName);
-        if (docId == null) {
-            System.err.println("Document not found: " + docName);
-            return;
-        }
+        printDocInfo(docName, System.out, System.err);
+    }
 
-        Map<Integer, List<Integer>> termPositions = docIndex.get(docId);
-        if (termPositions == null) {
-            System.err.println("No term positions found for document ID: " + docId);
-            return;
-        }
+    /**
+     Same as printDocInfo(String), writing results to out and messages to err.
+     */
+    public void printDocInfo(String docName, PrintStream out, PrintStream err) {
+        long start = System.nanoTime();
+        try {
+            int docId = docIds.get(docName);
+            if (docId < 0) {
+                err.println("Document not found: " + docName);
+                return;
+            }
+
+            DocStats docStats = findDocStats(docId);
+            if (docStats == null) {
+                err.println("No term positions found for document ID: " + docId);
+                return;
+            }
 
-        int distinctTerms = termPositions.size();
-        int totalTerms = termPositions.values().stream().mapToInt(List::size).sum();
+            int distinctTerms = docStats.distinctTerms;
+            int totalTerms = docStats.length;
 
-        System.out.println("Listing for document: " + docName);
-        System.out.println("DOCID: " + docId);
-        System.out.println("Distinct terms: " + distinctTerms);
-        System.out.println("Total terms: " + totalTerms);
+            out.println("Listing for document: " + docName);
+            out.println("DOCID: " + docId);
+            out.println("Distinct terms: " + distinctTerms);
+            out.println("Total terms: " + totalTerms);
+        }
+        finally {
+            Metrics.recordLookup("doc", docName, start);
+        }
     }
 
     /**
      Prints information about a term, including its ID, document frequency, term frequency, and offset in the inverted list.
      */
     public void printTermInfo(String term) throws IOException {
-        int termId;
+        printTermInfo(term, System.out, System.err);
+    }
+
+    /**
+     Same as printTermInfo(String), writing results to out and messages to err.
+     */
+    public void printTermInfo(String term, PrintStream out, PrintStream err) throws IOException {
+        long start = System.nanoTime();
         try {
-            termId = stemAndGetTermId(term);
-        } catch (IllegalArgumentException e) {
-            System.err.println(e.getMessage());
-            return;
+            int termId;
+            try {
+                termId = stemAndGetTermId(term, err);
+            } catch (IllegalArgumentException e) {
+                err.println(e.getMessage());
+                return;
+            }
+            TermInfo termInfo = termInfoMap.get(termId);
+            if (termInfo == null) {
+                err.println("Term not found: " + term);
+                return;
+            }
+
+            out.println("Listing for term: " + term);
+            out.println("TERMID: " + termId);
+            out.println("Number of documents containing term: " + termInfo.docCount);
+            out.println("Term frequency in corpus: " + termInfo.totalOccurrences);
+            if (segments.size() == 1) {
+                out.println("Inverted list offset: " + termInfo.offset + shardSuffix(segments.get(0), termInfo));
+            }
+            else {
+                for (SegmentReader segment : segments) {
+                    TermInfo segmentInfo = segment.termInfoMap.get(termId);
+                    if (segmentInfo != null) {
+                        out.println("Inverted list offset in " + segment.segment.getName() + ": " + segmentInfo.offset
+                                + shardSuffix(segment, segmentInfo));
+                    }
+                }
+            }
         }
-        TermInfo termInfo = termInfoMap.get(termId);
-        if (termInfo == null) {
-            System.err.println("Term not found: " + term);
-            return;
+        finally {
+            Metrics.recordLookup("term", term, start);
         }
-
-        System.out.println("Listing for term: " + term);
-        System.out.println("TERMID: " + termId);
-        System.out.println("Number of documents containing term: " + termInfo.docCount);
-        System.out.println("Term frequency in corpus: " + termInfo.totalOccurrences);
-        System.out.println("Inverted list offset: " + termInfo.offset);
     }
 
     /**
      Prints the positions of a term within a specific document, including term ID, document ID, and positions.
      */
     public void printTermDocInfo(String term, String docName) throws IOException {
-        int termId;
+        printTermDocInfo(term, docName, System.out, System.err);
+    }
 
+    /**
+     Same as printTermDocInfo(String, String), writing results to out and messages to err.
+     */
+    public void printTermDocInfo(String term, String docName, PrintStream out, PrintStream err) throws IOException {
+        long start = System.nanoTime();
         try {
-            termId = stemAndGetTermId(term);
+            int termId;
+
+            try {
+                termId = stemAndGetTermId(term, err);
+            }
+            catch (IllegalArgumentException e) {
+                err.println(e.getMessage());
+                return;
+            }
+            TermInfo termInfo = termInfoMap.get(termId);
+            if (termInfo == null) {
+                err.println("Term not found: " + term);
+                return;
+            }
+
+            int docId = docIds.get(docName);
+            if (docId < 0) {
+                err.println("Document not found: " + docName);
+                return;
+            }
+
+            PostingsIterator invertedList;
+            try {
+                invertedList = getInvertedList(termId);
+            }
+            catch (IOException e) {
+                err.println("Failed to read inverted list for term: " + term);
+                return;
+            }
+            if (invertedList == null) {
+                err.println("Inverted list not found for term: " + term);
+                return;
+            }
+
+            if (invertedList.advance(docId) == docId) {
+                int[] positions = invertedList.positions();
+                out.println("Inverted list for term: " + term);
+                out.println("In document: " + docName);
+                out.println("TERMID: " + termId);
+                out.println("DOCID: " + docId);
+                out.println("Term frequency in document: " + positions.length);
+                out.println("Positions: " + Arrays.stream(positions).mapToObj(String::valueOf).collect(Collectors.joining(", ")));
+                return;
+            }
+
+            err.println("Term not found in document: " + docName);
         }
-        catch (IllegalArgumentException e) {
-            System.err.println(e.getMessage());
-            return;
+        finally {
+            Metrics.recordLookup("term_doc", term + " " + docName, start);
         }
-        TermInfo termInfo = termInfoMap.get(termId);
-        if (termInfo == null) {
-            System.err.println("Term not found: " + term);
-            return;
+    }
+
+    /**
+     Ranks documents for a free-text query with BM25 and returns the k best, highest score first.
+     Query terms that are not in the index are ignored; a term given several times counts that many times.
+     */
+    public List<SearchResult> search(String query, int k) throws IOException {
+        return search(query, k, documentCount, totalLength, getDocFrequencies(query));
+    }
+
+    /**
+     Returns the document frequency of every token of the lowercased query apart from stop words, 0 for tokens
+     not in the index.
+     */
+    public int[] getDocFrequencies(String query) throws IOException {
+        int[] termIds = analyzeQuery(query).toArray();
+        int[] docFrequencies = new int[termIds.length];
+        for (int i = 0; i < termIds.length; i++) {
+            TermInfo termInfo = termIds[i] < 0 ? null : termInfoMap.get(termIds[i]);
+            docFrequencies[i] = termInfo == null ? 0 : termInfo.docCount;
+        }
+        return docFrequencies;
+    }
+
+    /**
+     Same as search(String, int), scoring with the BM25 statistics of a larger corpus this index is one shard of:
+     its document count and total length, and the document frequency of every token as getDocFrequencies gives them.
+     Scores are then the ones a single index of the whole corpus would give.
+     */
+    public List<SearchResult> search(String query, int k, long documentCount, long totalLength, int[] docFrequencies) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String cacheKey = k + "\t" + documentCount + "\t" + totalLength + "\t" + Arrays.toString(docFrequencies) + "\t" + query;
+            List<SearchResult> cached = searchCache.get(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+
+            Map<Integer, Integer> queryTerms = new LinkedHashMap<>();
+            Map<Integer, Integer> queryDocFrequencies = new HashMap<>();
+            int[] termIds = analyzeQuery(query).toArray();
+            for (int i = 0; i < termIds.length; i++) {
+                int termId = termIds[i];
+                if (termInfoMap.containsKey(termId)) {
+                    queryTerms.merge(termId, 1, Integer::sum);
+                    queryDocFrequencies.put(termId, i < docFrequencies.length ? docFrequencies[i] : 0);
+                }
+            }
+
+            Bm25 bm25 = new Bm25(documentCount, totalLength);
+            List<MaxScoreSearcher.TermScorer> scorers = new ArrayList<>();
+            for (Map.Entry<Integer, Integer> entry : queryTerms.entrySet()) {
+                PostingsIterator postings = getInvertedList(entry.getKey());
+                if (postings == null) {
+                    continue;
+                }
+                TermInfo termInfo = termInfoMap.get(entry.getKey());
+                double weight = bm25.idf(queryDocFrequencies.get(entry.getKey())) * entry.getValue();
+                // The local frequencies bound this index's documents at least as tightly as the corpus-wide ones
+                scorers.add(new MaxScoreSearcher.TermScorer(postings, weight,
+                        bm25.maxScore(weight, termInfo.totalOccurrences, termInfo.docCount)));
+            }
+
+            List<SearchResult> results = new ArrayList<>();
+            for (MaxScoreSearcher.ScoredDoc doc : new MaxScoreSearcher(bm25, this::docLength).search(scorers, k)) {
+                results.add(new SearchResult(doc.docId, docIds.getKey(doc.docId), doc.score));
+            }
+            results = Collections.unmodifiableList(results);
+            searchCache.put(cacheKey, results);
+            return results;
+        }
+        finally {
+            Metrics.recordLookup("search", query, start);
         }
+    }
+
+    /**
+     Prints the k best documents for a query with their BM25 scores.
+     */
+    public void printSearchResults(String query, int k) throws IOException {
+        printSearchResults(query, k, System.out, System.err);
+    }
 
-        Integer docId = docIdMap.get(docName);
-        if (docId == null) {
-            System.err.println("Document not found: " + docName);
+    /**
+     Same as printSearchResults(String, int), writing results to out and messages to err.
+     */
+    public void printSearchResults(String query, int k, PrintStream out, PrintStream err) throws IOException {
+        List<SearchResult> results = search(query, k);
+        if (results.isEmpty()) {
+            err.println("No documents found for query: " + query);
             return;
         }
 
-        List<String> invertedList;
+        out.println("Results for query: " + query);
+        int rank = 1;
+        for (SearchResult result : results) {
+            out.println(rank++ + ". " + result.getDocName() + " (DOCID: " + result.getDocId() + ") score: "
+                    + String.format(Locale.ROOT, "%.4f", result.getScore()));
+        }
+    }
+
+    /**
+     Returns the names of the documents matching a Boolean query, in DOCID order.
+     See BooleanQueryParser for the syntax of AND, OR, NOT, parentheses, "exact phrases" and "proximity"~N.
+     Throws IllegalArgumentException if the query is malformed.
+     */
+    public List<String> findDocuments(String query) throws IOException {
+        long start = System.nanoTime();
         try {
-            invertedList = getInvertedList(termInfo.offset);
+            List<String> cached = queryCache.get(query);
+            if (cached != null) {
+                return cached;
+            }
+
+            DocIdIterator matches = new BooleanQueryParser(this::openTermPostings, allDocIds).parse(query);
+
+            List<String> docNames = new ArrayList<>();
+            for (int docId = matches.nextDoc(); docId != DocIdIterator.NO_MORE_DOCS; docId = matches.nextDoc()) {
+                docNames.add(docIds.getKey(docId));
+            }
+            docNames = Collections.unmodifiableList(docNames);
+            queryCache.put(query, docNames);
+            return docNames;
         }
-        catch (IOException e) {
-            System.err.println("Failed to read inverted list for term: " + term);
+        finally {
+            Metrics.recordLookup("query", query, start);
+        }
+    }
+
+    /**
+     Prints the documents matching a Boolean query.
+     */
+    public void printQueryResults(String query) throws IOException {
+        printQueryResults(query, System.out, System.err);
+    }
+
+    /**
+     Same as printQueryResults(String), writing results to out and messages to err.
+     */
+    public void printQueryResults(String query, PrintStream out, PrintStream err) throws IOException {
+        List<String> docNames;
+        try {
+            docNames = findDocuments(query);
+        }
+        catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
             return;
         }
-        if (invertedList == null) {
-            System.err.println("Inverted list not found for term: " + term);
+        if (docNames.isEmpty()) {
+            err.println("No documents found for query: " + query);
             return;
         }
 
-        for (String entry : invertedList) {
-            String[] parts = entry.split(":");
-            int entryDocId;
-            try {
-                entryDocId = Integer.parseInt(parts[0]);
-            }
-            catch (NumberFormatException e) {
-                System.err.println("Skipping malformed entry doc ID in entry: " + entry);
-                continue;
-            }
-            if (entryDocId == docId) {
-                String[] positions = parts[1].split("\\t");
-                System.out.println("Inverted list for term: " + term);
-                System.out.println("In document: " + docName);
-                System.out.println("TERMID: " + termId);
-                System.out.println("DOCID: " + docId);
-                System.out.println("Term frequency in document: " + positions.length);
-                System.out.println("Positions: " + String.join(", ", positions));
-                return;
+        out.println("Documents matching query: " + query);
+        out.println("Number of documents: " + docNames.size());
+        for (String docName : docNames) {
+            out.println(docName);
+        }
+    }
+
+    /**
+     Analyzes query text into index terms and opens the postings of each, with null for unknown terms.
+     */
+    private List<PostingsIterator> openTermPostings(String text) throws IOException {
+        List<PostingsIterator> postings = new ArrayList<>();
+        IntList termIds = analyzeQuery(text);
+        for (int i = 0; i < termIds.size(); i++) {
+            int termId = termIds.get(i);
+            postings.add(termId < 0 ? null : getInvertedList(termId));
+        }
+        return postings;
+    }
+
+    /**
+     Names the term index shard holding a term's postings, for segments whose term index has several.
+     */
+    private static String shardSuffix(SegmentReader segment, TermInfo termInfo) {
+        return segment.termIndexShards.length > 1 ? " (shard " + termInfo.shard + ")" : "";
+    }
+
+    /**
+     Returns the statistics of a document from the segment that holds it, or null if no segment does.
+     */
+    private DocStats findDocStats(int docId) {
+        for (SegmentReader segment : segments) {
+            DocStats docStats = segment.docStats.get(docId);
+            if (docStats != null) {
+                return docStats;
             }
         }
+        return null;
+    }
 
-        System.err.println("Term not found in document: " + docName);
+    /**
+     Returns the number of terms in a document, from the segment that holds it.
+     */
+    private int docLength(int docId) {
+        for (SegmentReader segment : segments) {
+            int length = segment.docStats.length(docId);
+            if (length >= 0) {
+                return length;
+            }
+        }
+        return 0;
     }
 
     /**
-     Stems the input term and retrieves its corresponding term ID from termIdMap.
+     Stems the input term and retrieves its corresponding term ID from the term dictionary.
      */
-    private int stemAndGetTermId(String term) throws IOException {
-        List<String> tokens = tokenizeAndStem(term);
-        if (tokens.isEmpty()) {
-            System.err.println("Unable to stem term: " + term);
+    private int stemAndGetTermId(String term, PrintStream err) throws IOException {
+        IntList termIds = analyze(term);
+        if (termIds.isEmpty()) {
+            err.println("Unable to stem term: " + term);
             return -1; // Indicate an error
         }
-        return tokens.stream()
-                .map(token -> termIdMap.entrySet().stream()
-                        .filter(entry -> entry.getValue().equals(token))
-                        .map(Map.Entry::getKey)
-                        .findFirst()
-                        .orElse(-1))
-                .findFirst()
-                .orElse(-1);
+        return termIds.get(0);
     }
 
     /**
-     Tokenizes and stems the input text, returning a list of stemmed tokens.
+     Analyzes query text the way documents were indexed: lowercased, without stop words, and stemmed. Stop words
+     take no position in the index, so skipping them lines the other words of a phrase up as they were indexed.
      */
-    private List<String> tokenizeAndStem(String text) throws IOException {
-        List<String> tokens = new ArrayList<>();
-        StandardTokenizer tokenizer = new StandardTokenizer();
+    private IntList analyzeQuery(String text) throws IOException {
+        return analyze(text.toLowerCase(Locale.ROOT), true);
+    }
+
+    /**
+     Tokenizes and stems the input text, returning the TERMID of each token, or -1 for tokens not in the index.
+     Tokens seen before are answered from the term ID cache without stemming or a dictionary lookup.
+     */
+    private IntList analyze(String text) throws IOException {
+        return analyze(text, false);
+    }
+
+    /**
+     Same as analyze(String), leaving stop words out if skipStopWords is set.
+     */
+    private IntList analyze(String text, boolean skipStopWords) throws IOException {
+        QueryAnalyzer analyzer = queryAnalyzer.get();
+        IntList termIds = new IntList();
+        StandardTokenizer tokenizer = analyzer.tokenizer;
         tokenizer.setReader(new StringReader(text));
-        TokenStream tokenStream = new PorterStemFilter(tokenizer);
-        CharTermAttribute charTermAttr = tokenStream.addAttribute(CharTermAttribute.class);
-        tokenStream.reset();
-        while (tokenStream.incrementToken()) {
-            tokens.add(charTermAttr.toString());
+        tokenizer.reset();
+        while (tokenizer.incrementToken()) {
+            char[] buffer = analyzer.termAttr.buffer();
+            int length = analyzer.termAttr.length();
+            if (skipStopWords && stopWords.contains(buffer, 0, length)) {
+                continue;
+            }
+            Integer termId = termIdCache.get(buffer, length);
+            if (termId == null) {
+                termId = termDictionary.getTermId(analyzer.stemmer.stem(buffer, length));
+                termIdCache.put(buffer, length, termId);
+            }
+            termIds.add(termId);
+        }
+        tokenizer.end();
+        tokenizer.close();
+        return termIds;
+    }
+
+    /**
+     Tokenizer and stemmer of one query thread, reused between queries.
+     */
+    private static final class QueryAnalyzer {
+        final StandardTokenizer tokenizer = new StandardTokenizer();
+        final CharTermAttribute termAttr = tokenizer.addAttribute(CharTermAttribute.class);
+        final TokenStemmer stemmer = new TokenStemmer();
+    }
+
+    /**
+     Prints the hit, miss and eviction counters of the caches.
+     */
+    public void printCacheStats() {
+        printCacheStats(System.out);
+    }
+
+    /**
+     Same as printCacheStats(), writing the counters to out.
+     */
+    public void printCacheStats(PrintStream out) {
+        out.println(postingsCache.stats());
+        out.println(searchCache.stats());
+        out.println(queryCache.stats());
+        out.println(termIdCache.stats());
+    }
+
+    /**
+     Returns the inverted list for a term, from the postings cache when possible. Lists small enough to cache
+     are decoded in full on a miss; larger ones are returned as lazy iterators so they can still be skipped through.
+     */
+    private PostingsIterator getInvertedList(int termId) throws IOException {
+        PostingList cached = postingsCache.get(termId);
+        if (cached != null) {
+            return new ListPostingsIterator(cached);
         }
-        tokenStream.end();
-        tokenStream.close();
-        return tokens;
+        PostingsIterator postings = openInvertedList(termId);
+        TermInfo termInfo = termInfoMap.get(termId);
+        if (postings == null || termInfo == null || PostingList.estimateBytes(termInfo.docCount, termInfo.totalOccurrences)
+                > postingsCache.capacity() / MAX_CACHED_LIST_FRACTION) {
+            return postings;
+        }
+        PostingList decoded = PostingList.decode(postings);
+        postingsCache.put(termId, decoded);
+        return new ListPostingsIterator(decoded);
     }
 
     /**
-     Reads the inverted list for a term from termIndexPath, starting at the given offset.
+     Opens the inverted list for a term across every segment that contains it, in DOCID order.
      */
-    private List<String> getInvertedList(long offset) throws IOException {
-        RandomAccessFile file = new RandomAccessFile(termIndexPath, "r");
-        file.seek(offset);
-        String line = file.readLine();
-        file.close();
-        if (line == null) {
+    private PostingsIterator openInvertedList(int termId) throws IOException {
+        List<PostingsIterator> iterators = new ArrayList<>();
+        for (SegmentReader segment : segments) {
+            PostingsIterator iterator = segment.iterator(termId);
+            if (iterator != null) {
+                iterators.add(iterator);
+            }
+        }
+        if (iterators.isEmpty()) {
             return null;
         }
-        return Arrays.asList(line.split("\t"));
+        return iterators.size() == 1 ? iterators.get(0) : new ConcatPostingsIterator(iterators);
     }
 
 }
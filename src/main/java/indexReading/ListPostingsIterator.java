@@ -0,0 +1,71 @@
+package indexReading;
+
+/**
+ Iterates over an already decoded PostingList; advance() gallops forward and then binary searches.
+ */
+class ListPostingsIterator extends PostingsIterator {
+    private final PostingList list;
+    private int index = -1;
+    private int docId = -1;
+
+    ListPostingsIterator(PostingList list) {
+        this.list = list;
+    }
+
+    @Override
+    int docId() {
+        return docId;
+    }
+
+    @Override
+    int nextDoc() {
+        return moveTo(index + 1);
+    }
+
+    @Override
+    int advance(int target) {
+        if (docId >= target) {
+            return docId;
+        }
+        int low = index + 1;
+        int step = 1;
+        int high = low;
+        while (high < list.size() && list.docId(high) < target) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, list.size() - 1);
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (list.docId(mid) < target) {
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return moveTo(low);
+    }
+
+    private int moveTo(int newIndex) {
+        index = Math.min(newIndex, list.size());
+        docId = index < list.size() ? list.docId(index) : NO_MORE_DOCS;
+        return docId;
+    }
+
+    @Override
+    int frequency() {
+        return list.positions(index).length;
+    }
+
+    @Override
+    int[] positions() {
+        return list.positions(index);
+    }
+
+    @Override
+    int cost() {
+        return list.size();
+    }
+}
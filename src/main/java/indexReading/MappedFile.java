@@ -0,0 +1,79 @@
+package indexReading;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ Read-only memory mapping of a whole file, made once and kept for the lifetime of the reader.
+ Files larger than a single mapping can address are split into 1 GB chunks.
+ All reads use absolute positions or duplicated buffers, so one instance can be shared by several threads.
+ */
+class MappedFile {
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final MappedByteBuffer[] chunks;
+    private final long length;
+
+    MappedFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            this.length = channel.size();
+            int chunkCount = (int) ((length + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+            this.chunks = new MappedByteBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                long start = (long) i << CHUNK_SHIFT;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, length - start));
+            }
+        }
+    }
+
+    long length() {
+        return length;
+    }
+
+    byte get(long position) {
+        return chunks[(int) (position >>> CHUNK_SHIFT)].get((int) (position & CHUNK_MASK));
+    }
+
+    /**
+     Reads a big-endian int without creating a view, for lookups in fixed-width records.
+     */
+    int getInt(long position) {
+        int chunk = (int) (position >>> CHUNK_SHIFT);
+        int start = (int) (position & CHUNK_MASK);
+        if (start + Integer.BYTES <= chunks[chunk].limit()) {
+            return chunks[chunk].getInt(start);
+        }
+        int value = 0;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            value = (value << 8) | (get(position + i) & 0xFF);
+        }
+        return value;
+    }
+
+    long getLong(long position) {
+        return ((long) getInt(position) << 32) | (getInt(position + Integer.BYTES) & 0xFFFFFFFFL);
+    }
+
+    /**
+     Returns a view of the given byte range. Ranges inside one chunk are not copied; the rare range that
+     crosses a chunk boundary is copied to the heap.
+     */
+    ByteBuffer slice(long position, int size) {
+        int chunk = (int) (position >>> CHUNK_SHIFT);
+        int start = (int) (position & CHUNK_MASK);
+        if (start + (long) size <= chunks[chunk].limit()) {
+            return chunks[chunk].duplicate().position(start).limit(start + size).slice();
+        }
+        byte[] copy = new byte[size];
+        for (int i = 0; i < size; i++) {
+            copy[i] = get(position + i);
+        }
+        return ByteBuffer.wrap(copy);
+    }
+}
@@ -0,0 +1,46 @@
+package indexReading;
+
+import indexEncoding.PostingsFormat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ Memory-mapped term index in either the text or the binary postings format.
+ */
+class MappedTermIndex {
+    private final MappedFile file;
+    private final int version;  // 0 for a text term index
+
+    MappedTermIndex(Path termIndexPath) throws IOException {
+        this.file = new MappedFile(termIndexPath);
+        this.version = file.length() >= PostingsFormat.HEADER_LENGTH
+                ? PostingsFormat.readVersion(file.slice(0, PostingsFormat.HEADER_LENGTH)) : 0;
+    }
+
+    /**
+     Opens the inverted list stored at the given offset, or returns null if the offset is past the end of the file.
+     Binary lists are decoded lazily from the mapping; text lines are parsed up front.
+     */
+    PostingsIterator iterator(long offset) {
+        if (offset >= file.length()) {
+            return null;
+        }
+        if (version != 0) {
+            int recordLength = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = file.get(offset++);
+                recordLength |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return new BinaryPostingsIterator(file.slice(offset, recordLength), version);
+        }
+        long end = offset;
+        while (end < file.length() && file.get(end) != '\n') {
+            end++;
+        }
+        return new ListPostingsIterator(PostingList.parseText(file.slice(offset, (int) (end - offset))));
+    }
+}
@@ -0,0 +1,140 @@
+package indexReading;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntUnaryOperator;
+
+/**
+ Document-at-a-time top-k retrieval with MaxScore pruning.
+
+ Query terms are ordered by the upper bound of their score. Once k documents have been found, the terms with the
+ lowest bounds whose bounds together cannot beat the k-th score are non-essential: candidates are only taken from
+ the essential terms, and the non-essential lists are advanced to a candidate only while it can still enter the
+ top k. Long lists of common terms therefore mostly skip through their skip tables instead of being scored in full.
+
+ The score of a document adds up its term contributions in query order, whatever order pruning visited them in,
+ so a document gets exactly the same score in every search, e.g. in each shard of a document-partitioned index.
+ */
+class MaxScoreSearcher {
+
+    /**
+     The postings of one query term with its weight and score bound.
+     */
+    static final class TermScorer {
+        final PostingsIterator postings;
+        final double weight;
+        final double maxScore;
+
+        TermScorer(PostingsIterator postings, double weight, double maxScore) {
+            this.postings = postings;
+            this.weight = weight;
+            this.maxScore = maxScore;
+        }
+    }
+
+    /**
+     A scored DOCID.
+     */
+    static final class ScoredDoc {
+        final int docId;
+        final double score;
+
+        ScoredDoc(int docId, double score) {
+            this.docId = docId;
+            this.score = score;
+        }
+    }
+
+    // Worst result first: lower score, or the higher DOCID on equal scores
+    private static final Comparator<ScoredDoc> WORST_FIRST =
+            Comparator.comparingDouble((ScoredDoc doc) -> doc.score).thenComparingInt(doc -> -doc.docId);
+
+    private final Bm25 bm25;
+    private final IntUnaryOperator docLengths;
+
+    MaxScoreSearcher(Bm25 bm25, IntUnaryOperator docLengths) {
+        this.bm25 = bm25;
+        this.docLengths = docLengths;
+    }
+
+    /**
+     Returns the k highest scoring documents, best first, with ties broken by DOCID.
+     */
+    List<ScoredDoc> search(List<TermScorer> terms, int k) {
+        TermScorer[] scorers = terms.toArray(new TermScorer[0]);
+        Arrays.sort(scorers, Comparator.comparingDouble(scorer -> scorer.maxScore));
+        int termCount = scorers.length;
+        int[] queryOrder = new int[termCount];
+        for (int i = 0; i < termCount; i++) {
+            queryOrder[i] = terms.indexOf(scorers[i]);
+        }
+        double[] contributions = new double[termCount];
+
+        // boundSums[i]: the best score terms 0..i can add together
+        double[] boundSums = new double[termCount];
+        for (int i = 0; i < termCount; i++) {
+            boundSums[i] = scorers[i].maxScore + (i > 0 ? boundSums[i - 1] : 0);
+            scorers[i].postings.nextDoc();
+        }
+
+        PriorityQueue<ScoredDoc> top = new PriorityQueue<>(WORST_FIRST);
+        double threshold = Double.NEGATIVE_INFINITY;
+        int firstEssential = 0;
+
+        while (k > 0 && firstEssential < termCount) {
+            int candidate = PostingsIterator.NO_MORE_DOCS;
+            for (int i = firstEssential; i < termCount; i++) {
+                candidate = Math.min(candidate, scorers[i].postings.docId());
+            }
+            if (candidate == PostingsIterator.NO_MORE_DOCS) {
+                break;
+            }
+
+            int docLength = docLengths.applyAsInt(candidate);
+            double partialScore = 0;
+            Arrays.fill(contributions, 0);
+            for (int i = firstEssential; i < termCount; i++) {
+                PostingsIterator postings = scorers[i].postings;
+                if (postings.docId() == candidate) {
+                    contributions[queryOrder[i]] = bm25.score(scorers[i].weight, postings.frequency(), docLength);
+                    partialScore += contributions[queryOrder[i]];
+                    postings.nextDoc();
+                }
+            }
+            for (int i = firstEssential - 1; i >= 0; i--) {
+                if (partialScore + boundSums[i] <= threshold) {
+                    break;
+                }
+                PostingsIterator postings = scorers[i].postings;
+                if (postings.advance(candidate) == candidate) {
+                    contributions[queryOrder[i]] = bm25.score(scorers[i].weight, postings.frequency(), docLength);
+                    partialScore += contributions[queryOrder[i]];
+                }
+            }
+            double score = 0;
+            for (double contribution : contributions) {
+                score += contribution;
+            }
+
+            if (top.size() < k || score > threshold) {
+                if (top.size() == k) {
+                    top.poll();
+                }
+                top.add(new ScoredDoc(candidate, score));
+                if (top.size() == k) {
+                    threshold = top.peek().score;
+                    while (firstEssential < termCount && boundSums[firstEssential] <= threshold) {
+                        firstEssential++;
+                    }
+                }
+            }
+        }
+
+        List<ScoredDoc> results = new ArrayList<>(top);
+        results.sort(WORST_FIRST.reversed());
+        return results;
+    }
+}
@@ -0,0 +1,79 @@
+package indexReading;
+
+import java.util.List;
+
+/**
+ Documents in which the terms occur in the given order with at most maxGap other terms between neighbours;
+ a maxGap of 0 is an exact phrase. Candidates come from the conjunction of the terms, and positions are only
+ decoded for those candidates.
+ */
+class PhraseIterator extends DocIdIterator {
+    private final PostingsIterator[] terms;
+    private final ConjunctionIterator conjunction;
+    private final int maxGap;
+    private int docId = -1;
+
+    PhraseIterator(List<PostingsIterator> terms, int maxGap) {
+        this.terms = terms.toArray(new PostingsIterator[0]);
+        this.conjunction = new ConjunctionIterator(terms);
+        this.maxGap = maxGap;
+    }
+
+    @Override
+    int docId() {
+        return docId;
+    }
+
+    @Override
+    int nextDoc() {
+        return docId = nextMatch(conjunction.nextDoc());
+    }
+
+    @Override
+    int advance(int target) {
+        if (docId >= target) {
+            return docId;
+        }
+        return docId = nextMatch(conjunction.advance(target));
+    }
+
+    private int nextMatch(int candidate) {
+        while (candidate != NO_MORE_DOCS && !positionsMatch()) {
+            candidate = conjunction.nextDoc();
+        }
+        return candidate;
+    }
+
+    /**
+     Aligns the position lists of the current document. reachable holds the positions at which the phrase so far
+     can end; a position of the next term extends the phrase if a reachable position lies at most maxGap + 1 before it.
+     Both lists are sorted, so each step is a linear merge.
+     */
+    private boolean positionsMatch() {
+        int[] reachable = terms[0].positions();
+        int reachableCount = reachable.length;
+        for (int t = 1; t < terms.length && reachableCount > 0; t++) {
+            int[] positions = terms[t].positions();
+            int[] next = new int[positions.length];
+            int nextCount = 0;
+            int r = 0;
+            for (int position : positions) {
+                // Skip reachable ends that are too far behind this position to be followed by it
+                while (r < reachableCount && reachable[r] < position - maxGap - 1) {
+                    r++;
+                }
+                if (r < reachableCount && reachable[r] < position) {
+                    next[nextCount++] = position;
+                }
+            }
+            reachable = next;
+            reachableCount = nextCount;
+        }
+        return reachableCount > 0;
+    }
+
+    @Override
+    int cost() {
+        return conjunction.cost();
+    }
+}
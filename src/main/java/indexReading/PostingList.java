@@ -0,0 +1,136 @@
+package indexReading;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ Decoded inverted list of one term: sorted DOCIDs and, for each document, its sorted absolute positions.
+ */
+class PostingList {
+    private final int[] docIds;
+    private final int[][] positions;
+    private final long estimatedBytes;
+
+    private PostingList(int[] docIds, int[][] positions) {
+        this.docIds = docIds;
+        this.positions = positions;
+        long positionCount = 0;
+        for (int[] docPositions : positions) {
+            positionCount += docPositions.length;
+        }
+        this.estimatedBytes = estimateBytes(docIds.length, positionCount);
+    }
+
+    int size() {
+        return docIds.length;
+    }
+
+    int docId(int index) {
+        return docIds[index];
+    }
+
+    int[] positions(int index) {
+        return positions[index];
+    }
+
+    /**
+     Approximate heap size of the decoded list, used to bound caches.
+     */
+    long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     Approximate heap size of a decoded list with the given number of documents and positions:
+     a DOCID and an array header and reference per document, and four bytes per position.
+     */
+    static long estimateBytes(int docCount, long positionCount) {
+        return 64 + docCount * 28L + positionCount * 4;
+    }
+
+    /**
+     Decodes every remaining document and position of an iterator.
+     */
+    static PostingList decode(PostingsIterator postings) {
+        int[] docIds = new int[Math.max(postings.cost(), 1)];
+        int[][] positions = new int[docIds.length][];
+        int count = 0;
+        for (int docId = postings.nextDoc(); docId != PostingsIterator.NO_MORE_DOCS; docId = postings.nextDoc()) {
+            if (count == docIds.length) {
+                docIds = Arrays.copyOf(docIds, count * 2);
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            docIds[count] = docId;
+            positions[count] = postings.positions();
+            count++;
+        }
+        return new PostingList(Arrays.copyOf(docIds, count), Arrays.copyOf(positions, count));
+    }
+
+    /**
+     Parses a text term_index line (without its newline) straight from its bytes: the TERMID followed by
+     tab-separated DOCID:position entries. The first entry is absolute; afterwards a DOCID gap of 0 continues
+     the same document with a position gap, while a positive gap starts a new document with an absolute position.
+     */
+    static PostingList parseText(ByteBuffer line) {
+        int entryCount = 0;
+        for (int i = line.position(); i < line.limit(); i++) {
+            if (line.get(i) == ':') {
+                entryCount++;
+            }
+        }
+        int[] docIds = new int[entryCount];
+        int[][] positions = new int[entryCount][];
+        int[] docPositions = new int[entryCount];
+        int docCount = 0;
+        int positionCount = 0;
+        int docId = 0;
+        int pos = 0;
+
+        skipPast(line, '\t');  // TERMID
+        for (int i = 0; i < entryCount; i++) {
+            int docGap = parseInt(line);
+            line.get();  // ':'
+            int value = parseInt(line);
+            if (line.hasRemaining()) {
+                line.get();  // '\t'
+            }
+            if (i == 0 || docGap != 0) {
+                if (docCount > 0) {
+                    positions[docCount - 1] = Arrays.copyOf(docPositions, positionCount);
+                }
+                docId += docGap;
+                docIds[docCount++] = docId;
+                positionCount = 0;
+                pos = value;
+            }
+            else {
+                pos += value;
+            }
+            docPositions[positionCount++] = pos;
+        }
+        if (docCount > 0) {
+            positions[docCount - 1] = Arrays.copyOf(docPositions, positionCount);
+        }
+        return new PostingList(Arrays.copyOf(docIds, docCount), Arrays.copyOf(positions, docCount));
+    }
+
+    private static void skipPast(ByteBuffer buffer, char separator) {
+        while (buffer.hasRemaining() && buffer.get() != separator) {
+            // skip
+        }
+    }
+
+    private static int parseInt(ByteBuffer buffer) {
+        int value = 0;
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get(buffer.position());
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+            buffer.get();
+        }
+        return value;
+    }
+}
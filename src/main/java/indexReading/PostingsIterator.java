@@ -0,0 +1,18 @@
+package indexReading;
+
+/**
+ Forward-only cursor over the postings of one term, in increasing DOCID order.
+ Positions are only decoded for documents whose positions() are requested.
+ */
+abstract class PostingsIterator extends DocIdIterator {
+
+    /**
+     Number of positions of the term in the current document.
+     */
+    abstract int frequency();
+
+    /**
+     Sorted positions of the term in the current document.
+     */
+    abstract int[] positions();
+}
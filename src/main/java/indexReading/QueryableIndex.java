@@ -0,0 +1,23 @@
+package indexReading;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ The lookups behind the query commands, answered by one IndexReader or by a coordinator over several shards.
+ Each writes its results to out and its messages to err.
+ */
+public interface QueryableIndex {
+
+    void printDocInfo(String docName, PrintStream out, PrintStream err) throws IOException;
+
+    void printTermInfo(String term, PrintStream out, PrintStream err) throws IOException;
+
+    void printTermDocInfo(String term, String docName, PrintStream out, PrintStream err) throws IOException;
+
+    void printSearchResults(String query, int k, PrintStream out, PrintStream err) throws IOException;
+
+    void printQueryResults(String query, PrintStream out, PrintStream err) throws IOException;
+
+    void printCacheStats(PrintStream out);
+}
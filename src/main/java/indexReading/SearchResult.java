@@ -0,0 +1,28 @@
+package indexReading;
+
+/**
+ One ranked document of a query result.
+ */
+public class SearchResult {
+    private final int docId;
+    private final String docName;
+    private final double score;
+
+    public SearchResult(int docId, String docName, double score) {
+        this.docId = docId;
+        this.docName = docName;
+        this.score = score;
+    }
+
+    public int getDocId() {
+        return docId;
+    }
+
+    public String getDocName() {
+        return docName;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,31 @@
+package indexReading;
+
+import indexEncoding.Segment;
+
+import java.util.Map;
+
+/**
+ Term statistics, mapped postings and document statistics of one index segment.
+ The postings may be split into several term index shards, which are resolved through the shard in each TermInfo.
+ */
+class SegmentReader {
+    final Segment segment;
+    final Map<Integer, TermInfo> termInfoMap;
+    final MappedTermIndex[] termIndexShards;
+    final DocStatsFile docStats;
+
+    SegmentReader(Segment segment, Map<Integer, TermInfo> termInfoMap, MappedTermIndex[] termIndexShards, DocStatsFile docStats) {
+        this.segment = segment;
+        this.termInfoMap = termInfoMap;
+        this.termIndexShards = termIndexShards;
+        this.docStats = docStats;
+    }
+
+    /**
+     Returns an iterator over the term's postings in this segment, or null if the term does not occur in it.
+     */
+    PostingsIterator iterator(int termId) {
+        TermInfo termInfo = termInfoMap.get(termId);
+        return termInfo == null ? null : termIndexShards[termInfo.shard].iterator(termInfo.offset);
+    }
+}
@@ -0,0 +1,177 @@
+package indexReading;
+
+import indexEncoding.VByte;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ Sorted, front-coded term -> TERMID dictionary.
+
+ Terms are sorted by their UTF-8 bytes and stored in blocks of BLOCK_SIZE. The first term of a block is stored
+ in full; every other term only stores the length of the prefix it shares with the previous term and the
+ remaining suffix. A lookup binary searches the block heads and then scans a single block, and terms sharing
+ a prefix are adjacent, so prefix lookups are a range scan.
+ */
+class TermDictionary {
+    private static final int BLOCK_SIZE = 16;
+
+    private final byte[] data;
+    private final int[] blockOffsets;
+    private final int[] termIds;
+
+    private TermDictionary(byte[] data, int[] blockOffsets, int[] termIds) {
+        this.data = data;
+        this.blockOffsets = blockOffsets;
+        this.termIds = termIds;
+    }
+
+    int size() {
+        return termIds.length;
+    }
+
+    /**
+     Returns the TERMID of the term, or -1 if it is not in the dictionary.
+     */
+    int getTermId(String term) {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        int block = findBlock(key);
+        if (block < 0) {
+            return -1;
+        }
+        BlockScanner scanner = new BlockScanner(block);
+        while (scanner.next()) {
+            int cmp = Arrays.compareUnsigned(scanner.term, 0, scanner.length, key, 0, key.length);
+            if (cmp == 0) {
+                return termIds[scanner.index];
+            }
+            if (cmp > 0) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     Returns the TERMIDs of all terms starting with the given prefix, in term order.
+     */
+    List<Integer> getTermIdsWithPrefix(String prefix) {
+        byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        List<Integer> result = new ArrayList<>();
+        BlockScanner scanner = new BlockScanner(Math.max(findBlock(key), 0));
+        while (scanner.next()) {
+            int shared = Math.min(scanner.length, key.length);
+            int cmp = Arrays.compareUnsigned(scanner.term, 0, shared, key, 0, shared);
+            if (cmp == 0 && scanner.length >= key.length) {
+                result.add(termIds[scanner.index]);
+            }
+            else if (cmp > 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     Returns the last block whose first term is not greater than the key, or -1 if the key sorts before every term.
+     */
+    private int findBlock(byte[] key) {
+        int low = 0;
+        int high = blockOffsets.length - 1;
+        int found = -1;
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            buffer.position(blockOffsets[mid]);
+            int length = VByte.readVInt(buffer);
+            int start = buffer.position();
+            if (Arrays.compareUnsigned(data, start, start + length, key, 0, key.length) <= 0) {
+                found = mid;
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     Decodes terms one at a time starting from a block, continuing into the following blocks.
+     */
+    private final class BlockScanner {
+        private final ByteBuffer buffer = ByteBuffer.wrap(data);
+        byte[] term = new byte[32];
+        int length;
+        int index;
+
+        BlockScanner(int block) {
+            buffer.position(block < blockOffsets.length ? blockOffsets[block] : data.length);
+            index = block * BLOCK_SIZE - 1;
+        }
+
+        boolean next() {
+            if (index + 1 >= termIds.length) {
+                return false;
+            }
+            index++;
+            int shared = index % BLOCK_SIZE == 0 ? 0 : VByte.readVInt(buffer);
+            int suffix = VByte.readVInt(buffer);
+            if (term.length < shared + suffix) {
+                term = Arrays.copyOf(term, Math.max(shared + suffix, term.length * 2));
+            }
+            buffer.get(term, shared, suffix);
+            length = shared + suffix;
+            return true;
+        }
+    }
+
+    /**
+     Builds a dictionary from parallel lists of terms and their TERMIDs, in any order.
+     */
+    static TermDictionary build(List<String> terms, List<Integer> ids) {
+        int count = terms.size();
+        byte[][] keys = new byte[count][];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = terms.get(i).getBytes(StandardCharsets.UTF_8);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys[a], keys[b]));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] blockOffsets = new int[(count + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        int[] termIds = new int[count];
+        byte[] previous = new byte[0];
+        try {
+            for (int i = 0; i < count; i++) {
+                byte[] key = keys[order[i]];
+                termIds[i] = ids.get(order[i]);
+                if (i % BLOCK_SIZE == 0) {
+                    blockOffsets[i / BLOCK_SIZE] = out.size();
+                    VByte.writeVInt(out, key.length);
+                    out.write(key);
+                }
+                else {
+                    int shared = Arrays.mismatch(previous, key);
+                    if (shared < 0) {
+                        shared = key.length;  // duplicate term
+                    }
+                    VByte.writeVInt(out, shared);
+                    VByte.writeVInt(out, key.length - shared);
+                    out.write(key, shared, key.length - shared);
+                }
+                previous = key;
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);  // ByteArrayOutputStream does not throw
+        }
+        return new TermDictionary(out.toByteArray(), blockOffsets, termIds);
+    }
+}
@@ -4,10 +4,28 @@ public class TermInfo {
     long offset;
     int totalOccurrences;
     int docCount;
+    int shard;  // term index shard holding the postings; offset is relative to it
 
-    TermInfo(long offset, int totalOccurrences, int docCount) {
+    public TermInfo(long offset, int totalOccurrences, int docCount) {
+        this(offset, totalOccurrences, docCount, 0);
+    }
+
+    TermInfo(long offset, int totalOccurrences, int docCount, int shard) {
         this.offset = offset;
         this.totalOccurrences = totalOccurrences;
         this.docCount = docCount;
+        this.shard = shard;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getTotalOccurrences() {
+        return totalOccurrences;
+    }
+
+    public int getDocCount() {
+        return docCount;
     }
 }
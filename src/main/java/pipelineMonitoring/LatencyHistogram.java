@@ -0,0 +1,92 @@
+package pipelineMonitoring;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ Lock-free latency histogram with logarithmic buckets, four per power of two from 1 microsecond to
+ about 17 minutes, so percentiles are accurate to within 19%.
+ */
+public final class LatencyHistogram {
+    private static final int BUCKETS_PER_DOUBLING = 4;
+    private static final int BUCKET_COUNT = 30 * BUCKETS_PER_DOUBLING;
+    private static final long[] UPPER_BOUNDS_NANOS = new long[BUCKET_COUNT];
+
+    static {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            UPPER_BOUNDS_NANOS[i] = Math.round(1000 * Math.pow(2, (double) i / BUCKETS_PER_DOUBLING));
+        }
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT + 1);  // the last bucket is +Inf
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        int low = 0;
+        int high = BUCKET_COUNT;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (UPPER_BOUNDS_NANOS[mid] < nanos) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        counts.incrementAndGet(low);
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long count() {
+        long count = 0;
+        for (int i = 0; i <= BUCKET_COUNT; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long maxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     Upper bound of the bucket holding the given quantile (0 to 1), capped at the largest recorded value.
+     */
+    public long percentileNanos(double quantile) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(rank, 1)) {
+                return Math.min(UPPER_BOUNDS_NANOS[i], maxNanos());
+            }
+        }
+        return maxNanos();
+    }
+
+    /**
+     Number of bucket upper bounds, for exporting cumulative buckets.
+     */
+    static int bucketCount() {
+        return BUCKET_COUNT;
+    }
+
+    static long upperBoundNanos(int bucket) {
+        return UPPER_BOUNDS_NANOS[bucket];
+    }
+
+    long bucket(int bucket) {
+        return counts.get(bucket);
+    }
+}
@@ -0,0 +1,29 @@
+package pipelineMonitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ JFR event for one IndexReader lookup or query.
+ */
+@Name("indexer.Lookup")
+@Label("Index Lookup")
+@Category("Indexer")
+@Description("One IndexReader lookup or query")
+@StackTrace(false)
+class LookupEvent extends Event {
+    @Label("Kind")
+    String kind;
+
+    @Label("Argument")
+    String argument;
+
+    @Label("Latency")
+    @Timespan
+    long latency;
+}
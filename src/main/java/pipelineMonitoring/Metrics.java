@@ -0,0 +1,344 @@
+package pipelineMonitoring;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ Process-wide counters for indexing and querying. Indexing stages record their time, call count, bytes and the
+ heap in use when they finish; IndexReader records the latency of every lookup in a histogram per kind.
+ All counters are lock-free, so worker threads record into them directly.
+ */
+public final class Metrics {
+    private static final Stage[] STAGES = Stage.values();
+    private static final LongAdder[] stageNanos = adders();
+    private static final LongAdder[] stageCalls = adders();
+    private static final LongAdder[] stageBytes = adders();
+    private static final AtomicLong[] stageHeap = atomics();
+    private static final AtomicLong[] stageMaxHeap = atomics();
+    // Time a pipelined stage spent waiting for input from the stage before it, or for room in the stage after it
+    private static final LongAdder[] stageStarvedNanos = adders();
+    private static final LongAdder[] stageBlockedNanos = adders();
+
+    private static final LongAdder documents = new LongAdder();
+    private static final LongAdder tokens = new LongAdder();
+    private static final LongAdder bytesRead = new LongAdder();
+    private static final AtomicLong firstDocumentNanos = new AtomicLong();
+    private static final AtomicLong lastDocumentNanos = new AtomicLong();
+
+    private static final Map<String, LatencyHistogram> lookups = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> requests = new ConcurrentHashMap<>();
+    private static final Map<Integer, LongAdder> responses = new ConcurrentHashMap<>();
+    private static final Map<String, CacheCounters> caches = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     Starts timing one execution of a stage; the returned timer records it when stopped.
+     */
+    public static StageTimer start(Stage stage) {
+        return new StageTimer(stage);
+    }
+
+    static void recordStage(Stage stage, long nanos, long bytes) {
+        int i = stage.ordinal();
+        stageNanos[i].add(nanos);
+        stageCalls[i].increment();
+        stageBytes[i].add(bytes);
+        Runtime runtime = Runtime.getRuntime();
+        long heap = runtime.totalMemory() - runtime.freeMemory();
+        stageHeap[i].set(heap);
+        stageMaxHeap[i].accumulateAndGet(heap, Math::max);
+    }
+
+    /**
+     Records time a stage spent waiting for its input queue to fill.
+     */
+    public static void recordStarved(Stage stage, long nanos) {
+        stageStarvedNanos[stage.ordinal()].add(nanos);
+    }
+
+    /**
+     Records time a stage spent waiting for room in its output queue, i.e. held back by a slower next stage.
+     */
+    public static void recordBlocked(Stage stage, long nanos) {
+        stageBlockedNanos[stage.ordinal()].add(nanos);
+    }
+
+    /**
+     Counts one indexed document and its tokens after stop word removal.
+     */
+    public static void addDocument(long documentTokens) {
+        long now = System.nanoTime();
+        firstDocumentNanos.compareAndSet(0, now);
+        lastDocumentNanos.set(now);
+        documents.increment();
+        tokens.add(documentTokens);
+    }
+
+    public static void addBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    /**
+     Records the latency of an IndexReader lookup that started at startNanos, e.g. kind "term" for --term.
+     */
+    public static void recordLookup(String kind, String argument, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        lookups.computeIfAbsent(kind, k -> new LatencyHistogram()).record(nanos);
+        LookupEvent event = new LookupEvent();
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.argument = argument;
+            event.latency = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     Records the latency and status of an HTTP request to an endpoint of the query server, e.g. "/term".
+     */
+    public static void recordRequest(String endpoint, int status, long startNanos) {
+        requests.computeIfAbsent(endpoint, k -> new LatencyHistogram()).record(System.nanoTime() - startNanos);
+        responses.computeIfAbsent(status, k -> new LongAdder()).increment();
+    }
+
+    /**
+     Hit and miss counters of a cache, read whenever metrics are reported.
+     */
+    private static final class CacheCounters {
+        final LongSupplier hits;
+        final LongSupplier misses;
+
+        CacheCounters(LongSupplier hits, LongSupplier misses) {
+            this.hits = hits;
+            this.misses = misses;
+        }
+    }
+
+    /**
+     Reports the hits and misses of a cache under its name; registering a name again replaces the earlier cache.
+     */
+    public static void registerCache(String name, LongSupplier hits, LongSupplier misses) {
+        caches.put(name, new CacheCounters(hits, misses));
+    }
+
+    /**
+     Indexed documents per second, measured from the first to the last document added.
+     */
+    public static double documentsPerSecond() {
+        return perSecond(documents.sum());
+    }
+
+    public static double tokensPerSecond() {
+        return perSecond(tokens.sum());
+    }
+
+    private static double perSecond(long count) {
+        long elapsed = lastDocumentNanos.get() - firstDocumentNanos.get();
+        return elapsed <= 0 ? 0 : count * 1e9 / elapsed;
+    }
+
+    /**
+     Returns all metrics as a single JSON object.
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"documents\": ").append(documents.sum()).append(",\n");
+        json.append("  \"tokens\": ").append(tokens.sum()).append(",\n");
+        json.append("  \"bytes_read\": ").append(bytesRead.sum()).append(",\n");
+        json.append("  \"documents_per_second\": ").append(format(documentsPerSecond())).append(",\n");
+        json.append("  \"tokens_per_second\": ").append(format(tokensPerSecond())).append(",\n");
+
+        json.append("  \"stages\": {");
+        boolean first = true;
+        for (Stage stage : STAGES) {
+            int i = stage.ordinal();
+            if (stageCalls[i].sum() == 0) {
+                continue;
+            }
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append("    \"").append(stage.label()).append("\": {")
+                    .append("\"calls\": ").append(stageCalls[i].sum())
+                    .append(", \"seconds\": ").append(format(stageNanos[i].sum() / 1e9))
+                    .append(", \"bytes\": ").append(stageBytes[i].sum())
+                    .append(", \"heap_bytes\": ").append(stageHeap[i].get())
+                    .append(", \"max_heap_bytes\": ").append(stageMaxHeap[i].get())
+                    .append(", \"starved_seconds\": ").append(format(stageStarvedNanos[i].sum() / 1e9))
+                    .append(", \"blocked_seconds\": ").append(format(stageBlockedNanos[i].sum() / 1e9))
+                    .append('}');
+        }
+        json.append(first ? "},\n" : "\n  },\n");
+
+        appendHistograms(json, "lookups", lookups);
+        json.append(",\n");
+        appendHistograms(json, "requests", requests);
+        json.append(",\n  \"responses\": {");
+        first = true;
+        for (Map.Entry<Integer, LongAdder> entry : new TreeMap<>(responses).entrySet()) {
+            json.append(first ? "" : ", ").append('"').append(entry.getKey()).append("\": ").append(entry.getValue().sum());
+            first = false;
+        }
+        json.append("},\n  \"caches\": {");
+        first = true;
+        for (Map.Entry<String, CacheCounters> entry : new TreeMap<>(caches).entrySet()) {
+            long hits = entry.getValue().hits.getAsLong();
+            long misses = entry.getValue().misses.getAsLong();
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append("    \"").append(entry.getKey()).append("\": {")
+                    .append("\"hits\": ").append(hits)
+                    .append(", \"misses\": ").append(misses)
+                    .append(", \"hit_rate\": ").append(format(hits + misses == 0 ? 0 : (double) hits / (hits + misses)))
+                    .append('}');
+        }
+        json.append(first ? "}\n" : "\n  }\n");
+        return json.append("}\n").toString();
+    }
+
+    private static void appendHistograms(StringBuilder json, String name, Map<String, LatencyHistogram> histograms) {
+        json.append("  \"").append(name).append("\": {");
+        boolean first = true;
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append("    \"").append(entry.getKey()).append("\": {")
+                    .append("\"count\": ").append(histogram.count())
+                    .append(", \"mean_us\": ").append(format(histogram.count() == 0 ? 0 : histogram.totalNanos() / 1e3 / histogram.count()))
+                    .append(", \"p50_us\": ").append(format(histogram.percentileNanos(0.5) / 1e3))
+                    .append(", \"p90_us\": ").append(format(histogram.percentileNanos(0.9) / 1e3))
+                    .append(", \"p99_us\": ").append(format(histogram.percentileNanos(0.99) / 1e3))
+                    .append(", \"max_us\": ").append(format(histogram.maxNanos() / 1e3))
+                    .append('}');
+        }
+        json.append(first ? "}" : "\n  }");
+    }
+
+    /**
+     Returns all metrics in the Prometheus text exposition format.
+     */
+    public static String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        counter(text, "indexer_documents_total", "Documents indexed", documents.sum());
+        counter(text, "indexer_tokens_total", "Tokens indexed after stop word removal", tokens.sum());
+        counter(text, "indexer_bytes_read_total", "Bytes of document files read", bytesRead.sum());
+        gauge(text, "indexer_documents_per_second", "Indexing throughput in documents", documentsPerSecond());
+        gauge(text, "indexer_tokens_per_second", "Indexing throughput in tokens", tokensPerSecond());
+
+        text.append("# HELP indexer_stage_seconds_total Time spent in each indexing stage\n");
+        text.append("# TYPE indexer_stage_seconds_total counter\n");
+        for (Stage stage : STAGES) {
+            text.append("indexer_stage_seconds_total{stage=\"").append(stage.label()).append("\"} ")
+                    .append(format(stageNanos[stage.ordinal()].sum() / 1e9)).append('\n');
+        }
+        text.append("# HELP indexer_stage_calls_total Executions of each indexing stage\n");
+        text.append("# TYPE indexer_stage_calls_total counter\n");
+        for (Stage stage : STAGES) {
+            text.append("indexer_stage_calls_total{stage=\"").append(stage.label()).append("\"} ")
+                    .append(stageCalls[stage.ordinal()].sum()).append('\n');
+        }
+        text.append("# HELP indexer_stage_bytes_total Bytes processed by each indexing stage\n");
+        text.append("# TYPE indexer_stage_bytes_total counter\n");
+        for (Stage stage : STAGES) {
+            text.append("indexer_stage_bytes_total{stage=\"").append(stage.label()).append("\"} ")
+                    .append(stageBytes[stage.ordinal()].sum()).append('\n');
+        }
+        text.append("# HELP indexer_stage_wait_seconds_total Time pipelined stages spent starved of input or blocked on output\n");
+        text.append("# TYPE indexer_stage_wait_seconds_total counter\n");
+        for (Stage stage : STAGES) {
+            text.append("indexer_stage_wait_seconds_total{stage=\"").append(stage.label()).append("\",reason=\"starved\"} ")
+                    .append(format(stageStarvedNanos[stage.ordinal()].sum() / 1e9)).append('\n');
+            text.append("indexer_stage_wait_seconds_total{stage=\"").append(stage.label()).append("\",reason=\"blocked\"} ")
+                    .append(format(stageBlockedNanos[stage.ordinal()].sum() / 1e9)).append('\n');
+        }
+        text.append("# HELP indexer_stage_heap_bytes Heap in use when each indexing stage last finished\n");
+        text.append("# TYPE indexer_stage_heap_bytes gauge\n");
+        for (Stage stage : STAGES) {
+            text.append("indexer_stage_heap_bytes{stage=\"").append(stage.label()).append("\"} ")
+                    .append(stageHeap[stage.ordinal()].get()).append('\n');
+        }
+
+        histograms(text, "indexer_lookup_seconds", "Latency of IndexReader lookups", "kind", lookups);
+        histograms(text, "indexer_http_request_seconds", "Latency of query server requests", "endpoint", requests);
+        text.append("# HELP indexer_http_responses_total Query server responses by status code\n");
+        text.append("# TYPE indexer_http_responses_total counter\n");
+        for (Map.Entry<Integer, LongAdder> entry : new TreeMap<>(responses).entrySet()) {
+            text.append("indexer_http_responses_total{status=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().sum()).append('\n');
+        }
+        text.append("# HELP indexer_cache_hits_total Lookups answered by each cache\n");
+        text.append("# TYPE indexer_cache_hits_total counter\n");
+        for (Map.Entry<String, CacheCounters> entry : new TreeMap<>(caches).entrySet()) {
+            text.append("indexer_cache_hits_total{cache=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().hits.getAsLong()).append('\n');
+        }
+        text.append("# HELP indexer_cache_misses_total Lookups each cache could not answer\n");
+        text.append("# TYPE indexer_cache_misses_total counter\n");
+        for (Map.Entry<String, CacheCounters> entry : new TreeMap<>(caches).entrySet()) {
+            text.append("indexer_cache_misses_total{cache=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().misses.getAsLong()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static void histograms(StringBuilder text, String name, String help, String label,
+                                   Map<String, LatencyHistogram> histograms) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" histogram\n");
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            String labels = label + "=\"" + entry.getKey() + "\"";
+            LatencyHistogram histogram = entry.getValue();
+            long cumulative = 0;
+            for (int b = 0; b < LatencyHistogram.bucketCount(); b++) {
+                cumulative += histogram.bucket(b);
+                // Every bound is written, empty or not, so each scrape has the same series
+                text.append(name).append("_bucket{").append(labels).append(",le=\"")
+                        .append(format(LatencyHistogram.upperBoundNanos(b) / 1e9)).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            long total = histogram.count();
+            text.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(total).append('\n');
+            text.append(name).append("_sum{").append(labels).append("} ").append(format(histogram.totalNanos() / 1e9)).append('\n');
+            text.append(name).append("_count{").append(labels).append("} ").append(total).append('\n');
+        }
+    }
+
+    private static void counter(StringBuilder text, String name, String help, long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" counter\n");
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder text, String name, String help, double value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" gauge\n");
+        text.append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.6g", value);
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[STAGES.length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static AtomicLong[] atomics() {
+        AtomicLong[] atomics = new AtomicLong[STAGES.length];
+        for (int i = 0; i < atomics.length; i++) {
+            atomics[i] = new AtomicLong();
+        }
+        return atomics;
+    }
+}
@@ -0,0 +1,61 @@
+package pipelineMonitoring;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Periodically writes the current metrics to metrics.json and metrics.prom in a directory, e.g. for a
+ Prometheus node exporter textfile collector. Each file is replaced atomically, so readers never see a partial
+ dump. A final dump is written on close.
+ */
+public final class MetricsReporter implements AutoCloseable {
+    private final Path directory;
+    private final ScheduledExecutorService scheduler;
+
+    public MetricsReporter(String directory, long intervalSeconds) throws IOException {
+        this.directory = Paths.get(directory);
+        Files.createDirectories(this.directory);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::dump, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private void dump() {
+        try {
+            write("metrics.json", Metrics.toJson());
+            write("metrics.prom", Metrics.toPrometheus());
+        }
+        catch (IOException e) {
+            System.err.println("Error writing metrics: " + e.getMessage());
+        }
+    }
+
+    private void write(String fileName, String content) throws IOException {
+        Path target = directory.resolve(fileName);
+        Path temp = directory.resolve(fileName + ".tmp");
+        Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dump();
+    }
+}
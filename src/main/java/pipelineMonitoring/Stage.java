@@ -0,0 +1,28 @@
+package pipelineMonitoring;
+
+/**
+ Timed stages of indexing. Tokenizing covers stop word removal and stemming too, since the token pipeline
+ does all three in a single pass over each token.
+ */
+public enum Stage {
+    READ("read"),
+    DECODE("decode"),
+    EXTRACT("extract"),
+    TOKENIZE("tokenize"),
+    INDEX("index"),
+    WRITE_DOC_INDEX("write_doc_index"),
+    WRITE_DICTIONARIES("write_dictionaries"),
+    INVERT("invert"),
+    WRITE_POSTINGS("write_postings"),
+    MERGE("merge");
+
+    private final String label;
+
+    Stage(String label) {
+        this.label = label;
+    }
+
+    public String label() {
+        return label;
+    }
+}
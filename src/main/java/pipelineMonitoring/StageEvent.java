@@ -0,0 +1,26 @@
+package pipelineMonitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ JFR event for one execution of an indexing stage, e.g. reading or tokenizing one document.
+ */
+@Name("indexer.Stage")
+@Label("Indexing Stage")
+@Category("Indexer")
+@Description("One execution of an indexing stage")
+@StackTrace(false)
+class StageEvent extends Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,34 @@
+package pipelineMonitoring;
+
+/**
+ Measures one execution of a stage, started by Metrics.start(). Also emits a JFR event when a recording
+ has the indexer.Stage event enabled.
+ */
+public final class StageTimer {
+    private final Stage stage;
+    private final long startNanos;
+    private final StageEvent event = new StageEvent();
+
+    StageTimer(Stage stage) {
+        this.stage = stage;
+        this.event.begin();
+        this.startNanos = System.nanoTime();
+    }
+
+    public void stop() {
+        stop(0);
+    }
+
+    /**
+     Ends the stage, recording the number of bytes it processed.
+     */
+    public void stop(long bytes) {
+        Metrics.recordStage(stage, System.nanoTime() - startNanos, bytes);
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = stage.label();
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package primitiveCollections;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ Bounded cache from char sequences to values, looked up straight from a char buffer so a hit allocates nothing.
+
+ The table is two-way set associative: a key can live in one of two adjacent slots, and inserting into a full
+ pair evicts one of them. Entries are immutable and the table is read and written without locks, so concurrent
+ threads at worst miss an entry another thread has just stored. Safe to share between threads.
+ */
+public class CharArrayCache<V> {
+    private static final class Entry<V> {
+        final char[] key;
+        final int hash;
+        final V value;
+
+        Entry(char[] key, int hash, V value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    private final String name;
+    private final Entry<V>[] table;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     Creates a cache holding at most capacity entries, rounded up to a power of two.
+     */
+    @SuppressWarnings("unchecked")
+    public CharArrayCache(String name, int capacity) {
+        int size = Math.max(Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1, 2);
+        this.name = name;
+        this.table = (Entry<V>[]) new Entry<?>[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     Returns the value cached for the first length chars of buffer, or null on a miss.
+     */
+    public V get(char[] buffer, int length) {
+        int hash = hash(buffer, length);
+        int slot = hash & mask & ~1;
+        Entry<V> entry = table[slot];
+        if (entry == null || !matches(entry, buffer, length, hash)) {
+            entry = table[slot + 1];
+            if (entry == null || !matches(entry, buffer, length, hash)) {
+                misses.increment();
+                return null;
+            }
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     Caches a value for the first length chars of buffer, evicting one of the entries that share its slots.
+     */
+    public void put(char[] buffer, int length, V value) {
+        int hash = hash(buffer, length);
+        int slot = hash & mask & ~1;
+        Entry<V> entry = new Entry<>(Arrays.copyOf(buffer, length), hash, value);
+        if (table[slot] == null || matches(table[slot], buffer, length, hash)) {
+            table[slot] = entry;
+        }
+        else if (table[slot + 1] == null || matches(table[slot + 1], buffer, length, hash)) {
+            table[slot + 1] = entry;
+        }
+        else {
+            // Neither slot is free; the hash bit above the slot index picks the victim, so the choice is spread evenly
+            table[slot + ((hash >>> 16) & 1)] = entry;
+            evictions.increment();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public int capacity() {
+        return table.length;
+    }
+
+    public String stats() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return String.format("%s cache: %d capacity, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                name, table.length, hitCount, lookups - hitCount, lookups == 0 ? 0.0 : 100.0 * hitCount / lookups, evictions.sum());
+    }
+
+    private static boolean matches(Entry<?> entry, char[] buffer, int length, int hash) {
+        if (entry.hash != hash || entry.key.length != length) {
+            return false;
+        }
+        char[] key = entry.key;
+        for (int i = 0; i < length; i++) {
+            if (key[i] != buffer[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(char[] buffer, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + buffer[i];
+        }
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 15);
+    }
+}
@@ -0,0 +1,154 @@
+package primitiveCollections;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ Open-addressing hash map from primitive int keys to non-null values, using linear probing.
+ Avoids the boxed key and entry object that HashMap<Integer, V> allocates per mapping.
+ */
+public class IntObjectHashMap<V> {
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    public IntObjectHashMap() {
+        this(8);
+    }
+
+    public IntObjectHashMap(int expectedSize) {
+        allocate(tableSizeFor((int) (expectedSize / LOAD_FACTOR) + 1));
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = findSlot(key);
+        return (V) values[slot];
+    }
+
+    public boolean containsKey(int key) {
+        return values[findSlot(key)] != null;
+    }
+
+    /**
+     Associates the value with the key and returns the previous value, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not supported");
+        }
+        int slot = findSlot(key);
+        V previous = (V) values[slot];
+        keys[slot] = key;
+        values[slot] = value;
+        if (previous == null && ++size > resizeThreshold) {
+            resize();
+        }
+        return previous;
+    }
+
+    public V computeIfAbsent(int key, IntFunction<V> mappingFunction) {
+        V value = get(key);
+        if (value == null) {
+            value = mappingFunction.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     Removes the mapping for the key and returns its value, or null if there was none. Later entries of the same
+     probe run are shifted back into the freed slot, so lookups never need tombstones.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int gap = findSlot(key);
+        V previous = (V) values[gap];
+        if (previous == null) {
+            return null;
+        }
+        int slot = (gap + 1) & mask;
+        while (values[slot] != null) {
+            int home = hash(keys[slot]) & mask;
+            // The entry may fill the gap only if that does not move it before its home slot
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        values[gap] = null;
+        size--;
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     Returns the keys in table order, which is unspecified; sort the result when a stable order is needed.
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int count = 0;
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null) {
+                result[count++] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+    private int findSlot(int key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != null && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(oldValues.length * 2);
+        for (int slot = 0; slot < oldValues.length; slot++) {
+            if (oldValues[slot] != null) {
+                int newSlot = findSlot(oldKeys[slot]);
+                keys[newSlot] = oldKeys[slot];
+                values[newSlot] = oldValues[slot];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int capacity) {
+        return Math.max(Integer.highestOneBit(capacity - 1) << 1, 2);
+    }
+}
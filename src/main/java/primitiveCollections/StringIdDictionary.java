@@ -0,0 +1,316 @@
+package primitiveCollections;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ Compact two-way map between strings and dense non-negative int IDs, for dictionaries with millions of entries.
+
+ The UTF-8 bytes of every key are appended, length first, to the pages of one byte arena. An array indexed by ID
+ holds the arena address of its key, and an open-addressing table of IDs finds the ID of a key. An entry costs its
+ bytes plus about 12 bytes, where a HashMap<String, Integer> spends 80 to 100 bytes on the String, the boxed Integer
+ and the node. Each ID belongs to at most one key, and the arrays are sized by the largest ID, so IDs should be dense.
+
+ Lookups are safe from several threads once the dictionary is built; adding keys is not thread-safe.
+ */
+public class StringIdDictionary {
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int FIRST_PAGE_SIZE = 4096;
+    // Addresses are page << PAGE_BITS | offset in an int, so the arena holds up to 2 GB in pages of at most 1 MB
+    private static final int PAGE_BITS = 20;
+    private static final int MAX_PAGES = 1 << (31 - PAGE_BITS);
+    private static final int NO_KEY = -1;
+
+    // Key bytes, each key prefixed with its length as a varint; a key never spans two pages
+    private byte[][] pages = new byte[4][];
+    private int pageCount;
+    private int pageUsed;
+
+    // Arena address of the key of every ID, NO_KEY where the ID is not used
+    private int[] addresses = new int[0];
+    private int size;
+
+    // ID + 1 of the key in each slot, 0 for a free slot
+    private int[] table;
+    private int mask;
+    private int resizeThreshold;
+
+    public StringIdDictionary() {
+        allocate(16);
+    }
+
+    /**
+     Returns the ID of the key, or -1 if it is not in the dictionary.
+     */
+    public int get(CharSequence key) {
+        byte[] bytes = isAscii(key) ? null : key.toString().getBytes(StandardCharsets.UTF_8);
+        return table[findSlot(key, bytes, hash(key, bytes))] - 1;
+    }
+
+    public boolean containsKey(CharSequence key) {
+        return get(key) >= 0;
+    }
+
+    /**
+     Returns the key with the given ID, or null if no key has it.
+     */
+    public String getKey(int id) {
+        if (id < 0 || id >= addresses.length || addresses[id] == NO_KEY) {
+            return null;
+        }
+        byte[] page = pages[addresses[id] >>> PAGE_BITS];
+        int offset = addresses[id] & ((1 << PAGE_BITS) - 1);
+        int length = readLength(page, offset);
+        offset += lengthSize(length);
+        return new String(page, offset, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     Associates the key with the ID, replacing the ID it had before.
+     Throws IllegalArgumentException if the ID is negative or already belongs to another key.
+     */
+    public void put(CharSequence key, int id) {
+        byte[] bytes = isAscii(key) ? null : key.toString().getBytes(StandardCharsets.UTF_8);
+        int slot = findSlot(key, bytes, hash(key, bytes));
+        int previous = table[slot] - 1;
+        if (previous == id) {
+            return;
+        }
+        checkFree(id);
+        if (previous >= 0) {
+            ensureCapacity(id);
+            addresses[id] = addresses[previous];
+            addresses[previous] = NO_KEY;
+            table[slot] = id + 1;
+            return;
+        }
+        add(slot, key, bytes, id);
+    }
+
+    /**
+     Returns the ID of the key if it is already in the dictionary, and otherwise adds it with the given ID and
+     returns that. Throws IllegalArgumentException if the key is added and the ID is negative or already taken.
+     */
+    public int putIfAbsent(CharSequence key, int id) {
+        byte[] bytes = isAscii(key) ? null : key.toString().getBytes(StandardCharsets.UTF_8);
+        int slot = findSlot(key, bytes, hash(key, bytes));
+        if (table[slot] != 0) {
+            return table[slot] - 1;
+        }
+        checkFree(id);
+        add(slot, key, bytes, id);
+        return id;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     Returns the IDs in use, in ascending order.
+     */
+    public int[] ids() {
+        int[] result = new int[size];
+        int count = 0;
+        for (int id = 0; count < size; id++) {
+            if (addresses[id] != NO_KEY) {
+                result[count++] = id;
+            }
+        }
+        return result;
+    }
+
+    private void checkFree(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Negative ID: " + id);
+        }
+        if (id < addresses.length && addresses[id] != NO_KEY) {
+            throw new IllegalArgumentException("ID " + id + " already belongs to " + getKey(id));
+        }
+    }
+
+    private void add(int slot, CharSequence key, byte[] bytes, int id) {
+        ensureCapacity(id);
+        addresses[id] = append(key, bytes);
+        table[slot] = id + 1;
+        if (++size > resizeThreshold) {
+            resize();
+        }
+    }
+
+    private void ensureCapacity(int id) {
+        if (id >= addresses.length) {
+            int oldLength = addresses.length;
+            addresses = Arrays.copyOf(addresses, Math.max(id + 1, oldLength * 2));
+            Arrays.fill(addresses, oldLength, addresses.length, NO_KEY);
+        }
+    }
+
+    /**
+     Copies the key into the arena and returns its address.
+     */
+    private int append(CharSequence key, byte[] bytes) {
+        int length = bytes == null ? key.length() : bytes.length;
+        int needed = length + 5;
+        if (needed > 1 << PAGE_BITS) {
+            throw new IllegalArgumentException("Key of " + length + " bytes is longer than a page");
+        }
+        if (pageCount == 0 || pageUsed + needed > pages[pageCount - 1].length) {
+            if (pageCount == MAX_PAGES) {
+                throw new IllegalStateException("Dictionary arena is full");
+            }
+            if (pageCount == pages.length) {
+                pages = Arrays.copyOf(pages, pageCount * 2);
+            }
+            int pageSize = pageCount == 0 ? FIRST_PAGE_SIZE : Math.min(pages[pageCount - 1].length * 2, 1 << PAGE_BITS);
+            pages[pageCount++] = new byte[Math.max(pageSize, needed)];
+            pageUsed = 0;
+        }
+        byte[] page = pages[pageCount - 1];
+        int address = (pageCount - 1) << PAGE_BITS | pageUsed;
+        int offset = pageUsed;
+        int remaining = length;
+        while (remaining >= 0x80) {
+            page[offset++] = (byte) (remaining | 0x80);
+            remaining >>>= 7;
+        }
+        page[offset++] = (byte) remaining;
+        if (bytes == null) {
+            for (int i = 0; i < length; i++) {
+                page[offset++] = (byte) key.charAt(i);
+            }
+        }
+        else {
+            System.arraycopy(bytes, 0, page, offset, length);
+            offset += length;
+        }
+        pageUsed = offset;
+        return address;
+    }
+
+    /**
+     Returns the slot holding the key, or the free slot where it would be added.
+     */
+    private int findSlot(CharSequence key, byte[] bytes, int hash) {
+        int slot = hash & mask;
+        while (table[slot] != 0 && !keyEquals(addresses[table[slot] - 1], key, bytes)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean keyEquals(int address, CharSequence key, byte[] bytes) {
+        byte[] page = pages[address >>> PAGE_BITS];
+        int offset = address & ((1 << PAGE_BITS) - 1);
+        int length = readLength(page, offset);
+        offset += lengthSize(length);
+
+        if (bytes != null) {
+            return Arrays.equals(page, offset, offset + length, bytes, 0, bytes.length);
+        }
+        if (length != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (page[offset + i] != (byte) key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void resize() {
+        int[] oldTable = table;
+        allocate(oldTable.length * 2);
+        for (int value : oldTable) {
+            if (value != 0) {
+                int slot = hashStored(addresses[value - 1]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = value;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        table = new int[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static boolean isAscii(CharSequence key) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     Hashes the UTF-8 bytes of the key, which for an ASCII key are its chars.
+     */
+    private static int hash(CharSequence key, byte[] bytes) {
+        int h = 0;
+        if (bytes == null) {
+            for (int i = 0; i < key.length(); i++) {
+                h = 31 * h + key.charAt(i);
+            }
+        }
+        else {
+            for (byte b : bytes) {
+                h = 31 * h + b;
+            }
+        }
+        return mix(h);
+    }
+
+    /**
+     Same as hash(), for a key already in the arena.
+     */
+    private int hashStored(int address) {
+        byte[] page = pages[address >>> PAGE_BITS];
+        int offset = address & ((1 << PAGE_BITS) - 1);
+        int length = readLength(page, offset);
+        offset += lengthSize(length);
+        int h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + page[i];
+        }
+        return mix(h);
+    }
+
+    /**
+     Reads the varint key length stored at the offset.
+     */
+    private static int readLength(byte[] page, int offset) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = page[offset++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return length;
+    }
+
+    private static int lengthSize(int length) {
+        int size = 1;
+        while (length >= 0x80) {
+            length >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,135 @@
+package queryServing;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ Runs a file of query commands concurrently against one shared index and writes their results to an
+ output file in the order of the commands. Blank lines, # comments and --input lines, as found in commands.txt,
+ are skipped.
+ */
+public class BatchQueryRunner {
+    private final QueryCommands commands;
+    private final int threads;
+
+    public BatchQueryRunner(QueryCommands commands, int threads) {
+        this.commands = commands;
+        this.threads = threads;
+    }
+
+    /**
+     Result of one command: everything it printed, and how long it took.
+     */
+    private static final class CommandResult {
+        final String output;
+        final long nanos;
+
+        CommandResult(String output, long nanos) {
+            this.output = output;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     Runs every command in commandsPath and writes each one followed by its output to outputPath.
+     Returns a one-line summary of throughput and latency.
+     */
+    public String run(Path commandsPath, Path outputPath) throws IOException {
+        List<String> batch = new ArrayList<>();
+        for (String line : Files.readAllLines(commandsPath)) {
+            String command = line.trim();
+            if (!command.isEmpty() && !command.startsWith("#") && !command.startsWith("--input")) {
+                batch.add(command);
+            }
+        }
+
+        long[] latencies = new long[batch.size()];
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (BufferedWriter writer = Files.newBufferedWriter(outputPath)) {
+            // Keep a bounded window of commands in flight so finished results do not pile up in memory
+            Deque<Future<CommandResult>> pending = new ArrayDeque<>();
+            int maxPending = threads * 4;
+            int nextCommand = 0;
+
+            for (int i = 0; i < batch.size(); i++) {
+                while (nextCommand < batch.size() && pending.size() < maxPending) {
+                    String command = batch.get(nextCommand++);
+                    pending.add(executor.submit(() -> execute(command)));
+                }
+                CommandResult result = awaitResult(pending.poll());
+                latencies[i] = result.nanos;
+                writer.write("> " + batch.get(i) + "\n");
+                writer.write(result.output);
+                writer.write("\n");
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return String.format(Locale.ROOT, "Ran %d commands in %.3f s (%.1f commands/s), latency p50 %.3f ms, p99 %.3f ms",
+                batch.size(), elapsed / 1e9, elapsed == 0 ? 0 : batch.size() * 1e9 / elapsed,
+                percentile(latencies, 0.5) / 1e6, percentile(latencies, 0.99) / 1e6);
+    }
+
+    /**
+     Runs one command, collecting its results and error messages together as they would appear on a console.
+     */
+    private CommandResult execute(String command) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, false, StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+        if (!commands.execute(command, out, out)) {
+            out.println("Invalid command: " + command);
+        }
+        long nanos = System.nanoTime() - start;
+        out.flush();
+        return new CommandResult(buffer.toString(StandardCharsets.UTF_8), nanos);
+    }
+
+    /**
+     Waits for a worker to finish a command and rethrows its failure, if any.
+     */
+    private static CommandResult awaitResult(Future<CommandResult> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while running commands");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(rank - 1, 0)];
+    }
+}
@@ -0,0 +1,74 @@
+package queryServing;
+
+import indexReading.DocStats;
+import indexReading.SearchResult;
+import indexReading.TermInfo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ One shard of a document-partitioned index, as the ShardCoordinator sees it: an IndexReader in this process
+ (LocalShard) or in a child process reached over a socket (RemoteShard).
+ DOCIDs are the same in every shard, TERMIDs are local to the shard that assigned them.
+ */
+public interface IndexShard extends Closeable {
+
+    String getName();
+
+    /**
+     Number of documents with statistics in the shard.
+     */
+    long getDocumentCount() throws IOException;
+
+    /**
+     Total number of terms of the shard's documents.
+     */
+    long getTotalLength() throws IOException;
+
+    /**
+     Returns the DOCID of a document, or -1 if it is not in the shard.
+     */
+    int getDocId(String docName) throws IOException;
+
+    /**
+     Returns the statistics of a document, or null if the shard has no terms for it.
+     */
+    DocStats getDocStats(int docId) throws IOException;
+
+    /**
+     Tokenizes and stems text without lowercasing it and returns the shard TERMID of every token, -1 for tokens
+     not in the shard.
+     */
+    int[] getTermIds(String text) throws IOException;
+
+    /**
+     Returns the shard-wide statistics of a term, or null if it is not in the shard.
+     */
+    TermInfo getTermInfo(int termId) throws IOException;
+
+    /**
+     Returns the positions of a term in a document, or null if the document does not contain it.
+     */
+    int[] getPositions(int termId, int docId) throws IOException;
+
+    /**
+     Returns the shard's document frequency of every token of the lowercased query, 0 for tokens not in the shard.
+     */
+    int[] getDocFrequencies(String query) throws IOException;
+
+    /**
+     Ranks the shard's documents with BM25 using the statistics of the whole corpus, see IndexReader.search.
+     */
+    List<SearchResult> search(String query, int k, long documentCount, long totalLength, int[] docFrequencies) throws IOException;
+
+    /**
+     Returns the names of the shard's documents matching a Boolean query, in DOCID order.
+     Throws IllegalArgumentException if the query is malformed.
+     */
+    List<String> findDocuments(String query) throws IOException;
+
+    void printCacheStats(PrintStream out) throws IOException;
+}
@@ -0,0 +1,87 @@
+package queryServing;
+
+import indexReading.DocStats;
+import indexReading.IndexReader;
+import indexReading.SearchResult;
+import indexReading.TermInfo;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ A shard whose IndexReader lives in this process.
+ */
+public class LocalShard implements IndexShard {
+    private final String name;
+    private final IndexReader reader;
+
+    public LocalShard(String name, IndexReader reader) {
+        this.name = name;
+        this.reader = reader;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getDocumentCount() {
+        return reader.getDocumentCount();
+    }
+
+    @Override
+    public long getTotalLength() {
+        return reader.getTotalLength();
+    }
+
+    @Override
+    public int getDocId(String docName) {
+        return reader.getDocId(docName);
+    }
+
+    @Override
+    public DocStats getDocStats(int docId) {
+        return reader.getDocStats(docId);
+    }
+
+    @Override
+    public int[] getTermIds(String text) throws IOException {
+        return reader.getTermIds(text);
+    }
+
+    @Override
+    public TermInfo getTermInfo(int termId) {
+        return reader.getTermInfo(termId);
+    }
+
+    @Override
+    public int[] getPositions(int termId, int docId) throws IOException {
+        return reader.getPositions(termId, docId);
+    }
+
+    @Override
+    public int[] getDocFrequencies(String query) throws IOException {
+        return reader.getDocFrequencies(query);
+    }
+
+    @Override
+    public List<SearchResult> search(String query, int k, long documentCount, long totalLength, int[] docFrequencies) throws IOException {
+        return reader.search(query, k, documentCount, totalLength, docFrequencies);
+    }
+
+    @Override
+    public List<String> findDocuments(String query) throws IOException {
+        return reader.findDocuments(query);
+    }
+
+    @Override
+    public void printCacheStats(PrintStream out) {
+        reader.printCacheStats(out);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,75 @@
+package queryServing;
+
+import indexReading.QueryableIndex;
+import pipelineMonitoring.Metrics;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ Parses and runs the commands of the interactive query loop and commands.txt, e.g. "--term TERM --doc DOCNAME".
+ Holds no state of its own, so commands may run concurrently from several threads.
+ */
+public class QueryCommands {
+    private static final int DEFAULT_TOP_K = 10;
+
+    private final QueryableIndex reader;
+
+    public QueryCommands(QueryableIndex reader) {
+        this.reader = reader;
+    }
+
+    /**
+     Runs one command, writing its results to out and its error messages to err.
+     Returns false without writing anything if the command is not recognized.
+     */
+    public boolean execute(String command, PrintStream out, PrintStream err) throws IOException {
+        String[] commandParts = command.split(" ");
+        if (commandParts.length == 2 && commandParts[0].equals("--doc")) {
+            String docName = commandParts[1];
+            reader.printDocInfo(docName, out, err);
+        }
+        else if (commandParts.length == 2 && commandParts[0].equals("--term")) {
+            String term = commandParts[1];
+            reader.printTermInfo(term, out, err);
+        }
+        else if (commandParts.length == 4 && commandParts[0].equals("--term") && commandParts[2].equals("--doc")) {
+            String term = commandParts[1];
+            String docName = commandParts[3];
+            reader.printTermDocInfo(term, docName, out, err);
+        }
+        else if (commandParts.length >= 2 && commandParts[0].equals("--search")) {
+            int queryEnd = commandParts.length;
+            int topK = DEFAULT_TOP_K;
+            if (queryEnd >= 4 && commandParts[queryEnd - 2].equals("--top")) {
+                try {
+                    topK = Integer.parseInt(commandParts[queryEnd - 1]);
+                }
+                catch (NumberFormatException e) {
+                    topK = 0;
+                }
+                if (topK <= 0) {
+                    err.println("Invalid number of results: " + commandParts[queryEnd - 1]);
+                    return true;
+                }
+                queryEnd -= 2;
+            }
+            String query = String.join(" ", Arrays.copyOfRange(commandParts, 1, queryEnd));
+            reader.printSearchResults(query, topK, out, err);
+        }
+        else if (commandParts.length >= 2 && commandParts[0].equals("--query")) {
+            reader.printQueryResults(command.substring("--query".length()).trim(), out, err);
+        }
+        else if (command.equals("--cache-stats")) {
+            reader.printCacheStats(out);
+        }
+        else if (command.equals("--metrics")) {
+            out.print(Metrics.toJson());
+        }
+        else {
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,287 @@
+package queryServing;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import indexReading.DocStats;
+import indexReading.IndexReader;
+import indexReading.SearchResult;
+import indexReading.TermInfo;
+import pipelineMonitoring.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Serves a loaded IndexReader over a small HTTP/JSON API on the loopback interface:
+
+ GET /doc?name=DOCNAME               document statistics
+ GET /term?term=TERM                 term statistics
+ GET /term?term=TERM&doc=DOCNAME     positions of a term in a document
+ GET /search?q=QUERY[&k=K]           BM25 top-k search
+ GET /query?q=BOOLEAN_QUERY          Boolean, phrase and proximity queries
+ GET /metrics                        all metrics in the Prometheus text format
+ GET /health                         liveness check
+
+ Lookups that find nothing answer 404 and malformed requests 400, both with a JSON error message.
+ The latency and status of every request are recorded in Metrics under its endpoint.
+ */
+public class QueryServer implements AutoCloseable {
+    private static final int DEFAULT_TOP_K = 10;
+    // In-flight requests get this long to finish when the server is closed
+    private static final int SHUTDOWN_GRACE_SECONDS = 5;
+
+    private final IndexReader reader;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     Starts serving on the given loopback port, handling requests on a pool of the given number of threads.
+     Port 0 picks a free port, see getPort().
+     */
+    public QueryServer(IndexReader reader, int port, int threads) throws IOException {
+        this.reader = reader;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "query-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/doc", exchange -> handle(exchange, "/doc", this::doc));
+        server.createContext("/term", exchange -> handle(exchange, "/term", this::term));
+        server.createContext("/search", exchange -> handle(exchange, "/search", this::search));
+        server.createContext("/query", exchange -> handle(exchange, "/query", this::query));
+        server.createContext("/metrics", exchange -> handle(exchange, "/metrics",
+                parameters -> new Response(200, "text/plain; version=0.0.4", Metrics.toPrometheus())));
+        server.createContext("/health", exchange -> handle(exchange, "/health", parameters -> json(200, "{\"status\": \"ok\"}")));
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     Blocks until the server has been closed.
+     */
+    public void awaitClose() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     Stops accepting connections, waits for in-flight requests to finish and releases the worker threads.
+     */
+    @Override
+    public void close() {
+        if (stopped.getCount() == 0) {
+            return;
+        }
+        server.stop(SHUTDOWN_GRACE_SECONDS);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stopped.countDown();
+    }
+
+    private interface Endpoint {
+        Response answer(Map<String, String> parameters) throws IOException;
+    }
+
+    private static final class Response {
+        final int status;
+        final String contentType;
+        final String body;
+
+        Response(int status, String contentType, String body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+
+    /**
+     Answers one request and records its latency. Only GET is allowed.
+     */
+    private void handle(HttpExchange exchange, String endpoint, Endpoint handler) throws IOException {
+        long start = System.nanoTime();
+        Response response;
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                response = error(405, "Method not allowed: " + exchange.getRequestMethod());
+            }
+            else {
+                response = handler.answer(parseQuery(exchange.getRequestURI().getRawQuery()));
+            }
+        }
+        catch (IllegalArgumentException e) {
+            response = error(400, e.getMessage());
+        }
+        catch (IOException | RuntimeException e) {
+            System.err.println("Error answering " + exchange.getRequestURI() + ": " + e);
+            response = error(500, "Internal error");
+        }
+
+        try {
+            byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", response.contentType);
+            exchange.sendResponseHeaders(response.status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        finally {
+            exchange.close();
+            Metrics.recordRequest(endpoint, response.status, start);
+        }
+    }
+
+    private Response doc(Map<String, String> parameters) {
+        String docName = required(parameters, "name");
+        int docId = reader.getDocId(docName);
+        if (docId < 0) {
+            return error(404, "Document not found: " + docName);
+        }
+        DocStats docStats = reader.getDocStats(docId);
+        if (docStats == null) {
+            return error(404, "No term positions found for document ID: " + docId);
+        }
+        return json(200, "{\"doc\": " + quote(docName) + ", \"docid\": " + docId
+                + ", \"distinct_terms\": " + docStats.getDistinctTerms() + ", \"total_terms\": " + docStats.getLength() + "}");
+    }
+
+    private Response term(Map<String, String> parameters) throws IOException {
+        String term = required(parameters, "term");
+        int termId = reader.getTermId(term);
+        TermInfo termInfo = termId < 0 ? null : reader.getTermInfo(termId);
+        if (termInfo == null) {
+            return error(404, "Term not found: " + term);
+        }
+        String docName = parameters.get("doc");
+        if (docName == null) {
+            return json(200, "{\"term\": " + quote(term) + ", \"termid\": " + termId
+                    + ", \"doc_count\": " + termInfo.getDocCount() + ", \"term_frequency\": " + termInfo.getTotalOccurrences() + "}");
+        }
+
+        int docId = reader.getDocId(docName);
+        if (docId < 0) {
+            return error(404, "Document not found: " + docName);
+        }
+        int[] positions = reader.getPositions(termId, docId);
+        if (positions == null) {
+            return error(404, "Term not found in document: " + docName);
+        }
+        StringBuilder body = new StringBuilder();
+        body.append("{\"term\": ").append(quote(term)).append(", \"termid\": ").append(termId)
+                .append(", \"doc\": ").append(quote(docName)).append(", \"docid\": ").append(docId)
+                .append(", \"term_frequency\": ").append(positions.length).append(", \"positions\": [");
+        for (int i = 0; i < positions.length; i++) {
+            body.append(i > 0 ? ", " : "").append(positions[i]);
+        }
+        return json(200, body.append("]}").toString());
+    }
+
+    private Response search(Map<String, String> parameters) throws IOException {
+        String query = required(parameters, "q");
+        int k = DEFAULT_TOP_K;
+        if (parameters.containsKey("k")) {
+            try {
+                k = Integer.parseInt(parameters.get("k"));
+            }
+            catch (NumberFormatException e) {
+                k = 0;
+            }
+            if (k <= 0) {
+                throw new IllegalArgumentException("Invalid number of results: " + parameters.get("k"));
+            }
+        }
+        StringBuilder body = new StringBuilder();
+        body.append("{\"query\": ").append(quote(query)).append(", \"results\": [");
+        List<SearchResult> results = reader.search(query, k);
+        for (int i = 0; i < results.size(); i++) {
+            SearchResult result = results.get(i);
+            body.append(i > 0 ? ", " : "").append("{\"doc\": ").append(quote(result.getDocName()))
+                    .append(", \"docid\": ").append(result.getDocId())
+                    .append(", \"score\": ").append(String.format(Locale.ROOT, "%.4f", result.getScore())).append('}');
+        }
+        return json(200, body.append("]}").toString());
+    }
+
+    private Response query(Map<String, String> parameters) throws IOException {
+        String query = required(parameters, "q");
+        List<String> docNames = reader.findDocuments(query);
+        StringBuilder body = new StringBuilder();
+        body.append("{\"query\": ").append(quote(query)).append(", \"count\": ").append(docNames.size()).append(", \"docs\": [");
+        for (int i = 0; i < docNames.size(); i++) {
+            body.append(i > 0 ? ", " : "").append(quote(docNames.get(i)));
+        }
+        return json(200, body.append("]}").toString());
+    }
+
+    private static String required(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static Response json(int status, String body) {
+        return new Response(status, "application/json; charset=utf-8", body + "\n");
+    }
+
+    private static Response error(int status, String message) {
+        return json(status, "{\"error\": " + quote(message) + "}");
+    }
+
+    /**
+     Returns the string as a JSON string literal.
+     */
+    private static String quote(String s) {
+        StringBuilder quoted = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
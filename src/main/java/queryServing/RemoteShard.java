@@ -0,0 +1,245 @@
+package queryServing;
+
+import indexReading.DocStats;
+import indexReading.SearchResult;
+import indexReading.TermInfo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ A shard served by a ShardServer in a child process on this machine. Requests from several threads go out over
+ a pool of connections, one request at a time per connection. Closing the shard closes the child's standard input,
+ which tells it to exit.
+ */
+public class RemoteShard implements IndexShard {
+    // The child gets this long to exit after its input is closed before it is killed
+    private static final int SHUTDOWN_GRACE_SECONDS = 5;
+
+    private final String name;
+    private final Process process;
+    private final int port;
+    private final ConcurrentLinkedQueue<Connection> connections = new ConcurrentLinkedQueue<>();
+    private final long documentCount;
+    private final long totalLength;
+
+    private RemoteShard(String name, Process process, int port) throws IOException {
+        this.name = name;
+        this.process = process;
+        this.port = port;
+        String[] stats = request("STATS").get(0).split("\t");
+        this.documentCount = Long.parseLong(stats[0]);
+        this.totalLength = Long.parseLong(stats[1]);
+    }
+
+    /**
+     Starts a shard server process with the given command line and connects to it once it reports its port.
+     The child's error output goes to this process's.
+     */
+    public static RemoteShard start(String name, List<String> command) throws IOException {
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = out.readLine()) != null) {
+            if (line.startsWith(ShardServer.LISTENING)) {
+                return new RemoteShard(name, process, Integer.parseInt(line.substring(ShardServer.LISTENING.length()).trim()));
+            }
+        }
+        process.destroy();
+        throw new IOException("Shard server for " + name + " exited before listening");
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getDocumentCount() {
+        return documentCount;
+    }
+
+    @Override
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    @Override
+    public int getDocId(String docName) throws IOException {
+        return Integer.parseInt(request("DOCID", docName).get(0));
+    }
+
+    @Override
+    public DocStats getDocStats(int docId) throws IOException {
+        List<String> lines = request("DOCSTATS", String.valueOf(docId));
+        if (lines.isEmpty()) {
+            return null;
+        }
+        String[] parts = lines.get(0).split("\t");
+        return new DocStats(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), -1);
+    }
+
+    @Override
+    public int[] getTermIds(String text) throws IOException {
+        return toInts(request("TERMIDS", text));
+    }
+
+    @Override
+    public TermInfo getTermInfo(int termId) throws IOException {
+        List<String> lines = request("TERMINFO", String.valueOf(termId));
+        if (lines.isEmpty()) {
+            return null;
+        }
+        String[] parts = lines.get(0).split("\t");
+        return new TermInfo(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+    }
+
+    @Override
+    public int[] getPositions(int termId, int docId) throws IOException {
+        List<String> lines = request("POSITIONS", String.valueOf(termId), String.valueOf(docId));
+        return lines.isEmpty() ? null : toInts(lines);
+    }
+
+    @Override
+    public int[] getDocFrequencies(String query) throws IOException {
+        return toInts(request("DFS", query));
+    }
+
+    @Override
+    public List<SearchResult> search(String query, int k, long documentCount, long totalLength, int[] docFrequencies) throws IOException {
+        String dfs = Arrays.stream(docFrequencies).mapToObj(String::valueOf).collect(Collectors.joining(","));
+        List<SearchResult> results = new ArrayList<>();
+        for (String line : request("SEARCH", String.valueOf(k), String.valueOf(documentCount), String.valueOf(totalLength), dfs, query)) {
+            String[] parts = line.split("\t");
+            results.add(new SearchResult(Integer.parseInt(parts[0]), decode(parts[2]), Double.parseDouble(parts[1])));
+        }
+        return results;
+    }
+
+    @Override
+    public List<String> findDocuments(String query) throws IOException {
+        List<String> docNames = new ArrayList<>();
+        for (String line : request("QUERY", query)) {
+            docNames.add(decode(line));
+        }
+        return docNames;
+    }
+
+    @Override
+    public void printCacheStats(PrintStream out) throws IOException {
+        for (String line : request("CACHE")) {
+            out.println(line);
+        }
+    }
+
+    /**
+     Closes the pooled connections and waits for the child to exit.
+     */
+    @Override
+    public void close() throws IOException {
+        Connection connection;
+        while ((connection = connections.poll()) != null) {
+            connection.close();
+        }
+        process.getOutputStream().close();
+        try {
+            if (!process.waitFor(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+        catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     Sends one request on a pooled connection and returns the lines of its answer. A BAD answer is thrown as an
+     IllegalArgumentException and an ERR answer as an IOException; a connection that fails is dropped.
+     */
+    private List<String> request(String operation, String... args) throws IOException {
+        StringBuilder request = new StringBuilder(operation);
+        for (String arg : args) {
+            request.append('\t').append(ShardServer.encode(arg));
+        }
+        Connection connection = connections.poll();
+        if (connection == null) {
+            connection = new Connection(new Socket(InetAddress.getLoopbackAddress(), port));
+        }
+
+        String[] status;
+        List<String> lines = new ArrayList<>();
+        try {
+            connection.out.write(request.append('\n').toString());
+            connection.out.flush();
+            String header = connection.in.readLine();
+            if (header == null) {
+                throw new IOException("Shard server for " + name + " closed the connection");
+            }
+            status = header.split("\t", 2);
+            if (status[0].equals("OK")) {
+                int count = Integer.parseInt(status[1]);
+                for (int i = 0; i < count; i++) {
+                    lines.add(connection.in.readLine());
+                }
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+        connections.add(connection);
+
+        switch (status[0]) {
+            case "OK":
+                return lines;
+            case "BAD":
+                throw new IllegalArgumentException(decode(status[1]));
+            default:
+                throw new IOException(name + ": " + decode(status.length > 1 ? status[1] : status[0]));
+        }
+    }
+
+    private static int[] toInts(List<String> lines) {
+        return lines.stream().mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    private static final class Connection {
+        final Socket socket;
+        final BufferedReader in;
+        final Writer out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        }
+
+        void close() {
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                // Already broken; nothing left to release
+            }
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package queryServing;
+
+import indexReading.DocStats;
+import indexReading.QueryableIndex;
+import indexReading.SearchResult;
+import indexReading.TermInfo;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ Answers the query commands over a document-partitioned index by sending each lookup to every shard at once and
+ merging the answers: document and collection frequencies are summed, BM25 top-k lists are merged by score, and
+ Boolean matches are concatenated.
+
+ Search runs in two rounds, first gathering the document frequencies of the query terms and then ranking every
+ shard with the corpus-wide statistics, so scores and ranks are those of a single index over the whole corpus.
+ The shards must be given in DOCID order, each holding a contiguous DOCID range, as FileProcessor.partitionFiles
+ produces; TERMIDs are local to each shard and are reported per shard.
+ */
+public class ShardCoordinator implements QueryableIndex, AutoCloseable {
+    // Orders merged search results like MaxScoreSearcher: best score first, then lowest DOCID
+    private static final Comparator<SearchResult> RANKING = Comparator.comparingDouble(SearchResult::getScore).reversed()
+            .thenComparingInt(SearchResult::getDocId);
+
+    private final List<IndexShard> shards;
+    private final ExecutorService executor;
+    private final long documentCount;
+    private final long totalLength;
+
+    public ShardCoordinator(List<IndexShard> shards) throws IOException {
+        this.shards = new ArrayList<>(shards);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "shard-coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long documentCount = 0;
+        long totalLength = 0;
+        for (IndexShard shard : shards) {
+            documentCount += shard.getDocumentCount();
+            totalLength += shard.getTotalLength();
+        }
+        this.documentCount = documentCount;
+        this.totalLength = totalLength;
+    }
+
+    private interface ShardCall<T> {
+        T apply(IndexShard shard) throws IOException;
+    }
+
+    /**
+     Runs a call on every shard in parallel and returns the answers in shard order.
+     */
+    private <T> List<T> fanOut(ShardCall<T> call) throws IOException {
+        if (shards.size() == 1) {
+            return Collections.singletonList(call.apply(shards.get(0)));
+        }
+        List<Future<T>> futures = new ArrayList<>();
+        for (IndexShard shard : shards) {
+            futures.add(executor.submit(() -> call.apply(shard)));
+        }
+        List<T> answers = new ArrayList<>();
+        try {
+            for (Future<T> future : futures) {
+                answers.add(future.get());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for shards");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return answers;
+    }
+
+    /**
+     Returns the index of the shard holding a document, or -1 if none does.
+     */
+    private int findShard(List<Integer> docIds) {
+        for (int i = 0; i < docIds.size(); i++) {
+            if (docIds.get(i) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void printDocInfo(String docName, PrintStream out, PrintStream err) throws IOException {
+        List<Integer> docIds = fanOut(shard -> shard.getDocId(docName));
+        int shard = findShard(docIds);
+        if (shard < 0) {
+            err.println("Document not found: " + docName);
+            return;
+        }
+        int docId = docIds.get(shard);
+        DocStats docStats = shards.get(shard).getDocStats(docId);
+        if (docStats == null) {
+            err.println("No term positions found for document ID: " + docId);
+            return;
+        }
+
+        out.println("Listing for document: " + docName);
+        out.println("DOCID: " + docId);
+        out.println("Distinct terms: " + docStats.getDistinctTerms());
+        out.println("Total terms: " + docStats.getLength());
+    }
+
+    /**
+     Looks up the first token of a term in every shard, printing an error if the term has no token.
+     */
+    private List<TermLookup> lookUpTerm(String term, PrintStream err) throws IOException {
+        List<TermLookup> lookups = fanOut(shard -> {
+            int[] termIds = shard.getTermIds(term);
+            int termId = termIds.length == 0 ? -1 : termIds[0];
+            return new TermLookup(termIds.length > 0, termId, termId < 0 ? null : shard.getTermInfo(termId));
+        });
+        // Tokenizing does not depend on the shard, so the first shard's tokens are everyone's
+        if (!lookups.get(0).hasToken) {
+            err.println("Unable to stem term: " + term);
+        }
+        return lookups;
+    }
+
+    /**
+     TERMID of a term in one shard, and its statistics there, null if the shard does not have it.
+     */
+    private static final class TermLookup {
+        final boolean hasToken;
+        final int termId;
+        final TermInfo termInfo;
+
+        TermLookup(boolean hasToken, int termId, TermInfo termInfo) {
+            this.hasToken = hasToken;
+            this.termId = termId;
+            this.termInfo = termInfo;
+        }
+    }
+
+    @Override
+    public void printTermInfo(String term, PrintStream out, PrintStream err) throws IOException {
+        List<TermLookup> lookups = lookUpTerm(term, err);
+        int docCount = 0;
+        long totalOccurrences = 0;
+        for (TermLookup lookup : lookups) {
+            if (lookup.termInfo != null) {
+                docCount += lookup.termInfo.getDocCount();
+                totalOccurrences += lookup.termInfo.getTotalOccurrences();
+            }
+        }
+        if (docCount == 0) {
+            err.println("Term not found: " + term);
+            return;
+        }
+
+        out.println("Listing for term: " + term);
+        if (shards.size() == 1) {
+            out.println("TERMID: " + lookups.get(0).termId);
+        }
+        else {
+            for (int i = 0; i < shards.size(); i++) {
+                if (lookups.get(i).termInfo != null) {
+                    out.println("TERMID in " + shards.get(i).getName() + ": " + lookups.get(i).termId);
+                }
+            }
+        }
+        out.println("Number of documents containing term: " + docCount);
+        out.println("Term frequency in corpus: " + totalOccurrences);
+        for (int i = 0; i < shards.size(); i++) {
+            TermInfo termInfo = lookups.get(i).termInfo;
+            if (termInfo != null) {
+                out.println((shards.size() == 1 ? "Inverted list offset: " : "Inverted list offset in " + shards.get(i).getName() + ": ")
+                        + termInfo.getOffset());
+            }
+        }
+    }
+
+    @Override
+    public void printTermDocInfo(String term, String docName, PrintStream out, PrintStream err) throws IOException {
+        List<TermLookup> lookups = lookUpTerm(term, err);
+        if (lookups.stream().allMatch(lookup -> lookup.termInfo == null)) {
+            err.println("Term not found: " + term);
+            return;
+        }
+        List<Integer> docIds = fanOut(shard -> shard.getDocId(docName));
+        int shard = findShard(docIds);
+        if (shard < 0) {
+            err.println("Document not found: " + docName);
+            return;
+        }
+
+        int docId = docIds.get(shard);
+        int termId = lookups.get(shard).termId;
+        int[] positions = lookups.get(shard).termInfo == null ? null : shards.get(shard).getPositions(termId, docId);
+        if (positions == null) {
+            err.println("Term not found in document: " + docName);
+            return;
+        }
+        out.println("Inverted list for term: " + term);
+        out.println("In document: " + docName);
+        out.println((shards.size() == 1 ? "TERMID: " : "TERMID in " + shards.get(shard).getName() + ": ") + termId);
+        out.println("DOCID: " + docId);
+        out.println("Term frequency in document: " + positions.length);
+        out.println("Positions: " + Arrays.stream(positions).mapToObj(String::valueOf).collect(Collectors.joining(", ")));
+    }
+
+    /**
+     Ranks the documents of all shards for a free-text query with BM25 and returns the k best, highest score first.
+     */
+    public List<SearchResult> search(String query, int k) throws IOException {
+        List<int[]> shardFrequencies = fanOut(shard -> shard.getDocFrequencies(query));
+        int[] docFrequencies = new int[shardFrequencies.get(0).length];
+        for (int[] frequencies : shardFrequencies) {
+            for (int i = 0; i < docFrequencies.length; i++) {
+                docFrequencies[i] += frequencies[i];
+            }
+        }
+
+        List<SearchResult> results = new ArrayList<>();
+        for (List<SearchResult> shardResults : fanOut(shard -> shard.search(query, k, documentCount, totalLength, docFrequencies))) {
+            results.addAll(shardResults);
+        }
+        results.sort(RANKING);
+        return results.size() > k ? results.subList(0, k) : results;
+    }
+
+    @Override
+    public void printSearchResults(String query, int k, PrintStream out, PrintStream err) throws IOException {
+        List<SearchResult> results = search(query, k);
+        if (results.isEmpty()) {
+            err.println("No documents found for query: " + query);
+            return;
+        }
+
+        out.println("Results for query: " + query);
+        int rank = 1;
+        for (SearchResult result : results) {
+            out.println(rank++ + ". " + result.getDocName() + " (DOCID: " + result.getDocId() + ") score: "
+                    + String.format(Locale.ROOT, "%.4f", result.getScore()));
+        }
+    }
+
+    @Override
+    public void printQueryResults(String query, PrintStream out, PrintStream err) throws IOException {
+        List<String> docNames = new ArrayList<>();
+        try {
+            // Shards hold ascending DOCID ranges, so their matches concatenate in DOCID order
+            for (List<String> shardDocNames : fanOut(shard -> shard.findDocuments(query))) {
+                docNames.addAll(shardDocNames);
+            }
+        }
+        catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return;
+        }
+        if (docNames.isEmpty()) {
+            err.println("No documents found for query: " + query);
+            return;
+        }
+
+        out.println("Documents matching query: " + query);
+        out.println("Number of documents: " + docNames.size());
+        for (String docName : docNames) {
+            out.println(docName);
+        }
+    }
+
+    @Override
+    public void printCacheStats(PrintStream out) {
+        for (IndexShard shard : shards) {
+            if (shards.size() > 1) {
+                out.println(shard.getName() + ":");
+            }
+            try {
+                shard.printCacheStats(out);
+            }
+            catch (IOException e) {
+                System.err.println("Failed to read cache statistics of " + shard.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     Closes every shard, stopping the child processes of remote ones.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        for (IndexShard shard : shards) {
+            try {
+                shard.close();
+            }
+            catch (IOException e) {
+                System.err.println("Failed to close " + shard.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+}
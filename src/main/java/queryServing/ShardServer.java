@@ -0,0 +1,219 @@
+package queryServing;
+
+import indexReading.DocStats;
+import indexReading.SearchResult;
+import indexReading.TermInfo;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ Serves one shard to a RemoteShard over a line protocol on the loopback interface.
+
+ A request is one line of an operation and its arguments, separated by tabs and URL-encoded:
+
+ STATS                         document count and total length
+ DOCID name                    DOCID of a document, -1 if absent
+ DOCSTATS docId                distinct terms and length, nothing if the shard has no terms for the document
+ TERMIDS text                  TERMID of every token of text, one per line
+ TERMINFO termId               offset, term frequency and document frequency, nothing if absent
+ POSITIONS termId docId        positions of a term in a document, nothing if absent
+ DFS query                     document frequency of every token of the query, one per line
+ SEARCH k n length dfs query   BM25 results as DOCID, score and name; dfs are comma separated
+ QUERY query                   names of the documents matching a Boolean query
+ CACHE                         cache statistics lines
+
+ The answer is "OK count" followed by count lines, "BAD message" for a malformed request or "ERR message"
+ for a failed one. Each connection is answered on its own thread, one request at a time.
+ */
+public class ShardServer implements AutoCloseable {
+    // Printed by a shard server process once it accepts connections, followed by the port
+    public static final String LISTENING = "Shard server listening on port ";
+
+    private final IndexShard shard;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+
+    /**
+     Starts serving on the given loopback port. Port 0 picks a free port, see getPort().
+     */
+    public ShardServer(IndexShard shard, int port) throws IOException {
+        this.shard = shard;
+        this.serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "shard-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::acceptConnections);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     Stops accepting connections and drops the open ones.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.execute(() -> serveConnection(socket));
+            }
+            catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Failed to accept shard connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            String request;
+            while ((request = in.readLine()) != null) {
+                String response;
+                try {
+                    List<String> lines = answer(request.split("\t", -1));
+                    StringBuilder builder = new StringBuilder("OK\t").append(lines.size()).append('\n');
+                    for (String line : lines) {
+                        builder.append(line).append('\n');
+                    }
+                    response = builder.toString();
+                }
+                catch (IllegalArgumentException e) {
+                    response = "BAD\t" + encode(String.valueOf(e.getMessage())) + "\n";
+                }
+                catch (IOException | RuntimeException e) {
+                    System.err.println("Error answering shard request " + request + ": " + e);
+                    response = "ERR\t" + encode(String.valueOf(e.getMessage())) + "\n";
+                }
+                out.write(response);
+                out.flush();
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Shard connection failed: " + e.getMessage());
+        }
+    }
+
+    private List<String> answer(String[] request) throws IOException {
+        String[] args = new String[request.length - 1];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = URLDecoder.decode(request[i + 1], StandardCharsets.UTF_8);
+        }
+        List<String> lines = new ArrayList<>();
+        switch (request[0]) {
+            case "STATS":
+                lines.add(shard.getDocumentCount() + "\t" + shard.getTotalLength());
+                break;
+            case "DOCID":
+                lines.add(String.valueOf(shard.getDocId(argument(args, 0))));
+                break;
+            case "DOCSTATS": {
+                DocStats docStats = shard.getDocStats(intArgument(args, 0));
+                if (docStats != null) {
+                    lines.add(docStats.getDistinctTerms() + "\t" + docStats.getLength());
+                }
+                break;
+            }
+            case "TERMIDS":
+                addAll(lines, shard.getTermIds(argument(args, 0)));
+                break;
+            case "TERMINFO": {
+                TermInfo termInfo = shard.getTermInfo(intArgument(args, 0));
+                if (termInfo != null) {
+                    lines.add(termInfo.getOffset() + "\t" + termInfo.getTotalOccurrences() + "\t" + termInfo.getDocCount());
+                }
+                break;
+            }
+            case "POSITIONS":
+                addAll(lines, shard.getPositions(intArgument(args, 0), intArgument(args, 1)));
+                break;
+            case "DFS":
+                addAll(lines, shard.getDocFrequencies(argument(args, 0)));
+                break;
+            case "SEARCH": {
+                String dfs = argument(args, 3);
+                int[] docFrequencies = dfs.isEmpty() ? new int[0]
+                        : Arrays.stream(dfs.split(",")).mapToInt(Integer::parseInt).toArray();
+                List<SearchResult> results = shard.search(argument(args, 4), intArgument(args, 0),
+                        Long.parseLong(argument(args, 1)), Long.parseLong(argument(args, 2)), docFrequencies);
+                for (SearchResult result : results) {
+                    lines.add(result.getDocId() + "\t" + result.getScore() + "\t" + encode(result.getDocName()));
+                }
+                break;
+            }
+            case "QUERY":
+                for (String docName : shard.findDocuments(argument(args, 0))) {
+                    lines.add(encode(docName));
+                }
+                break;
+            case "CACHE": {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                try (PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8)) {
+                    shard.printCacheStats(out);
+                }
+                lines.addAll(Arrays.asList(buffer.toString(StandardCharsets.UTF_8).split("\\R")));
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown shard operation: " + request[0]);
+        }
+        return lines;
+    }
+
+    private static void addAll(List<String> lines, int[] values) {
+        if (values != null) {
+            for (int value : values) {
+                lines.add(String.valueOf(value));
+            }
+        }
+    }
+
+    private static String argument(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing argument " + (index + 1));
+        }
+        return args[index];
+    }
+
+    private static int intArgument(String[] args, int index) {
+        String value = argument(args, index);
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number: " + value);
+        }
+    }
+
+    static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,136 @@
+package documentTokenizing;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HtmlTextExtractorTest {
+    private static final String[] WORDS = {"running", "area", "text", "foo", "bar", "a&amp;b", "x.y", "caf&eacute;"};
+    private static final String[] INLINE_TAGS = {"span", "b", "i", "em", "strong"};
+    private static final String[] BLOCK_TAGS = {"div", "section", "blockquote", "article"};
+
+    @Test
+    void separatesBlocksLikeJsoup() {
+        String[] pages = {
+                "<div>foo</div><span>bar</span>",
+                "<li>x</li><b>y</b>",
+                "<p>running</p><textarea>area text</textarea>",
+                "<div>foo</div>bar",
+                "<div>foo</div><!-- comment -->bar",
+                "<div><p>foo</p></div>bar",
+                "<b><p>foo</p></b>bar",
+                "<p>a</p> <b>b</b>",
+                "<div>a</div>&amp;b",
+                "<div>a</div><![CDATA[b]]>",
+                "<p>a</p><br>b",
+                "a<br/>b</br>c",
+                "x<title>t</title>y",
+                "<p>a</p><p>b</p>",
+                "a<b>b</b>c",
+                "a<hr>b<hr/><i>c</i>",
+                "<ul><li>one<li>two</ul>three",
+                "<table><tr><td>a</td><td>b</td></tr></table>c",
+                "foo<script>var x = '</div>';</script>bar",
+                "<div>a</div><style>p {}</style>b",
+                "<h1>Title</h1><span>sub</span><div>body</div>tail",
+        };
+        for (String page : pages) {
+            assertSameText(page);
+        }
+    }
+
+    @Test
+    void matchesJsoupOnRandomPages() {
+        Random random = new Random(12);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder body = new StringBuilder();
+            appendFlow(body, random, 3);
+            assertSameText("<html><head><title>t</title></head><body>" + body + "</body></html>");
+        }
+    }
+
+    private static void assertSameText(String html) {
+        assertEquals(normalize(Jsoup.parse(html).text()), normalize(new HtmlTextExtractor().extract(html, 0).toString()), html);
+    }
+
+    /**
+     Collapses whitespace, since only the token boundaries matter to the tokenizer.
+     */
+    private static String normalize(String text) {
+        return text.replace('\u00a0', ' ').trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     Appends random content that Jsoup's parser keeps as written: blocks only where flow content is allowed,
+     paragraphs and inline elements holding only inline content, and no headings, which close each other.
+     */
+    private static void appendFlow(StringBuilder html, Random random, int depth) {
+        int children = 1 + random.nextInt(4);
+        for (int i = 0; i < children; i++) {
+            int kind = random.nextInt(depth > 0 ? 7 : 3);
+            if (kind == 3) {
+                String tag = BLOCK_TAGS[random.nextInt(BLOCK_TAGS.length)];
+                html.append('<').append(tag).append('>');
+                appendFlow(html, random, depth - 1);
+                html.append("</").append(tag).append('>');
+            }
+            else if (kind == 4) {
+                html.append("<p>");
+                appendInline(html, random, depth - 1);
+                html.append("</p>");
+            }
+            else if (kind == 5) {
+                html.append("<ul>");
+                for (int item = random.nextInt(3); item >= 0; item--) {
+                    html.append("<li>");
+                    appendFlow(html, random, depth - 1);
+                    html.append("</li>");
+                }
+                html.append("</ul>");
+            }
+            else if (kind == 6) {
+                html.append("<textarea>").append(WORDS[random.nextInt(WORDS.length)]).append("</textarea>");
+            }
+            else {
+                appendInlineNode(html, random, depth, kind);
+            }
+        }
+    }
+
+    private static void appendInline(StringBuilder html, Random random, int depth) {
+        int children = 1 + random.nextInt(3);
+        for (int i = 0; i < children; i++) {
+            appendInlineNode(html, random, depth, random.nextInt(3));
+        }
+    }
+
+    private static void appendInlineNode(StringBuilder html, Random random, int depth, int kind) {
+        if (kind == 0 || depth <= 0) {
+            switch (random.nextInt(5)) {
+                case 0:
+                    html.append("<br>");
+                    break;
+                case 1:
+                    html.append("<!-- note -->");
+                    break;
+                case 2:
+                    html.append(' ');
+                    break;
+                default:
+                    html.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+        }
+        else if (kind == 1) {
+            html.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        else {
+            String tag = INLINE_TAGS[random.nextInt(INLINE_TAGS.length)];
+            html.append('<').append(tag).append('>');
+            appendInline(html, random, depth - 1);
+            html.append("</").append(tag).append('>');
+        }
+    }
+}
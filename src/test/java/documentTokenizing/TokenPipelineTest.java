@@ -0,0 +1,119 @@
+package documentTokenizing;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.en.PorterStemFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.junit.jupiter.api.Test;
+import primitiveCollections.CharArrayCache;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ Checks that TokenPipeline produces the same terms at the same positions as the regex, join and StandardTokenizer
+ path it replaced.
+ */
+class TokenPipelineTest {
+    private static final Set<String> STOP_WORDS = Set.of("the", "a", "of", "and", "is", "e.g");
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("\\w+(\\.?\\w+)*");
+    private static final String[] PIECES = {
+            "The", "running", "a", "OF", "e.g", "E.G.", "U.S.A.", "u.s.a", "foo_bar", "_", "__init__", "_x_",
+            "3.14", "v1.2.3", "1,000", "x..y", "end.", "A.b_C.d", "don't", "caféterie", "naïve", "日本語",
+            "mp3", "X11", "hello.world", "www.example.com", "a.b.c.d.e.f", "running_fast.Jumps", "12_34",
+    };
+    private static final String[] SEPARATORS = {" ", " ", " ", ".", "..", "_", "-", "\n", ", ", "é", "'", "/", ""};
+
+    private final Random random = new Random(2);
+    // A tiny stem cache, so lookups keep evicting and re-stemming
+    private final TokenPipeline pipeline = new TokenPipeline(STOP_WORDS, new CharArrayCache<>("Stem", 16));
+
+    @Test
+    void matchesOldPathOnTrickyInputs() throws IOException {
+        String longToken = "x".repeat(254) + "yz" + "q".repeat(300);
+        String[] inputs = {
+                "",
+                "   ...  ",
+                "The cats are running, and the dogs ran.",
+                "Version v1.2.3 of foo_bar.baz was released e.g. yesterday",
+                "U.S.A. and e.g and E.G. then x..y and end. of it",
+                "snake_case_words __dunder__ _leading trailing_ a_b.c_d",
+                "numbers 3.14 1,000 42.0.1 10_000",
+                "café naïve 日本語 résumé",
+                longToken,
+                longToken + "." + longToken + " after",
+                "a".repeat(255) + " " + "b".repeat(256) + " " + "c".repeat(600),
+                "the the a of",
+        };
+        for (String input : inputs) {
+            assertEquals(oldPath(input), pipelineTerms(input), input);
+        }
+    }
+
+    @Test
+    void matchesOldPathOnRandomInputs() throws IOException {
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int piece = random.nextInt(30); piece >= 0; piece--) {
+                if (random.nextInt(40) == 0) {
+                    // Over StandardTokenizer's 255 char limit, sometimes joined to the next piece by a dot or underscore
+                    text.append("abcdefghij".repeat(20 + random.nextInt(40)));
+                }
+                else {
+                    text.append(PIECES[random.nextInt(PIECES.length)]);
+                }
+                text.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+            }
+            String input = text.toString();
+            assertEquals(oldPath(input), pipelineTerms(input), input);
+        }
+    }
+
+    private List<String> pipelineTerms(String text) throws IOException {
+        DocumentTerms documentTerms = new DocumentTerms();
+        pipeline.tokenize(text, documentTerms);
+        String[] terms = new String[documentTerms.tokenCount()];
+        for (int localId = 0; localId < documentTerms.size(); localId++) {
+            for (int i = 0; i < documentTerms.getPositions(localId).size(); i++) {
+                terms[documentTerms.getPositions(localId).get(i) - 1] = documentTerms.getTerm(localId);
+            }
+        }
+        return Arrays.asList(terms);
+    }
+
+    /**
+     The tokenizer FileProcessor used before TokenPipeline: regex tokens, lowercased, without stop words, joined
+     with spaces and split again by a StandardTokenizer with a Porter stem filter.
+     */
+    private static List<String> oldPath(String text) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN_PATTERN.matcher(text);
+        while (matcher.find()) {
+            String token = matcher.group().toLowerCase();
+            if (!STOP_WORDS.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        List<String> stemmedTokens = new ArrayList<>();
+        StandardTokenizer tokenizer = new StandardTokenizer();
+        tokenizer.setReader(new StringReader(String.join(" ", tokens)));
+        try (TokenStream tokenStream = new PorterStemFilter(tokenizer)) {
+            CharTermAttribute charTermAttr = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                stemmedTokens.add(charTermAttr.toString());
+            }
+            tokenStream.end();
+        }
+        return stemmedTokens;
+    }
+}
@@ -0,0 +1,163 @@
+package indexInverting;
+
+import documentTokenizing.FileProcessor;
+import indexEncoding.ForwardIndexReader;
+import indexEncoding.Segment;
+import indexEncoding.SegmentManifest;
+import indexReading.IndexReader;
+import indexReading.SearchResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentMergerTest {
+    private static final int MERGE_FACTOR = 4;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void mergesSimilarSizesOnBothSidesOfAPowerOfTheMergeFactor() throws IOException {
+        // log4 of these sizes is 6.92 to 7.03, which rounded down put them on levels 6 and 7
+        long[] sizes = {15496, 17116, 17125, 16168, 15051, 14555};
+        List<Segment> segments = new ArrayList<>();
+        for (int i = 0; i < sizes.length; i++) {
+            Segment segment = Segment.create("seg_" + i, directory.toString(), directory.toString(), false);
+            Files.write(Path.of(segment.getDocIndexPath()), new byte[(int) sizes[i]]);
+            segments.add(segment);
+        }
+
+        SegmentMerger merger = new SegmentMerger(SegmentManifest.load(directory.toString()), 1 << 20, false, 1, MERGE_FACTOR);
+        List<Segment> window = merger.findMerge(segments);
+        assertNotNull(window);
+        assertEquals(segments.subList(0, MERGE_FACTOR), window);
+    }
+
+    @Test
+    void segmentCountStaysBoundedWhenAppendingSimilarBatches() throws IOException {
+        Path outputPath1 = Files.createDirectories(directory.resolve("output_1"));
+        Path outputPath2 = Files.createDirectories(directory.resolve("output_2"));
+        SegmentManifest manifest = SegmentManifest.load(outputPath2.toString());
+        SegmentMerger merger = new SegmentMerger(manifest, 1 << 20, false, 1, MERGE_FACTOR);
+        Random random = new Random(42);
+
+        int batches = 20;
+        for (int batch = 0; batch < batches; batch++) {
+            appendBatch(manifest, outputPath1, outputPath2, batch, random);
+            merger.mergeWhileNeeded();
+            // At most mergeFactor - 1 segments wait on each level, and 20 batches span three levels
+            assertTrue(manifest.getSegments().size() < 3 * (MERGE_FACTOR - 1) + 1,
+                    "Segments after batch " + batch + ": " + manifest.getSegments().size());
+        }
+        assertTrue(manifest.getSegments().size() < MERGE_FACTOR * 2);
+    }
+
+    @Test
+    void keepsMergedSegmentFilesUntilTheNextRun() throws IOException {
+        Path outputPath1 = Files.createDirectories(directory.resolve("output_1"));
+        Path outputPath2 = Files.createDirectories(directory.resolve("output_2"));
+        SegmentManifest manifest = SegmentManifest.load(outputPath2.toString());
+        Random random = new Random(7);
+        List<Segment> appended = new ArrayList<>();
+        for (int batch = 0; batch < MERGE_FACTOR; batch++) {
+            appended.add(appendBatch(manifest, outputPath1, outputPath2, batch, random));
+        }
+        new SegmentMerger(manifest, 1 << 20, false, 1, MERGE_FACTOR).mergeWhileNeeded();
+        assertEquals(1, manifest.getSegments().size());
+
+        // A reader opened before the merge may still be using the old files
+        for (Segment segment : appended) {
+            assertTrue(Files.exists(Path.of(segment.getDocIndexPath())));
+            assertTrue(Files.exists(Path.of(segment.getTermIndexPath())));
+        }
+
+        SegmentManifest reloaded = SegmentManifest.load(outputPath2.toString());
+        reloaded.deleteRetired();
+        for (Segment segment : appended) {
+            assertFalse(Files.exists(Path.of(segment.getDocIndexPath())));
+            assertFalse(Files.exists(Path.of(segment.getDocStatsPath())));
+            assertFalse(Files.exists(Path.of(segment.getTermIndexPath())));
+            assertFalse(Files.exists(Path.of(segment.getTermInfoPath())));
+        }
+        Segment merged = reloaded.getSegments().get(0);
+        assertTrue(Files.exists(Path.of(merged.getDocIndexPath())));
+        assertFalse(Files.readString(outputPath2.resolve(SegmentManifest.FILE_NAME)).contains("retired"));
+    }
+
+    @Test
+    void appendsOntoATextFormatIndex() throws IOException {
+        // An index as built before segments: text doc_index and postings, and no doc_stats
+        Path outputPath1 = Files.createDirectories(directory.resolve("output_1"));
+        Path outputPath2 = Files.createDirectories(directory.resolve("output_2"));
+        Path corpus = Files.createDirectories(directory.resolve("legacy"));
+        Files.writeString(corpus.resolve("legacy_a"), "<html><body><p>retrieval runs fast</p></body></html>");
+        Files.writeString(corpus.resolve("legacy_b"), "<html><body><p>running retrieval again</p></body></html>");
+        new FileProcessor(new HashSet<>()).processFiles(corpus.toString(), outputPath1.toString(), "doc_index.bin", 1);
+        String docIndexPath = outputPath1.resolve("doc_index.bin").toString();
+        IndexInverter inverter = new IndexInverter(1 << 20, false);
+        inverter.buildInvertedIndex(docIndexPath);
+        inverter.writeInvertedIndex(outputPath2.resolve("term_index.txt").toString(), outputPath2.resolve("term_info.txt").toString());
+        ForwardIndexReader.exportText(docIndexPath, outputPath1.resolve("doc_index.txt").toString());
+        Files.delete(Path.of(docIndexPath));
+
+        SegmentManifest manifest = SegmentMerger.loadManifest(outputPath1.toString(), outputPath2.toString());
+        assertEquals(1, manifest.getSegments().size());
+        assertTrue(Files.exists(outputPath1.resolve("doc_stats.bin")));
+        appendBatch(manifest, outputPath1, outputPath2, 0, new Random(3));
+
+        // Every later run loads the saved manifest and opens all of its segments
+        List<Segment> segments = SegmentMerger.loadManifest(outputPath1.toString(), outputPath2.toString()).getSegments();
+        assertEquals(2, segments.size());
+        IndexReader reader = new IndexReader(outputPath1.resolve("docids.txt").toString(),
+                outputPath1.resolve("termids.txt").toString(), segments, new HashSet<>());
+        assertEquals(2 + Files.list(directory.resolve("batch_0")).count(), reader.getDocumentCount());
+        List<String> names = new ArrayList<>();
+        for (SearchResult result : reader.search("retrieval", 10)) {
+            names.add(result.getDocName());
+        }
+        assertEquals(List.of("legacy_a", "legacy_b"), names.stream().sorted().collect(Collectors.toList()));
+    }
+
+    /**
+     Indexes a batch of 20 to 24 generated documents as a new segment, so segment sizes vary a little around the
+     same level.
+     */
+    private static Segment appendBatch(SegmentManifest manifest, Path outputPath1, Path outputPath2, int batch, Random random)
+            throws IOException {
+        Path corpus = Files.createDirectories(outputPath1.resolveSibling("batch_" + batch));
+        int documents = 20 + random.nextInt(5);
+        for (int doc = 0; doc < documents; doc++) {
+            StringBuilder text = new StringBuilder("<html><body><p>");
+            for (int word = 0; word < 50; word++) {
+                text.append('w').append(random.nextInt(200)).append("x ");
+            }
+            Files.writeString(corpus.resolve(String.format("b%02dd%02d", batch, doc)), text.append("</p></body></html>"));
+        }
+
+        Segment segment = Segment.create(manifest.nextSegmentName(), outputPath1.toString(), outputPath2.toString(), false);
+        FileProcessor processor = new FileProcessor(new HashSet<>());
+        if (!manifest.isEmpty()) {
+            processor.loadDictionaries(outputPath1.toString());
+        }
+        processor.processFiles(corpus.toString(), outputPath1.toString(), Path.of(segment.getDocIndexPath()).getFileName().toString(), 1);
+        IndexInverter inverter = new IndexInverter(1 << 20, false);
+        inverter.buildInvertedIndex(segment.getDocIndexPath(), segment.getDocStatsPath());
+        inverter.writeInvertedIndex(segment.getTermIndexPath(), segment.getTermInfoPath());
+        manifest.add(segment);
+        manifest.save();
+        return segment;
+    }
+}
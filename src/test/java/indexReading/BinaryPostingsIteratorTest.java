@@ -0,0 +1,148 @@
+package indexReading;
+
+import indexEncoding.ForwardIndexWriter;
+import indexInverting.IndexInverter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import primitiveCollections.IntList;
+import primitiveCollections.IntObjectHashMap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ Checks that nextDoc() and advance() over binary postings written with skip tables visit the same documents and
+ positions as the lists they were built from, for lists shorter than, equal to and many times SKIP_INTERVAL.
+ */
+class BinaryPostingsIteratorTest {
+    // Document frequency of each TERMID; 64 and 65 sit on either side of the first skip entry
+    private static final int[] DOC_COUNTS = {1, 63, 64, 65, 200, 1500, 4000};
+    private static final int DOCS = 5000;
+
+    @TempDir
+    Path directory;
+
+    private final Random random = new Random(9);
+    // TERMID -> DOCID -> positions, in DOCID order
+    private final Map<Integer, TreeMap<Integer, int[]>> expected = new HashMap<>();
+    private final Map<Integer, Long> offsets = new HashMap<>();
+    private MappedTermIndex termIndex;
+
+    @BeforeEach
+    void buildIndex() throws IOException {
+        IntObjectHashMap<IntObjectHashMap<IntList>> documents = new IntObjectHashMap<>();
+        for (int termId = 0; termId < DOC_COUNTS.length; termId++) {
+            TreeMap<Integer, int[]> postings = new TreeMap<>();
+            while (postings.size() < DOC_COUNTS[termId]) {
+                // DOCIDs spread over a range wider than the document count, so the gaps vary
+                int docId = 1 + random.nextInt(DOCS);
+                if (!postings.containsKey(docId)) {
+                    IntList positions = new IntList();
+                    int position = 0;
+                    for (int i = 1 + random.nextInt(4); i > 0; i--) {
+                        position += 1 + random.nextInt(300);
+                        positions.add(position);
+                    }
+                    postings.put(docId, positions.toArray());
+                    documents.computeIfAbsent(docId, id -> new IntObjectHashMap<>()).put(termId, positions);
+                }
+            }
+            expected.put(termId, postings);
+        }
+
+        String docIndexPath = directory.resolve("doc_index.bin").toString();
+        int[] docIds = documents.keys();
+        Arrays.sort(docIds);
+        try (ForwardIndexWriter writer = new ForwardIndexWriter(docIndexPath)) {
+            for (int docId : docIds) {
+                writer.writeDocument(docId, documents.get(docId));
+            }
+        }
+        Path termIndexPath = directory.resolve("term_index.bin");
+        Path termInfoPath = directory.resolve("term_info.txt");
+        IndexInverter inverter = new IndexInverter(1 << 20, true);
+        inverter.buildInvertedIndex(docIndexPath, directory.resolve("doc_stats.bin").toString());
+        inverter.writeInvertedIndex(termIndexPath.toString(), termInfoPath.toString());
+
+        for (String line : Files.readAllLines(termInfoPath)) {
+            String[] parts = line.split("\t");
+            offsets.put(Integer.parseInt(parts[0]), Long.parseLong(parts[1]));
+        }
+        termIndex = new MappedTermIndex(termIndexPath);
+    }
+
+    @Test
+    void nextDocVisitsEveryPosting() {
+        for (int termId = 0; termId < DOC_COUNTS.length; termId++) {
+            PostingsIterator iterator = termIndex.iterator(offsets.get(termId));
+            assertEquals(DOC_COUNTS[termId], iterator.cost());
+            assertEquals(-1, iterator.docId());
+            for (Map.Entry<Integer, int[]> posting : expected.get(termId).entrySet()) {
+                assertEquals(posting.getKey(), iterator.nextDoc());
+                assertEquals(posting.getValue().length, iterator.frequency());
+                assertArrayEquals(posting.getValue(), iterator.positions());
+            }
+            assertEquals(DocIdIterator.NO_MORE_DOCS, iterator.nextDoc());
+        }
+    }
+
+    @Test
+    void advanceLandsOnTheFirstDocumentAtOrAfterTheTarget() {
+        for (int termId = 0; termId < DOC_COUNTS.length; termId++) {
+            TreeMap<Integer, int[]> postings = expected.get(termId);
+            for (int run = 0; run < 50; run++) {
+                PostingsIterator iterator = termIndex.iterator(offsets.get(termId));
+                int target = 0;
+                while (true) {
+                    // Short steps stay inside a skip block, long ones cross several
+                    target += random.nextBoolean() ? 1 + random.nextInt(20) : 1 + random.nextInt(1000);
+                    Integer next = postings.ceilingKey(target);
+                    int docId = random.nextInt(4) == 0 ? nextDocTo(iterator, target) : iterator.advance(target);
+                    if (next == null) {
+                        assertEquals(DocIdIterator.NO_MORE_DOCS, docId);
+                        break;
+                    }
+                    assertEquals(next, docId, "advance(" + target + ") of TERMID " + termId);
+                    // Positions are read for some documents only, so advancing must also skip unread ones
+                    if (random.nextBoolean()) {
+                        assertArrayEquals(postings.get(next), iterator.positions());
+                    }
+                    assertEquals(docId, iterator.advance(target), "advance() to a passed target must not move");
+                    target = docId;
+                }
+            }
+        }
+    }
+
+    @Test
+    void advancePastTheLastSkipBlock() {
+        int termId = DOC_COUNTS.length - 1;
+        List<Integer> docIds = new ArrayList<>(expected.get(termId).keySet());
+        PostingsIterator iterator = termIndex.iterator(offsets.get(termId));
+        int last = docIds.get(docIds.size() - 1);
+        assertEquals(last, iterator.advance(last));
+        assertArrayEquals(expected.get(termId).get(last), iterator.positions());
+        assertEquals(DocIdIterator.NO_MORE_DOCS, iterator.advance(last + 1));
+        assertEquals(DocIdIterator.NO_MORE_DOCS, iterator.nextDoc());
+    }
+
+    private static int nextDocTo(PostingsIterator iterator, int target) {
+        int docId = iterator.docId();
+        while (docId < target) {
+            docId = iterator.nextDoc();
+        }
+        return docId;
+    }
+}
@@ -0,0 +1,253 @@
+package indexReading;
+
+import documentTokenizing.FileProcessor;
+import indexEncoding.ForwardIndexReader;
+import indexInverting.IndexInverter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ Checks IndexReader.findDocuments against a brute-force evaluator over the forward index on random nested queries.
+ */
+class BooleanQueryParserTest {
+    private static final Set<String> STOP_WORDS = Set.of("the", "of", "in", "a");
+    private static final String[] STOP_WORD_LIST = STOP_WORDS.toArray(new String[0]);
+    private static final int VOCABULARY = 150;
+    private static final int QUERIES = 300;
+
+    @TempDir
+    Path directory;
+
+    private final Random random = new Random(14);
+    // Term -> DOCID -> positions, read back from the forward index
+    private final Map<String, Map<Integer, int[]>> postings = new HashMap<>();
+    private final Set<Integer> allDocIds = new TreeSet<>();
+    private final Map<Integer, String> docNames = new HashMap<>();
+    private final List<String> terms = new ArrayList<>();
+
+    @Test
+    void matchesBruteForceWithTextPostings() throws IOException {
+        assertMatchesBruteForce(false);
+    }
+
+    @Test
+    void matchesBruteForceWithBinaryPostings() throws IOException {
+        assertMatchesBruteForce(true);
+    }
+
+    @Test
+    void phrasesSkipStopWordsAsIndexingDid() throws IOException {
+        IndexReader reader = buildIndex(false);
+        String[] words = findIndexedBigram();
+        List<String> withoutStopWord = reader.findDocuments("\"" + words[0] + " " + words[1] + "\"");
+        assertFalse(withoutStopWord.isEmpty());
+        assertEquals(withoutStopWord, reader.findDocuments("\"" + words[0] + " the " + words[1] + "\""));
+        assertEquals(withoutStopWord, reader.findDocuments("\"" + words[0] + " of a " + words[1] + "\""));
+    }
+
+    private void assertMatchesBruteForce(boolean binaryPostings) throws IOException {
+        IndexReader reader = buildIndex(binaryPostings);
+        for (int i = 0; i < QUERIES; i++) {
+            StringBuilder query = new StringBuilder();
+            Set<Integer> expected = generate(query, 0);
+            List<String> expectedNames = new ArrayList<>();
+            for (int docId : new TreeSet<>(expected)) {
+                expectedNames.add(docNames.get(docId));
+            }
+            assertEquals(expectedNames, reader.findDocuments(query.toString()), query.toString());
+        }
+    }
+
+    /**
+     Indexes 300 generated documents of words w0x to w149x, drawn with a skew so that phrases occur, mixed with
+     stop words, and loads the postings of the forward index for the brute-force evaluator.
+     */
+    private IndexReader buildIndex(boolean binaryPostings) throws IOException {
+        Path corpus = Files.createDirectories(directory.resolve("corpus"));
+        for (int doc = 0; doc < 300; doc++) {
+            StringBuilder text = new StringBuilder("<html><body><p>");
+            int words = 40 + random.nextInt(40);
+            for (int word = 0; word < words; word++) {
+                text.append(random.nextInt(5) == 0 ? STOP_WORD_LIST[random.nextInt(STOP_WORD_LIST.length)] : word()).append(' ');
+            }
+            Files.writeString(corpus.resolve(String.format("doc%03d", doc)), text.append("</p></body></html>"));
+        }
+
+        Path outputPath1 = Files.createDirectories(directory.resolve("output_1"));
+        Path outputPath2 = Files.createDirectories(directory.resolve("output_2"));
+        new FileProcessor(STOP_WORDS).processFiles(corpus.toString(), outputPath1.toString(), "doc_index.bin", 1);
+        String termIndexPath = outputPath2.resolve(binaryPostings ? "term_index.bin" : "term_index.txt").toString();
+        IndexInverter inverter = new IndexInverter(1 << 20, binaryPostings);
+        inverter.buildInvertedIndex(outputPath1.resolve("doc_index.bin").toString(), outputPath1.resolve("doc_stats.bin").toString());
+        inverter.writeInvertedIndex(termIndexPath, outputPath2.resolve("term_info.txt").toString());
+
+        Map<Integer, String> termNames = new HashMap<>();
+        for (String line : Files.readAllLines(outputPath1.resolve("termids.txt"))) {
+            String[] parts = line.split("\t");
+            termNames.put(Integer.parseInt(parts[0].trim()), parts[1].trim());
+        }
+        for (String line : Files.readAllLines(outputPath1.resolve("docids.txt"))) {
+            String[] parts = line.split("\t");
+            docNames.put(Integer.parseInt(parts[0].trim()), parts[1].trim());
+        }
+        allDocIds.addAll(docNames.keySet());
+        try (ForwardIndexReader forwardIndex = new ForwardIndexReader(outputPath1.resolve("doc_index.bin").toString())) {
+            while (forwardIndex.next()) {
+                for (int i = 0; i < forwardIndex.termCount(); i++) {
+                    postings.computeIfAbsent(termNames.get(forwardIndex.termId(i)), term -> new HashMap<>())
+                            .put(forwardIndex.docId(), forwardIndex.positions(i).toArray());
+                }
+            }
+        }
+        terms.addAll(postings.keySet());
+        terms.sort((a, b) -> postings.get(b).size() - postings.get(a).size());
+
+        return new IndexReader(outputPath1.resolve("docids.txt").toString(), outputPath1.resolve("termids.txt").toString(),
+                outputPath2.resolve("term_info.txt").toString(), termIndexPath, outputPath1.resolve("doc_stats.bin").toString(),
+                STOP_WORDS);
+    }
+
+    private String word() {
+        return "w" + Math.min((int) (-Math.log(1 - random.nextDouble()) * 30), VOCABULARY - 1) + "x";
+    }
+
+    /**
+     Appends a random query and returns the documents it should match, worked out from the forward index.
+     */
+    private Set<Integer> generate(StringBuilder query, int depth) {
+        double r = random.nextDouble();
+        if (depth > 2 || r < 0.35) {
+            if (random.nextInt(4) == 0) {
+                return generatePhrase(query);
+            }
+            if (random.nextInt(20) == 0) {
+                query.append(STOP_WORD_LIST[random.nextInt(STOP_WORD_LIST.length)]);
+                return new HashSet<>();  // a word with no index terms matches nothing
+            }
+            String term = queryTerm();
+            query.append(term);
+            return new HashSet<>(postings.getOrDefault(term, Map.of()).keySet());
+        }
+
+        String operator = r < 0.6 ? " AND " : r < 0.85 ? " OR " : " NOT ";
+        query.append('(');
+        Set<Integer> left = generate(query, depth + 1);
+        query.append(operator);
+        Set<Integer> right = generate(query, depth + 1);
+        query.append(')');
+        if (operator.equals(" AND ")) {
+            left.retainAll(right);
+        }
+        else if (operator.equals(" OR ")) {
+            left.addAll(right);
+        }
+        else {
+            left.removeAll(right);
+        }
+        return left;
+    }
+
+    /**
+     Appends a phrase of two or three terms, sometimes with stop words between them and sometimes with a slop.
+     Stop words have no positions in the index, so the expected matches align only the other terms.
+     */
+    private Set<Integer> generatePhrase(StringBuilder query) {
+        int[] gaps = {0, 0, 1, 3};
+        int maxGap = gaps[random.nextInt(gaps.length)];
+        List<String> phraseTerms = new ArrayList<>();
+        StringBuilder phrase = new StringBuilder();
+        int words = 2 + random.nextInt(2);
+        for (int i = 0; i < words; i++) {
+            if (i > 0 && random.nextInt(3) == 0) {
+                phrase.append(STOP_WORD_LIST[random.nextInt(STOP_WORD_LIST.length)]).append(' ');
+            }
+            String term = queryTerm();
+            phraseTerms.add(term);
+            phrase.append(term).append(' ');
+        }
+        query.append('"').append(phrase.toString().trim()).append('"');
+        if (maxGap > 0) {
+            query.append('~').append(maxGap);
+        }
+        return phraseMatches(phraseTerms, maxGap);
+    }
+
+    private Set<Integer> phraseMatches(List<String> phraseTerms, int maxGap) {
+        Set<Integer> matches = new HashSet<>();
+        for (String term : phraseTerms) {
+            if (!postings.containsKey(term)) {
+                return matches;
+            }
+        }
+        for (int docId : allDocIds) {
+            Set<Integer> reached = null;
+            for (String term : phraseTerms) {
+                int[] positions = postings.get(term).get(docId);
+                if (positions == null) {
+                    reached = null;
+                    break;
+                }
+                Set<Integer> next = new HashSet<>();
+                for (int position : positions) {
+                    if (reached == null) {
+                        next.add(position);
+                        continue;
+                    }
+                    for (int previous : reached) {
+                        if (previous < position && position - previous - 1 <= maxGap) {
+                            next.add(position);
+                            break;
+                        }
+                    }
+                }
+                reached = next;
+                if (reached.isEmpty()) {
+                    break;
+                }
+            }
+            if (reached != null && !reached.isEmpty()) {
+                matches.add(docId);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     A term drawn with a skew towards frequent ones, occasionally one that is not in the index.
+     */
+    private String queryTerm() {
+        if (random.nextInt(30) == 0) {
+            return "w" + (VOCABULARY + random.nextInt(10)) + "x";
+        }
+        return terms.get(Math.min((int) (-Math.log(1 - random.nextDouble()) * 20), terms.size() - 1));
+    }
+
+    /**
+     Returns two terms that occur next to each other in some document.
+     */
+    private String[] findIndexedBigram() {
+        for (String first : terms) {
+            for (String second : terms) {
+                if (!phraseMatches(List.of(first, second), 0).isEmpty()) {
+                    return new String[] {first, second};
+                }
+            }
+        }
+        throw new AssertionError("No two terms are adjacent");
+    }
+}
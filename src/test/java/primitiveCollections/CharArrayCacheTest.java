@@ -0,0 +1,101 @@
+package primitiveCollections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ Checks that CharArrayCache only ever returns the value stored for the exact key, including under eviction
+ and concurrent use.
+ */
+class CharArrayCacheTest {
+
+    @Test
+    void looksUpOnlyTheGivenPrefixOfTheBuffer() {
+        CharArrayCache<String> cache = new CharArrayCache<>("Test", 64);
+        char[] buffer = "running!!!".toCharArray();
+        cache.put(buffer, 7, "run");
+        assertEquals("run", cache.get("running".toCharArray(), 7));
+        assertEquals("run", cache.get("runningxyz".toCharArray(), 7));
+        assertNull(cache.get(buffer, 6));
+        assertNull(cache.get(buffer, 8));
+
+        // The cache copies the key, so reusing the buffer does not change the entry
+        buffer[0] = 'p';
+        assertEquals("run", cache.get("running".toCharArray(), 7));
+        assertNull(cache.get(buffer, 7));
+        assertEquals(3, cache.hits());
+        assertEquals(3, cache.misses());
+    }
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(2, new CharArrayCache<String>("Test", 0).capacity());
+        assertEquals(2, new CharArrayCache<String>("Test", 2).capacity());
+        assertEquals(64, new CharArrayCache<String>("Test", 33).capacity());
+        assertEquals(64, new CharArrayCache<String>("Test", 64).capacity());
+    }
+
+    @Test
+    void evictsWithoutReturningAnotherKeysValue() {
+        CharArrayCache<String> cache = new CharArrayCache<>("Test", 16);
+        for (int i = 0; i < 1000; i++) {
+            String key = "key" + i;
+            cache.put(key.toCharArray(), key.length(), key.toUpperCase());
+        }
+        assertTrue(cache.evictions() > 0);
+        int found = 0;
+        for (int i = 0; i < 1000; i++) {
+            String key = "key" + i;
+            String value = cache.get(key.toCharArray(), key.length());
+            if (value != null) {
+                assertEquals(key.toUpperCase(), value);
+                found++;
+            }
+        }
+        assertTrue(found > 0 && found <= cache.capacity(), found + " entries found");
+
+        // Storing a key again overwrites its own slot instead of evicting a neighbour
+        cache.put("key999".toCharArray(), 6, "again");
+        assertEquals("again", cache.get("key999".toCharArray(), 6));
+    }
+
+    @Test
+    void sharedBetweenThreads() throws Exception {
+        CharArrayCache<String> cache = new CharArrayCache<>("Test", 256);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200000; i++) {
+                        String key = "w" + (i * 7919 % 2000);
+                        char[] buffer = key.toCharArray();
+                        String value = cache.get(buffer, buffer.length);
+                        if (value == null) {
+                            cache.put(buffer, buffer.length, key + "!");
+                        }
+                        else {
+                            assertEquals(key + "!", value);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        assertEquals(800000, cache.hits() + cache.misses());
+    }
+}
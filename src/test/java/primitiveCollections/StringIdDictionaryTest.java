@@ -0,0 +1,109 @@
+package primitiveCollections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ Checks StringIdDictionary against a HashMap, with ASCII and non-ASCII keys stored in the same arena.
+ */
+class StringIdDictionaryTest {
+    private static final String[] ALPHABET = {"a", "b", "z", "0", "_", ".", "é", "ß", "ж", "日", "本", "€", "😀", "\u0000"};
+
+    @Test
+    void nonAsciiKeysRoundTrip() {
+        StringIdDictionary dictionary = new StringIdDictionary();
+        String[] keys = {"cafe", "café", "naïve", "straße", "жизнь", "日本語", "emoji😀", "", "é", "e"};
+        for (int id = 0; id < keys.length; id++) {
+            assertEquals(id, dictionary.putIfAbsent(keys[id], id));
+        }
+        for (int id = 0; id < keys.length; id++) {
+            assertEquals(id, dictionary.get(keys[id]), keys[id]);
+            assertEquals(keys[id], dictionary.getKey(id));
+        }
+        // An ASCII key never equals a non-ASCII one, even where their UTF-8 bytes share a prefix
+        assertEquals(-1, dictionary.get("caf"));
+        assertEquals(-1, dictionary.get("cafè"));
+        assertEquals(-1, dictionary.get("日本"));
+        assertEquals(0, dictionary.putIfAbsent("cafe", 99));
+        assertEquals(1, dictionary.get(new StringBuilder("caf").append('é')));
+    }
+
+    @Test
+    void matchesHashMapOnRandomKeys() {
+        Random random = new Random(22);
+        StringIdDictionary dictionary = new StringIdDictionary();
+        Map<String, Integer> expected = new HashMap<>();
+        Map<Integer, String> keysById = new HashMap<>();
+        int nextId = 0;
+        for (int i = 0; i < 50000; i++) {
+            String key = randomKey(random);
+            int id = dictionary.putIfAbsent(key, nextId);
+            Integer previous = expected.putIfAbsent(key, nextId);
+            if (previous == null) {
+                keysById.put(nextId++, key);
+            }
+            else {
+                assertEquals((int) previous, id, key);
+            }
+        }
+        assertEquals(expected.size(), dictionary.size());
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), dictionary.get(entry.getKey()), entry.getKey());
+            assertEquals(entry.getKey(), dictionary.getKey(entry.getValue()));
+        }
+        for (int i = 0; i < 1000; i++) {
+            String key = randomKey(random) + "!";
+            assertFalse(dictionary.containsKey(key), key);
+        }
+        assertEquals(nextId, dictionary.ids().length);
+        assertEquals(keysById.size(), nextId);
+    }
+
+    @Test
+    void putMovesAKeyToANewId() {
+        StringIdDictionary dictionary = new StringIdDictionary();
+        dictionary.put("über", 3);
+        dictionary.put("plain", 5);
+        dictionary.put("über", 10);
+        assertEquals(10, dictionary.get("über"));
+        assertNull(dictionary.getKey(3));
+        assertEquals("über", dictionary.getKey(10));
+        assertArrayEquals(new int[] {5, 10}, dictionary.ids());
+        assertThrows(IllegalArgumentException.class, () -> dictionary.put("ärger", 5));
+        assertThrows(IllegalArgumentException.class, () -> dictionary.putIfAbsent("ärger", -1));
+        assertTrue(dictionary.containsKey("plain"));
+        assertFalse(dictionary.containsKey("ärger"));
+    }
+
+    @Test
+    void keysSpanManyPages() {
+        StringIdDictionary dictionary = new StringIdDictionary();
+        // Keys long enough for two-byte length prefixes, filling several pages of growing size
+        String base = "ж".repeat(100);
+        for (int id = 0; id < 20000; id++) {
+            dictionary.put(base + id, id);
+        }
+        for (int id = 0; id < 20000; id += 7) {
+            assertEquals(id, dictionary.get(base + id));
+            assertEquals(base + id, dictionary.getKey(id));
+        }
+    }
+
+    private static String randomKey(Random random) {
+        StringBuilder key = new StringBuilder();
+        for (int length = random.nextInt(6); length >= 0; length--) {
+            key.append(ALPHABET[random.nextInt(random.nextBoolean() ? 5 : ALPHABET.length)]);
+        }
+        return key.toString();
+    }
+}